@@ -0,0 +1,65 @@
+package com.devsmart.lightetch;
+
+
+import com.devsmart.lightetch.graphics.RectF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inflating a layout from its XML with inflating a compiled {@link LayoutTemplate},
+ * using a table of rows with a few cells each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LayoutInflatorBenchmark {
+
+    private static final int ROWS = 20;
+
+    private final Context mContext = new Context() {
+        @Override
+        public void getStringBounds(String string, RectF bounds, Paint paint) {
+        }
+
+        @Override
+        public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+        }
+    };
+
+    private byte[] mXml;
+    private LayoutTemplate mTemplate;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<LinearLayout id=\"table\" width=\"fill\" orientation=\"vertical\">");
+        for(int i=0;i<ROWS;i++){
+            xml.append("<LinearLayout orientation=\"horizontal\" background=\"#eeeeee\" margin=\"2\">");
+            xml.append("<TextView id=\"item").append(i).append("\" text=\"Item\" weight=\"3\" />");
+            xml.append("<TextView id=\"quantity").append(i).append("\" text=\"1\" weight=\"1\" />");
+            xml.append("<TextView id=\"price").append(i).append("\" text=\"9.99\" weight=\"1\" />");
+            xml.append("</LinearLayout>");
+        }
+        xml.append("</LinearLayout>");
+        mXml = xml.toString().getBytes("UTF-8");
+        mTemplate = LayoutInflator.compile(new ByteArrayInputStream(mXml));
+    }
+
+    @Benchmark
+    public View inflateXml() throws Exception {
+        return LayoutInflator.inflate(mContext, new ByteArrayInputStream(mXml));
+    }
+
+    @Benchmark
+    public View inflateTemplate() throws Exception {
+        return mTemplate.inflate(mContext);
+    }
+}
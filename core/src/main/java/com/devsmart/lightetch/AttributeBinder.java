@@ -0,0 +1,18 @@
+package com.devsmart.lightetch;
+
+
+/**
+ * Binds the values of a layout attribute to the objects of a class. Binders are registered
+ * with {@link AttributeBinders#register(Class, String, AttributeBinder)}.
+ */
+public interface AttributeBinder {
+
+    /**
+     * Parses an attribute value when a layout is compiled.
+     * @param value The value of the attribute
+     * @return The assignment applied to every inflated object, or null if the value doesn't
+     * apply to the object, so it is tried on the layout params next
+     * @throws Exception If the value isn't valid
+     */
+    public LayoutTemplate.Assignment bind(String value) throws Exception;
+}
@@ -0,0 +1,320 @@
+package com.devsmart.lightetch;
+
+
+import com.devsmart.lightetch.drawable.Rectangle;
+import com.devsmart.lightetch.graphics.Color;
+import com.devsmart.lightetch.widgets.LinearLayout;
+import com.devsmart.lightetch.widgets.TextView;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The registry of the attribute binders used to compile layouts. The binders of a class are
+ * collected once and cached, so finding the binder of an attribute, or finding that there is
+ * none, is a hash lookup.
+ *
+ * A class gets the binders registered for it and its superclasses, a subclass may replace the
+ * binder of an attribute. Public non-final String, int and float fields without a registered
+ * binder are assigned through reflection. The built in views and layout params have binders
+ * registered for all their attributes.
+ */
+public final class AttributeBinders {
+
+    private static final HashMap<Class<?>, HashMap<String, AttributeBinder>> sRegistered =
+            new HashMap<Class<?>, HashMap<String, AttributeBinder>>();
+
+    private static final HashMap<Class<?>, HashMap<String, AttributeBinder>> sBinders =
+            new HashMap<Class<?>, HashMap<String, AttributeBinder>>();
+
+    private AttributeBinders() {}
+
+    /**
+     * Registers the binder of an attribute for a class and its subclasses.
+     * @param type The class
+     * @param name The name of the attribute
+     * @param binder The binder
+     */
+    public static synchronized void register(Class<?> type, String name, AttributeBinder binder) {
+        HashMap<String, AttributeBinder> binders = sRegistered.get(type);
+        if(binders == null) {
+            binders = new HashMap<String, AttributeBinder>();
+            sRegistered.put(type, binders);
+        }
+        binders.put(name, binder);
+        sBinders.clear();
+    }
+
+    /**
+     * Removes the binder registered for an attribute of a class.
+     * @param type The class
+     * @param name The name of the attribute
+     */
+    public static synchronized void unregister(Class<?> type, String name) {
+        HashMap<String, AttributeBinder> binders = sRegistered.get(type);
+        if(binders != null && binders.remove(name) != null) {
+            if(binders.isEmpty()) {
+                sRegistered.remove(type);
+            }
+            sBinders.clear();
+        }
+    }
+
+    /**
+     * Gets the binder of an attribute for a class.
+     * @param type The class
+     * @param name The name of the attribute
+     * @return The binder, or null if the class doesn't have the attribute
+     */
+    public static synchronized AttributeBinder get(Class<?> type, String name) {
+        HashMap<String, AttributeBinder> binders = sBinders.get(type);
+        if(binders == null) {
+            binders = collect(type);
+            sBinders.put(type, binders);
+        }
+        return binders.get(name);
+    }
+
+    private static HashMap<String, AttributeBinder> collect(Class<?> type) {
+        HashMap<String, AttributeBinder> binders = new HashMap<String, AttributeBinder>();
+        for(Field field : type.getFields()) {
+            AttributeBinder binder = createFieldBinder(field);
+            if(binder != null) {
+                binders.put(field.getName(), binder);
+            }
+        }
+
+        ArrayList<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        for(Class<?> c : hierarchy) {
+            HashMap<String, AttributeBinder> registered = sRegistered.get(c);
+            if(registered != null) {
+                binders.putAll(registered);
+            }
+        }
+        return binders;
+    }
+
+    private static AttributeBinder createFieldBinder(final Field f) {
+        if(Modifier.isFinal(f.getModifiers()) || Modifier.isStatic(f.getModifiers())) {
+            return null;
+        }
+        Class<?> fieldType = f.getType();
+        if(String.class.isAssignableFrom(fieldType)) {
+            return new AttributeBinder() {
+                @Override
+                public LayoutTemplate.Assignment bind(final String value) {
+                    return new LayoutTemplate.Assignment() {
+                        @Override
+                        public void assign(Object obj) throws IllegalAccessException {
+                            f.set(obj, value);
+                        }
+                    };
+                }
+            };
+        } else if(fieldType.equals(int.class)) {
+            return new AttributeBinder() {
+                @Override
+                public LayoutTemplate.Assignment bind(String value) {
+                    final int intVal = Integer.parseInt(value);
+                    return new LayoutTemplate.Assignment() {
+                        @Override
+                        public void assign(Object obj) throws IllegalAccessException {
+                            f.setInt(obj, intVal);
+                        }
+                    };
+                }
+            };
+        } else if(fieldType.equals(float.class)) {
+            return new AttributeBinder() {
+                @Override
+                public LayoutTemplate.Assignment bind(String value) {
+                    final float floatVal = Float.parseFloat(value);
+                    return new LayoutTemplate.Assignment() {
+                        @Override
+                        public void assign(Object obj) throws IllegalAccessException {
+                            f.setFloat(obj, floatVal);
+                        }
+                    };
+                }
+            };
+        }
+        return null;
+    }
+
+    private static int parseSize(String value) {
+        if("fill".equals(value)) {
+            return ViewGroup.LayoutParams.FILL_PARENT;
+        } else if("wrap".equals(value)) {
+            return ViewGroup.LayoutParams.WRAP_CONTENT;
+        }
+        return Integer.parseInt(value);
+    }
+
+    static {
+        register(View.class, "id", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(final String value) {
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((View)obj).id = value;
+                    }
+                };
+            }
+        });
+        register(View.class, "background", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int color = Color.parseColor(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        Rectangle rectbg = new Rectangle();
+                        rectbg.mColor = color;
+                        ((View)obj).mBackground = rectbg;
+                    }
+                };
+            }
+        });
+        register(TextView.class, "text", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(final String value) {
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((TextView)obj).setText(value);
+                    }
+                };
+            }
+        });
+        register(LinearLayout.class, "orientation", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int o = "vertical".equals(value) ? LinearLayout.VERTICAL : LinearLayout.HORIZONTAL;
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((LinearLayout)obj).orientation = o;
+                    }
+                };
+            }
+        });
+
+        register(ViewGroup.LayoutParams.class, "width", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int size = parseSize(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.LayoutParams)obj).width = size;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.LayoutParams.class, "height", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int size = parseSize(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.LayoutParams)obj).height = size;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.MarginLayoutParams.class, "margin", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.MarginLayoutParams)obj).marginBottom = intVal;
+                        ((ViewGroup.MarginLayoutParams)obj).marginTop = intVal;
+                        ((ViewGroup.MarginLayoutParams)obj).marginLeft = intVal;
+                        ((ViewGroup.MarginLayoutParams)obj).marginRight = intVal;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.MarginLayoutParams.class, "marginTop", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.MarginLayoutParams)obj).marginTop = intVal;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.MarginLayoutParams.class, "marginBottom", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.MarginLayoutParams)obj).marginBottom = intVal;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.MarginLayoutParams.class, "marginLeft", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.MarginLayoutParams)obj).marginLeft = intVal;
+                    }
+                };
+            }
+        });
+        register(ViewGroup.MarginLayoutParams.class, "marginRight", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((ViewGroup.MarginLayoutParams)obj).marginRight = intVal;
+                    }
+                };
+            }
+        });
+        register(LinearLayout.LayoutParams.class, "weight", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((LinearLayout.LayoutParams)obj).weight = intVal;
+                    }
+                };
+            }
+        });
+        register(LinearLayout.LayoutParams.class, "gravity", new AttributeBinder() {
+            @Override
+            public LayoutTemplate.Assignment bind(String value) {
+                final int intVal = Integer.parseInt(value);
+                return new LayoutTemplate.Assignment() {
+                    @Override
+                    public void assign(Object obj) {
+                        ((LinearLayout.LayoutParams)obj).gravity = intVal;
+                    }
+                };
+            }
+        });
+    }
+}
@@ -5,6 +5,26 @@ import com.devsmart.lightetch.graphics.RectF;
 
 public interface Context {
 
+    /**
+     * Measures a string. The height of the bounds is the line height of the paint, it doesn't
+     * depend on the string, so it can be queried with an empty string.
+     * @param string The string to measure
+     * @param bounds The bounds to set the width and height of
+     * @param paint The paint with the text size
+     */
     public void getStringBounds(String string, RectF bounds, Paint paint);
 
+    /**
+     * Measures a range of text in one pass, including the kerning of adjacent characters.
+     * advances[i - start] is set to the width of the characters from start through i, so the
+     * width of any prefix of the range can be looked up (or binary searched) without measuring
+     * again. The low surrogate of a pair gets the same advance as the high surrogate.
+     * @param text The text to measure
+     * @param start The index of the first character
+     * @param end The index after the last character
+     * @param advances The array to fill, must have room for end - start values
+     * @param paint The paint with the text size
+     */
+    public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint);
+
 }
@@ -1,20 +1,14 @@
 package com.devsmart.lightetch;
 
 
-import com.devsmart.lightetch.drawable.Rectangle;
-import com.devsmart.lightetch.graphics.Color;
 import com.devsmart.lightetch.widgets.LinearLayout;
 import com.devsmart.lightetch.widgets.SurfaceView;
 import com.devsmart.lightetch.widgets.TextView;
 import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -30,112 +24,80 @@ public class LayoutInflator {
 
     }
 
-    private interface AssignRule {
-        boolean assign(Object obj, String key, String value);
-    }
-
-    static ArrayList<AssignRule> sAssignRules = new ArrayList<AssignRule>();
+    // the built in classes are created without reflection
+    static HashMap<Class<?>, LayoutTemplate.ViewFactory> sViewFactories = new HashMap<Class<?>, LayoutTemplate.ViewFactory>();
     static {
-        sAssignRules.add(new AssignRule() {
+        sViewFactories.put(View.class, new LayoutTemplate.ViewFactory() {
             @Override
-            public boolean assign(Object obj, String key, String value) {
-                boolean retval = obj instanceof ViewGroup.LayoutParams
-                        && ("width".equals(key) || "height".equals(key))
-                        && ("fill".equals(value) || "wrap".equals(value));
-                if(retval){
-                    int intval = "fill".equals(value) ?
-                            ViewGroup.LayoutParams.FILL_PARENT : ViewGroup.LayoutParams.WRAP_CONTENT;
-                    if("width".equals(key)){
-                        ((ViewGroup.LayoutParams)obj).width = intval;
-                    } else {
-                        ((ViewGroup.LayoutParams)obj).height = intval;
-                    }
-                }
-                return retval;
+            public View create(Context context) {
+                return new View(context);
             }
         });
-        sAssignRules.add(new AssignRule() {
+        sViewFactories.put(ViewGroup.class, new LayoutTemplate.ViewFactory() {
             @Override
-            public boolean assign(Object obj, String key, String value) {
-                boolean retval = obj instanceof ViewGroup.MarginLayoutParams
-                        && ("margin".equals(key));
-                if(retval) {
-                    int intVal = Integer.parseInt(value);
-                    ((ViewGroup.MarginLayoutParams)obj).marginBottom = intVal;
-                    ((ViewGroup.MarginLayoutParams)obj).marginTop = intVal;
-                    ((ViewGroup.MarginLayoutParams)obj).marginLeft = intVal;
-                    ((ViewGroup.MarginLayoutParams)obj).marginRight = intVal;
-                }
-                return retval;
+            public View create(Context context) {
+                return new ViewGroup(context);
             }
         });
-        sAssignRules.add(new AssignRule() {
+        sViewFactories.put(TextView.class, new LayoutTemplate.ViewFactory() {
             @Override
-            public boolean assign(Object obj, String key, String value) {
-                boolean retval = obj instanceof View && ("background".equals(key));
-                if(retval){
-                    Rectangle rectbg = new Rectangle();
-                    rectbg.mColor = Color.parseColor(value);
-                    ((View)obj).mBackground = rectbg;
-                }
-                return retval;
+            public View create(Context context) {
+                return new TextView(context);
             }
         });
-        sAssignRules.add(new AssignRule() {
+        sViewFactories.put(LinearLayout.class, new LayoutTemplate.ViewFactory() {
             @Override
-            public boolean assign(Object obj, String key, String value) {
-                boolean retval = obj instanceof LinearLayout && "orientation".equals(key);
-                if(retval){
-                    int o = "vertical".equals(value) ? LinearLayout.VERTICAL : LinearLayout.HORIZONTAL;
-                    ((LinearLayout)obj).orientation = o;
-                }
-                return retval;
+            public View create(Context context) {
+                return new LinearLayout(context);
             }
         });
-        sAssignRules.add(new AssignRule() {
+        sViewFactories.put(SurfaceView.class, new LayoutTemplate.ViewFactory() {
             @Override
-            public boolean assign(Object obj, String key, String value) {
-                boolean retval = false;
-                try {
-                    Field f = obj.getClass().getField(key);
-                    Class<?> fieldType = f.getType();
-                    if(String.class.isAssignableFrom(fieldType)){
-                        f.set(obj, value);
-                        retval = true;
-                    } else if(fieldType.equals(int.class)){
-                        f.setInt(obj, Integer.parseInt(value));
-                        retval = true;
-                    } else if(fieldType.equals(float.class)){
-                        f.setFloat(obj, Float.parseFloat(value));
-                        retval = true;
-                    }
-                } catch(NoSuchFieldException e) {
-                } catch (IllegalAccessException e) {
-                }
+            public View create(Context context) {
+                return new SurfaceView(context);
+            }
+        });
+    }
 
-                return retval;
+    static HashMap<Class<?>, LayoutTemplate.LayoutParamsFactory> sLayoutParamsFactories = new HashMap<Class<?>, LayoutTemplate.LayoutParamsFactory>();
+    static {
+        sLayoutParamsFactories.put(ViewGroup.LayoutParams.class, new LayoutTemplate.LayoutParamsFactory() {
+            @Override
+            public ViewGroup.LayoutParams create() {
+                return new ViewGroup.LayoutParams();
+            }
+        });
+        sLayoutParamsFactories.put(ViewGroup.MarginLayoutParams.class, new LayoutTemplate.LayoutParamsFactory() {
+            @Override
+            public ViewGroup.LayoutParams create() {
+                return new ViewGroup.MarginLayoutParams();
+            }
+        });
+        sLayoutParamsFactories.put(LinearLayout.LayoutParams.class, new LayoutTemplate.LayoutParamsFactory() {
+            @Override
+            public ViewGroup.LayoutParams create() {
+                return new LinearLayout.LayoutParams();
             }
         });
     }
 
-    private final Context mContext;
+    private static final LayoutTemplate.Assignment[] NO_ASSIGNMENTS = new LayoutTemplate.Assignment[0];
+    private static final LayoutTemplate.Node[] NO_CHILDREN = new LayoutTemplate.Node[0];
+
+    private static final HashMap<String, LayoutTemplate> sTemplates = new HashMap<String, LayoutTemplate>();
+
     private final XmlPullParser mParser;
-    View mParent;
-    Class<? extends ViewGroup.LayoutParams> mParentLayoutParamsType;
 
-    private LayoutInflator(Context context, XmlPullParser parser) {
-        mContext = context;
+    private LayoutInflator(XmlPullParser parser) {
         mParser = parser;
     }
 
-    public View parse() throws Exception {
-        View root = null;
+    public LayoutTemplate.Node parse() throws Exception {
         mParser.nextTag();
-        root = readTag();
-        return root;
+        return readTag(ViewGroup.MarginLayoutParams.class);
     }
 
-    private View readTag() throws Exception {
+    private LayoutTemplate.Node readTag(Class<? extends ViewGroup.LayoutParams> layoutParamsType) throws Exception {
 
         String tagname = mParser.getName();
 
@@ -147,78 +109,138 @@ public class LayoutInflator {
             throw new Exception("class: '" + tagname + "' is not inherit from View");
         }
 
-        Constructor<? extends View> constructor = (Constructor<? extends View>) viewclass.getConstructor(Context.class);
-        View newView = constructor.newInstance(mContext);
+        LayoutTemplate.ViewFactory viewFactory = getViewFactory((Class<? extends View>) viewclass);
+        LayoutTemplate.LayoutParamsFactory layoutParamsFactory = getLayoutParamsFactory(layoutParamsType);
 
-        if(mParentLayoutParamsType == null){
-            mParentLayoutParamsType = ViewGroup.MarginLayoutParams.class;
-        }
-        newView.mLayoutParams = mParentLayoutParamsType.newInstance();
+        ArrayList<LayoutTemplate.Assignment> viewAssignments = new ArrayList<LayoutTemplate.Assignment>();
+        ArrayList<LayoutTemplate.Assignment> layoutParamsAssignments = new ArrayList<LayoutTemplate.Assignment>();
+        final int numAttributes = mParser.getAttributeCount();
+        for(int i=0;i<numAttributes;i++){
+            String key = mParser.getAttributeName(i);
+            String value = mParser.getAttributeValue(i);
 
-        assignAttributes(newView);
+            LayoutTemplate.Assignment assignment = bind(viewclass, key, value);
+            if(assignment != null){
+                viewAssignments.add(assignment);
+            } else {
+                assignment = bind(layoutParamsType, key, value);
+                if(assignment != null){
+                    layoutParamsAssignments.add(assignment);
+                }
+            }
+        }
 
-        //newView becomes the parent
-        mParent = newView;
-        for(Class<?> innerClass : mParent.getClass().getDeclaredClasses()){
+        //the children of this view get its layout params type
+        Class<? extends ViewGroup.LayoutParams> childLayoutParamsType = layoutParamsType;
+        for(Class<?> innerClass : viewclass.getDeclaredClasses()){
             if(ViewGroup.LayoutParams.class.isAssignableFrom(innerClass)){
-                mParentLayoutParamsType = (Class<? extends ViewGroup.LayoutParams>) innerClass;
+                childLayoutParamsType = (Class<? extends ViewGroup.LayoutParams>) innerClass;
                 break;
             }
         }
 
-
+        ArrayList<LayoutTemplate.Node> children = new ArrayList<LayoutTemplate.Node>();
         while(mParser.next() != XmlPullParser.END_DOCUMENT){
             switch(mParser.getEventType()){
                 case XmlPullParser.START_TAG:
-                    ((ViewGroup)newView).addView(readTag());
+                    if(!ViewGroup.class.isAssignableFrom(viewclass)){
+                        throw new Exception("class: '" + tagname + "' can't have children");
+                    }
+                    children.add(readTag(childLayoutParamsType));
                     break;
                 case XmlPullParser.END_TAG:
-                    return newView;
+                    return createNode(viewFactory, layoutParamsFactory, viewAssignments, layoutParamsAssignments, children);
             }
         }
 
-        return newView;
+        return createNode(viewFactory, layoutParamsFactory, viewAssignments, layoutParamsAssignments, children);
     }
 
+    private static LayoutTemplate.Node createNode(LayoutTemplate.ViewFactory viewFactory,
+                                                  LayoutTemplate.LayoutParamsFactory layoutParamsFactory,
+                                                  ArrayList<LayoutTemplate.Assignment> viewAssignments,
+                                                  ArrayList<LayoutTemplate.Assignment> layoutParamsAssignments,
+                                                  ArrayList<LayoutTemplate.Node> children) {
+        return new LayoutTemplate.Node(viewFactory, layoutParamsFactory,
+                viewAssignments.toArray(NO_ASSIGNMENTS),
+                layoutParamsAssignments.toArray(NO_ASSIGNMENTS),
+                children.toArray(NO_CHILDREN));
+    }
 
-
-    private void assignAttributes(View newView) throws IOException, XmlPullParserException, IllegalAccessException {
-        final int numAttributes = mParser.getAttributeCount();
-        for(int i=0;i<numAttributes;i++){
-            String key = mParser.getAttributeName(i);
-            String value = mParser.getAttributeValue(i);
-
-            if(!assignField(newView, key, value)){
-                assignField(newView.mLayoutParams, key, value);
-            }
+    private static LayoutTemplate.ViewFactory getViewFactory(Class<? extends View> viewclass) throws NoSuchMethodException {
+        LayoutTemplate.ViewFactory factory = sViewFactories.get(viewclass);
+        if(factory == null){
+            final Constructor<? extends View> constructor = viewclass.getConstructor(Context.class);
+            factory = new LayoutTemplate.ViewFactory() {
+                @Override
+                public View create(Context context) throws Exception {
+                    return constructor.newInstance(context);
+                }
+            };
         }
+        return factory;
     }
 
-    private static boolean assignField(Object obj, String key, String value) {
-        boolean canAssign = false;
-        for(AssignRule rule : sAssignRules){
-            canAssign = rule.assign(obj, key, value);
-            if(canAssign) {
-                break;
-            }
+    private static LayoutTemplate.LayoutParamsFactory getLayoutParamsFactory(final Class<? extends ViewGroup.LayoutParams> type) {
+        LayoutTemplate.LayoutParamsFactory factory = sLayoutParamsFactories.get(type);
+        if(factory == null){
+            factory = new LayoutTemplate.LayoutParamsFactory() {
+                @Override
+                public ViewGroup.LayoutParams create() throws Exception {
+                    return type.newInstance();
+                }
+            };
         }
-        return canAssign;
+        return factory;
     }
 
-    public static View inflate(Context context, InputStream in) throws Exception {
-        View retval = null;
+    private static LayoutTemplate.Assignment bind(Class<?> type, String key, String value) throws Exception {
+        AttributeBinder binder = AttributeBinders.get(type, key);
+        return binder != null ? binder.bind(value) : null;
+    }
+
+    /**
+     * Compiles a layout into a template which can be inflated many times.
+     * @param in The XML of the layout, it is closed
+     * @return The template
+     * @throws Exception If the layout isn't valid
+     */
+    public static LayoutTemplate compile(InputStream in) throws Exception {
         try {
             XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
             parser.setInput(in, null);
 
-            LayoutInflator inflator = new LayoutInflator(context, parser);
-            retval = inflator.parse();
+            LayoutInflator inflator = new LayoutInflator(parser);
+            return new LayoutTemplate(inflator.parse());
 
         } finally {
             in.close();
         }
+    }
 
-        return retval;
+    /**
+     * Gets the template of a layout resource, it is compiled the first time.
+     * @param resourceName The name of the resource as found by the system class loader
+     * @return The template
+     * @throws Exception If the resource doesn't exist or isn't a valid layout
+     */
+    public static LayoutTemplate getTemplate(String resourceName) throws Exception {
+        synchronized (sTemplates) {
+            LayoutTemplate template = sTemplates.get(resourceName);
+            if(template == null){
+                InputStream in = ClassLoader.getSystemResourceAsStream(resourceName);
+                if(in == null){
+                    throw new Exception("layout resource not found: " + resourceName);
+                }
+                template = compile(in);
+                sTemplates.put(resourceName, template);
+            }
+            return template;
+        }
+    }
+
+    public static View inflate(Context context, InputStream in) throws Exception {
+        return compile(in).inflate(context);
     }
 
 
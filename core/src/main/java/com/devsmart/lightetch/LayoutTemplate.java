@@ -0,0 +1,74 @@
+package com.devsmart.lightetch;
+
+
+/**
+ * A layout compiled by {@link LayoutInflator#compile(java.io.InputStream)}. The classes of the
+ * views and their layout params are resolved and the attribute values are parsed once, so
+ * inflating a template only creates the views and assigns the prepared values. Templates are
+ * immutable and can be shared between threads.
+ */
+public final class LayoutTemplate {
+
+    interface ViewFactory {
+        View create(Context context) throws Exception;
+    }
+
+    interface LayoutParamsFactory {
+        ViewGroup.LayoutParams create() throws Exception;
+    }
+
+    /**
+     * An attribute value bound to the field or property it is assigned to.
+     */
+    public interface Assignment {
+        public void assign(Object obj) throws Exception;
+    }
+
+    static final class Node {
+        final ViewFactory mViewFactory;
+        final LayoutParamsFactory mLayoutParamsFactory;
+        final Assignment[] mViewAssignments;
+        final Assignment[] mLayoutParamsAssignments;
+        final Node[] mChildren;
+
+        Node(ViewFactory viewFactory, LayoutParamsFactory layoutParamsFactory, Assignment[] viewAssignments,
+             Assignment[] layoutParamsAssignments, Node[] children) {
+            mViewFactory = viewFactory;
+            mLayoutParamsFactory = layoutParamsFactory;
+            mViewAssignments = viewAssignments;
+            mLayoutParamsAssignments = layoutParamsAssignments;
+            mChildren = children;
+        }
+    }
+
+    private final Node mRoot;
+
+    LayoutTemplate(Node root) {
+        mRoot = root;
+    }
+
+    /**
+     * Creates a new view tree from this template.
+     * @param context The context of the views
+     * @return The root view
+     * @throws Exception If a view can't be created
+     */
+    public View inflate(Context context) throws Exception {
+        return inflate(mRoot, context);
+    }
+
+    private static View inflate(Node node, Context context) throws Exception {
+        View view = node.mViewFactory.create(context);
+        view.mLayoutParams = node.mLayoutParamsFactory.create();
+        for(Assignment assignment : node.mViewAssignments) {
+            assignment.assign(view);
+        }
+        for(Assignment assignment : node.mLayoutParamsAssignments) {
+            assignment.assign(view.mLayoutParams);
+        }
+        for(Node child : node.mChildren) {
+            ((ViewGroup) view).addView(inflate(child, context));
+        }
+        return view;
+    }
+}
@@ -58,7 +58,14 @@ public class View extends Drawable{
     }
 
     private static final int PFLAG_MEASURED_DIMENSION_SET = 1;
-    private int mPrivateFlags;
+    private static final int PFLAG_FORCE_LAYOUT = 1 << 1;
+    private static final int PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT = 1 << 2;
+    private int mPrivateFlags = PFLAG_FORCE_LAYOUT;
+
+    /**
+     * The number of measure spec pairs whose measured size is remembered.
+     */
+    private static final int MEASURE_CACHE_SIZE = 4;
 
     /**
      * Externally assignable stuff
@@ -72,24 +79,102 @@ public class View extends Drawable{
     private int mMeasuredHeight;
     protected Drawable mBackground;
 
+    ViewGroup mParent;
+
+    // the specs of the last call to measure, and of the last call to onMeasure which the
+    // measured sizes of the children belong to
+    private long mOldMeasureSpecs;
+    private long mMeasuredSpecs;
+
+    // measured sizes by measure specs, only valid until the layout is requested again
+    private final long[] mMeasureCacheKeys = new long[MEASURE_CACHE_SIZE];
+    private final long[] mMeasureCacheValues = new long[MEASURE_CACHE_SIZE];
+    private int mMeasureCacheCount;
+    private int mMeasureCacheNext;
+
     public View(Context context) {
         mContext = context;
     }
 
     public void setLayoutParams(ViewGroup.LayoutParams params) {
         mLayoutParams = params;
+        requestLayout();
     }
 
     public ViewGroup.LayoutParams getLayoutParams() {
         return mLayoutParams;
     }
 
+    public ViewGroup getParent() {
+        return mParent;
+    }
+
+    /**
+     * Measures the view, unless it was measured before with the same specs and neither it nor
+     * one of its descendants has requested a layout since. A view measured with specs it was
+     * measured with before gets the remembered size, its children are measured again before
+     * the layout if the specs differ from the last call to onMeasure.
+     * @param widthMeasureSpec
+     * @param heightMeasureSpec
+     */
     public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
-        mPrivateFlags &= ~PFLAG_MEASURED_DIMENSION_SET;
-        onMeasure(widthMeasureSpec, heightMeasureSpec);
+        final long key = (long) widthMeasureSpec << 32 | heightMeasureSpec & 0xffffffffL;
+        mOldMeasureSpecs = key;
+
+        if((mPrivateFlags & PFLAG_FORCE_LAYOUT) != PFLAG_FORCE_LAYOUT) {
+            for(int i=0;i<mMeasureCacheCount;i++){
+                if(mMeasureCacheKeys[i] == key) {
+                    final long size = mMeasureCacheValues[i];
+                    setMeasuredDimension((int) (size >> 32), (int) size);
+                    if(key == mMeasuredSpecs) {
+                        mPrivateFlags &= ~PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT;
+                    } else {
+                        mPrivateFlags |= PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT;
+                    }
+                    return;
+                }
+            }
+        } else {
+            mMeasureCacheCount = 0;
+            mMeasureCacheNext = 0;
+        }
+
+        doMeasure(key);
+
+        final long size = (long) mMeasuredWidth << 32 | mMeasuredHeight & 0xffffffffL;
+        mMeasureCacheKeys[mMeasureCacheNext] = key;
+        mMeasureCacheValues[mMeasureCacheNext] = size;
+        mMeasureCacheNext = (mMeasureCacheNext + 1) % MEASURE_CACHE_SIZE;
+        mMeasureCacheCount = Math.min(mMeasureCacheCount + 1, MEASURE_CACHE_SIZE);
+        mPrivateFlags &= ~PFLAG_FORCE_LAYOUT;
+    }
+
+    private void doMeasure(long measureSpecs) {
+        mPrivateFlags &= ~(PFLAG_MEASURED_DIMENSION_SET | PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT);
+        onMeasure((int) (measureSpecs >> 32), (int) measureSpecs);
         if((mPrivateFlags & PFLAG_MEASURED_DIMENSION_SET) != PFLAG_MEASURED_DIMENSION_SET){
             throw new IllegalStateException("onMeasure did not set the measured dimension by calling setMeasuredDimension()");
         }
+        mMeasuredSpecs = measureSpecs;
+    }
+
+    /**
+     * Call this when something has changed which has invalidated the layout of this view. The
+     * view and all of its ancestors are measured again by the next measure pass, views which
+     * haven't changed keep their measured size.
+     */
+    public void requestLayout() {
+        mPrivateFlags |= PFLAG_FORCE_LAYOUT;
+        if(mParent != null && !mParent.isLayoutRequested()) {
+            mParent.requestLayout();
+        }
+    }
+
+    /**
+     * @return true if the layout of this view will be measured again by the next measure pass
+     */
+    public boolean isLayoutRequested() {
+        return (mPrivateFlags & PFLAG_FORCE_LAYOUT) == PFLAG_FORCE_LAYOUT;
     }
 
     /**
@@ -112,6 +197,10 @@ public class View extends Drawable{
     }
 
     public final void layout(int left, int top, int right, int bottom) {
+        if((mPrivateFlags & PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT) == PFLAG_MEASURE_NEEDED_BEFORE_LAYOUT) {
+            // the size came from the cache, the children still have the sizes of other specs
+            doMeasure(mOldMeasureSpecs);
+        }
         getBounds().set(left, top, right, bottom);
         if(mBackground != null){
             mBackground.setBounds(getBounds());
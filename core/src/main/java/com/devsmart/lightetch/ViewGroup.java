@@ -30,15 +30,25 @@ public class ViewGroup extends View {
     }
 
     public void addView(View view) {
+        if(view.mParent != null) {
+            throw new IllegalStateException("The view already has a parent");
+        }
         mChildren.add(view);
+        view.mParent = this;
+        requestLayout();
     }
 
     public void removeAllChildren() {
+        for(View child : mChildren) {
+            child.mParent = null;
+        }
         mChildren.clear();
+        requestLayout();
     }
 
     public void removeChildAt(int index) {
-        mChildren.remove(index);
+        mChildren.remove(index).mParent = null;
+        requestLayout();
     }
 
     public int getChildCount() {
@@ -0,0 +1,171 @@
+package com.devsmart.lightetch.text;
+
+
+import com.devsmart.lightetch.Context;
+import com.devsmart.lightetch.Paint;
+import com.devsmart.lightetch.graphics.RectF;
+
+/**
+ * An immutable layout of text broken into lines that fit a maximum width. The text is measured
+ * once with {@link Context#getTextAdvances} and broken greedily at whitespace, so creating a
+ * layout takes time linear in the length of the text. Leading and trailing whitespace is
+ * dropped from the text and from every line. A word wider than the maximum width gets a line
+ * of its own.
+ */
+public final class TextLayout {
+
+    private final String mText;
+    private final float mTextSize;
+    private final String[] mLines;
+    private final float[] mLineWidths;
+    private final float mLineHeight;
+    private final float mWidth;
+
+    // the range of maximum widths which break the text into the same lines
+    private final float mMinMaxWidth;
+    private final float mOverflowWidth;
+
+    private TextLayout(String text, float textSize, String[] lines, float[] lineWidths, float lineHeight,
+                       float width, float minMaxWidth, float overflowWidth) {
+        mText = text;
+        mTextSize = textSize;
+        mLines = lines;
+        mLineWidths = lineWidths;
+        mLineHeight = lineHeight;
+        mWidth = width;
+        mMinMaxWidth = minMaxWidth;
+        mOverflowWidth = overflowWidth;
+    }
+
+    /**
+     * Breaks text into lines.
+     * @param context The context to measure the text with
+     * @param text The text
+     * @param paint The paint to measure the text with
+     * @param maxWidth The maximum width of a line
+     * @return The layout of the text
+     */
+    public static TextLayout create(Context context, String text, Paint paint, float maxWidth) {
+        String trimmed = text.trim();
+        final int length = trimmed.length();
+        float[] advances = new float[length];
+        context.getTextAdvances(trimmed, 0, length, advances, paint);
+
+        // the height of the bounds is the line height, measuring no text avoids a second pass
+        RectF bounds = new RectF();
+        context.getStringBounds("", bounds, paint);
+
+        String[] lines = new String[4];
+        float[] lineWidths = new float[4];
+        int lineCount = 0;
+        float width = 0;
+        float minMaxWidth = 0;
+        float overflowWidth = Float.POSITIVE_INFINITY;
+
+        int start = 0;
+        while(start < length) {
+            final float offset = start > 0 ? advances[start - 1] : 0;
+            int end = -1;
+            float lineWidth = 0;
+            int i = start;
+            while(i < length) {
+                // the end of the next word
+                while(i < length && !isWhitespace(trimmed.charAt(i))) {
+                    i++;
+                }
+                float candidate = advances[i - 1] - offset;
+                if(candidate > maxWidth) {
+                    overflowWidth = Math.min(overflowWidth, candidate);
+                    if(end < 0) {
+                        // the first word doesn't fit, it is placed on its own
+                        end = i;
+                        lineWidth = candidate;
+                    }
+                    break;
+                }
+                end = i;
+                lineWidth = candidate;
+                minMaxWidth = Math.max(minMaxWidth, candidate);
+                while(i < length && isWhitespace(trimmed.charAt(i))) {
+                    i++;
+                }
+            }
+
+            if(lineCount == lines.length) {
+                String[] newLines = new String[lineCount * 2];
+                System.arraycopy(lines, 0, newLines, 0, lineCount);
+                lines = newLines;
+                float[] newWidths = new float[lineCount * 2];
+                System.arraycopy(lineWidths, 0, newWidths, 0, lineCount);
+                lineWidths = newWidths;
+            }
+            lines[lineCount] = trimmed.substring(start, end);
+            lineWidths[lineCount] = lineWidth;
+            lineCount++;
+            width = Math.max(width, lineWidth);
+
+            start = end;
+            while(start < length && isWhitespace(trimmed.charAt(start))) {
+                start++;
+            }
+        }
+
+        String[] finalLines = new String[lineCount];
+        System.arraycopy(lines, 0, finalLines, 0, lineCount);
+        float[] finalWidths = new float[lineCount];
+        System.arraycopy(lineWidths, 0, finalWidths, 0, lineCount);
+        return new TextLayout(text, paint.mTextSize, finalLines, finalWidths, bounds.height(), width,
+                minMaxWidth, overflowWidth);
+    }
+
+    private static boolean isWhitespace(char c) {
+        // the characters String.trim() removes
+        return c <= ' ';
+    }
+
+    /**
+     * Checks if this layout is valid for text with the given paint and maximum width. Any
+     * maximum width which would break the text into the same lines is accepted, so the layout
+     * made while measuring can be drawn at the measured width.
+     * @param text The text
+     * @param paint The paint
+     * @param maxWidth The maximum width of a line
+     * @return true if {@link #create} would make the same layout
+     */
+    public boolean isLayoutOf(String text, Paint paint, float maxWidth) {
+        return mTextSize == paint.mTextSize
+                && maxWidth >= mMinMaxWidth && maxWidth < mOverflowWidth
+                && (mText == text || mText.equals(text));
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    public int getLineCount() {
+        return mLines.length;
+    }
+
+    public String getLine(int index) {
+        return mLines[index];
+    }
+
+    public float getLineWidth(int index) {
+        return mLineWidths[index];
+    }
+
+    public float getLineHeight() {
+        return mLineHeight;
+    }
+
+    /**
+     * @return The width of the widest line
+     */
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mLineHeight * mLines.length;
+    }
+}
@@ -2,93 +2,88 @@ package com.devsmart.lightetch.widgets;
 
 
 import com.devsmart.lightetch.*;
-import com.devsmart.lightetch.graphics.RectF;
-
-import java.util.ArrayList;
+import com.devsmart.lightetch.text.TextLayout;
 
 public class TextView extends View {
 
+    /**
+     * The text, call {@link #requestLayout()} after changing it or the paint directly
+     */
     public String text = "";
     public Paint paint = new Paint();
 
+    private TextLayout mTextLayout;
+
     public TextView(Context context) {
         super(context);
     }
 
+    public void setText(String text) {
+        if(!this.text.equals(text)) {
+            this.text = text;
+            requestLayout();
+        }
+    }
+
+    public void setTextSize(float size) {
+        if(paint.mTextSize != size) {
+            paint.mTextSize = size;
+            requestLayout();
+        }
+    }
+
     @Override
     public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 
-        RectF bounds = new RectF();
-
         int width = MeasureSpec.getSize(widthMeasureSpec);
 
         float measureWidth = 0;
-        float measuredHeight = 0;
-        ArrayList<String> lines = new ArrayList<String>();
-
+        TextLayout layout;
 
         switch(MeasureSpec.getMode(widthMeasureSpec)){
             case MeasureSpec.AT_MOST:
-                measureWidth = splitText(text, width, lines);
+                layout = getTextLayout(width);
+                measureWidth = layout.getWidth();
                 if(ViewGroup.LayoutParams.WRAP_CONTENT != mLayoutParams.width){
                     measureWidth = Math.max(measureWidth, width);
                 }
                 break;
             case MeasureSpec.EXACTLY:
-                splitText(text, width, lines);
+                layout = getTextLayout(width);
                 measureWidth = width;
                 break;
-            case MeasureSpec.UNSPECIFIED:
-                mContext.getStringBounds(text, bounds, paint);
-                measureWidth = bounds.width();
+            default:
+                layout = getTextLayout(Float.POSITIVE_INFINITY);
+                measureWidth = layout.getWidth();
                 break;
         }
 
-        mContext.getStringBounds(text, bounds, paint);
-        measuredHeight = bounds.height() * lines.size();
-
-        setMeasuredDimension((int) Math.ceil(measureWidth), (int) Math.ceil(measuredHeight));
+        setMeasuredDimension((int) Math.ceil(measureWidth), (int) Math.ceil(layout.getHeight()));
 
     }
 
-    private float splitText(String text, final int maxWidth, final ArrayList<String> lines) {
-        float maxMeasured = Float.MIN_VALUE;
-        StringBuilder buf = new StringBuilder();
-        RectF bounds = new RectF();
-        text = text.trim();
-
-        while(text.length() > 0) {
-            mContext.getStringBounds(text, bounds, paint);
-            while(bounds.width() > maxWidth){
-                int splitidx = text.lastIndexOf(' ');
-                buf.insert(0, text.substring(splitidx));
-                text = text.substring(0, splitidx).trim();
-                mContext.getStringBounds(text, bounds, paint);
-            }
-            lines.add(text);
-            text = buf.toString().trim();
-            buf = new StringBuilder();
-            maxMeasured = Math.max(maxMeasured, bounds.width());
+    /**
+     * Gets the layout of the text for a maximum width, the layout made while measuring is
+     * reused as long as the text, the paint's text size and the resulting lines don't change.
+     */
+    private TextLayout getTextLayout(float maxWidth) {
+        if(mTextLayout == null || !mTextLayout.isLayoutOf(text, paint, maxWidth)) {
+            mTextLayout = TextLayout.create(mContext, text, paint, maxWidth);
         }
-
-        return maxMeasured;
+        return mTextLayout;
     }
 
     @Override
     public void draw(Canvas canvas) {
 
-        ArrayList<String> lines = new ArrayList<String>();
-        splitText(text, getMeasuredWidth(), lines);
-
-        RectF bounds = new RectF();
-        mContext.getStringBounds(text, bounds, paint);
-        final float height = bounds.height();
+        TextLayout layout = getTextLayout(getMeasuredWidth());
+        final float height = layout.getLineHeight();
 
         float y = height;
         float x = 0;
 
-        for(String line : lines) {
-            canvas.drawText(line, (int) x, (int) y, paint);
+        for(int i=0;i<layout.getLineCount();i++) {
+            canvas.drawText(layout.getLine(i), (int) x, (int) y, paint);
             y += height;
         }
     }
@@ -2,13 +2,25 @@ package com.devsmart.lightetch;
 
 
 import com.devsmart.lightetch.graphics.RectF;
+import com.devsmart.lightetch.widgets.LinearLayout;
+import com.devsmart.lightetch.widgets.TextView;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 public class LayoutInflatorTest {
 
+    public static class Badge extends TextView {
+        public int count;
+        public String label;
+
+        public Badge(Context context) {
+            super(context);
+        }
+    }
+
     @Test
     public void inflateTest() throws Exception {
 
@@ -17,6 +29,11 @@ public class LayoutInflatorTest {
             public void getStringBounds(String string, RectF bounds, Paint paint) {
 
             }
+
+            @Override
+            public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+
+            }
         };
 
         InputStream in;
@@ -27,4 +44,108 @@ public class LayoutInflatorTest {
         Assert.assertNotNull(newView);
 
     }
+
+    @Test
+    public void templateTest() throws Exception {
+        Context ctx = new Context() {
+            @Override
+            public void getStringBounds(String string, RectF bounds, Paint paint) {
+
+            }
+
+            @Override
+            public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+
+            }
+        };
+
+        String xml = "<LinearLayout id=\"root\" width=\"fill\" orientation=\"horizontal\" background=\"#ff0000\">"
+                + "<TextView id=\"a\" text=\"Hello\" weight=\"2\" margin=\"3\" />"
+                + "<LinearLayout><TextView id=\"b\" /></LinearLayout>"
+                + "</LinearLayout>";
+        LayoutTemplate template = LayoutInflator.compile(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+        for(int i=0;i<2;i++){
+            LinearLayout root = (LinearLayout) template.inflate(ctx);
+            Assert.assertEquals("root", root.id);
+            Assert.assertEquals(LinearLayout.HORIZONTAL, root.orientation);
+            Assert.assertEquals(ViewGroup.LayoutParams.FILL_PARENT, root.getLayoutParams().width);
+            Assert.assertTrue(root.getLayoutParams() instanceof ViewGroup.MarginLayoutParams);
+            Assert.assertNotNull(root.mBackground);
+            Assert.assertEquals(2, root.getChildCount());
+
+            TextView a = (TextView) root.getViewAt(0);
+            Assert.assertEquals("Hello", a.text);
+            Assert.assertSame(root, a.getParent());
+            LinearLayout.LayoutParams lp = (LinearLayout.LayoutParams) a.getLayoutParams();
+            Assert.assertEquals(2, lp.weight);
+            Assert.assertEquals(3, lp.marginLeft);
+
+            ViewGroup inner = (ViewGroup) root.getViewAt(1);
+            Assert.assertEquals("b", inner.getViewAt(0).id);
+            Assert.assertTrue(inner.getViewAt(0).getLayoutParams() instanceof LinearLayout.LayoutParams);
+        }
+        Assert.assertNotSame(template.inflate(ctx), template.inflate(ctx));
+    }
+
+    @Test
+    public void customBinderTest() throws Exception {
+        try {
+            AttributeBinders.register(Badge.class, "label", new AttributeBinder() {
+                @Override
+                public LayoutTemplate.Assignment bind(String value) {
+                    final String upper = value.toUpperCase();
+                    return new LayoutTemplate.Assignment() {
+                        @Override
+                        public void assign(Object obj) {
+                            ((Badge) obj).label = upper;
+                        }
+                    };
+                }
+            });
+            Assert.assertNotNull(AttributeBinders.get(Badge.class, "text"));
+            Assert.assertNotNull(AttributeBinders.get(Badge.class, "count"));
+            Assert.assertNull(AttributeBinders.get(Badge.class, "unknown"));
+            Assert.assertNull(AttributeBinders.get(TextView.class, "label"));
+
+            LayoutInflator.mNameMap.put("Badge", Badge.class);
+            String xml = "<LinearLayout><Badge label=\"new\" count=\"4\" text=\"x\" unknown=\"1\" weight=\"1\" />"
+                    + "</LinearLayout>";
+            ViewGroup root = (ViewGroup) LayoutInflator.compile(new ByteArrayInputStream(xml.getBytes("UTF-8"))).inflate(null);
+            Badge badge = (Badge) root.getViewAt(0);
+            Assert.assertEquals("NEW", badge.label);
+            Assert.assertEquals(4, badge.count);
+            Assert.assertEquals("x", badge.text);
+            Assert.assertEquals(1, ((LinearLayout.LayoutParams) badge.getLayoutParams()).weight);
+        } finally {
+            AttributeBinders.unregister(Badge.class, "label");
+            LayoutInflator.mNameMap.remove("Badge");
+        }
+    }
+
+    @Test
+    public void textBinderRequestsLayout() throws Exception {
+        Context ctx = new Context() {
+            @Override
+            public void getStringBounds(String string, RectF bounds, Paint paint) {
+
+            }
+
+            @Override
+            public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+
+            }
+        };
+
+        TextView view = new TextView(ctx);
+        view.setLayoutParams(new LinearLayout.LayoutParams());
+        int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.AT_MOST);
+        view.measure(spec, spec);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        Assert.assertFalse(view.isLayoutRequested());
+
+        AttributeBinders.get(TextView.class, "text").bind("Hello").assign(view);
+        Assert.assertEquals("Hello", view.text);
+        Assert.assertTrue(view.isLayoutRequested());
+    }
 }
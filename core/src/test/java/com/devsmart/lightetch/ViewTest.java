@@ -0,0 +1,104 @@
+package com.devsmart.lightetch;
+
+
+import com.devsmart.lightetch.graphics.RectF;
+import com.devsmart.lightetch.widgets.LinearLayout;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ViewTest {
+
+    private static final Context CONTEXT = new Context() {
+        @Override
+        public void getStringBounds(String string, RectF bounds, Paint paint) {
+        }
+
+        @Override
+        public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+        }
+    };
+
+    private static class CountingView extends View {
+
+        int measureCount;
+        int width;
+
+        CountingView(int width, int weight) {
+            super(CONTEXT);
+            this.width = width;
+            LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams();
+            lp.weight = weight;
+            setLayoutParams(lp);
+        }
+
+        @Override
+        public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measureCount++;
+            int height = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.EXACTLY ? MeasureSpec.getSize(heightMeasureSpec) : 10;
+            setMeasuredDimension(width, height);
+        }
+    }
+
+    private static void render(View root) {
+        int spec = View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.AT_MOST);
+        root.measure(spec, spec);
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+
+    @Test
+    public void measureOnlyDirtyViews() {
+        LinearLayout root = new LinearLayout(CONTEXT);
+        root.setLayoutParams(new LinearLayout.LayoutParams());
+        LinearLayout inner = new LinearLayout(CONTEXT);
+        inner.setLayoutParams(new LinearLayout.LayoutParams());
+        CountingView a = new CountingView(20, 0);
+        CountingView b = new CountingView(30, 0);
+        CountingView c = new CountingView(40, 0);
+        root.addView(a);
+        root.addView(inner);
+        inner.addView(b);
+        inner.addView(c);
+        Assert.assertSame(inner, b.getParent());
+
+        render(root);
+        Assert.assertEquals(1, a.measureCount);
+        Assert.assertEquals(1, b.measureCount);
+        Assert.assertFalse(root.isLayoutRequested());
+
+        render(root);
+        Assert.assertEquals(1, a.measureCount);
+        Assert.assertEquals(1, b.measureCount);
+        Assert.assertEquals(1, c.measureCount);
+
+        c.width = 60;
+        c.requestLayout();
+        Assert.assertTrue(inner.isLayoutRequested());
+        Assert.assertTrue(root.isLayoutRequested());
+        render(root);
+        Assert.assertEquals(1, a.measureCount);
+        Assert.assertEquals(1, b.measureCount);
+        Assert.assertEquals(2, c.measureCount);
+        Assert.assertEquals(60, root.getMeasuredWidth());
+        Assert.assertEquals(60, c.getBounds().width(), 0);
+    }
+
+    @Test
+    public void weightedChildrenUseCachedSizes() {
+        LinearLayout root = new LinearLayout(CONTEXT);
+        root.setLayoutParams(new LinearLayout.LayoutParams());
+        CountingView a = new CountingView(20, 1);
+        CountingView b = new CountingView(30, 0);
+        root.addView(a);
+        root.addView(b);
+
+        render(root);
+        Assert.assertEquals(2, a.measureCount);
+        Assert.assertEquals(100, a.getMeasuredHeight());
+
+        render(root);
+        render(root);
+        Assert.assertEquals(2, a.measureCount);
+        Assert.assertEquals(1, b.measureCount);
+        Assert.assertEquals(100, a.getBounds().height(), 0);
+    }
+}
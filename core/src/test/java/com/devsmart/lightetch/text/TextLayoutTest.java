@@ -0,0 +1,93 @@
+package com.devsmart.lightetch.text;
+
+
+import com.devsmart.lightetch.Context;
+import com.devsmart.lightetch.Paint;
+import com.devsmart.lightetch.graphics.RectF;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextLayoutTest {
+
+    // every character is as wide as the text size
+    private static final Context CONTEXT = new Context() {
+        @Override
+        public void getStringBounds(String string, RectF bounds, Paint paint) {
+            bounds.setWidth(string.length() * paint.mTextSize);
+            bounds.setHeight(2 * paint.mTextSize);
+        }
+
+        @Override
+        public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+            for(int i=start;i<end;i++){
+                advances[i - start] = (i - start + 1) * paint.mTextSize;
+            }
+        }
+    };
+
+    @Test
+    public void breakLines() {
+        Paint paint = new Paint();
+        paint.mTextSize = 1;
+        String text = "  the quick  brown fox jumps over the lazy dog ";
+        TextLayout layout = TextLayout.create(CONTEXT, text, paint, 10);
+
+        Assert.assertEquals(5, layout.getLineCount());
+        Assert.assertEquals("the quick", layout.getLine(0));
+        Assert.assertEquals("brown fox", layout.getLine(1));
+        Assert.assertEquals("jumps over", layout.getLine(2));
+        Assert.assertEquals("the lazy", layout.getLine(3));
+        Assert.assertEquals("dog", layout.getLine(4));
+        Assert.assertEquals(9, layout.getLineWidth(0), 0);
+        Assert.assertEquals(10, layout.getWidth(), 0);
+        Assert.assertEquals(10, layout.getHeight(), 0);
+
+        // the same lines for widths from the widest line up to the first word which didn't fit
+        Assert.assertTrue(layout.isLayoutOf(text, paint, 10));
+        Assert.assertTrue(layout.isLayoutOf(new String(text), paint, 11.5f));
+        Assert.assertFalse(layout.isLayoutOf(text, paint, 9));
+        Assert.assertFalse(layout.isLayoutOf(text, paint, 12));
+        Assert.assertFalse(layout.isLayoutOf("the quick", paint, 10));
+        paint.mTextSize = 2;
+        Assert.assertFalse(layout.isLayoutOf(text, paint, 10));
+    }
+
+    @Test
+    public void longWords() {
+        Paint paint = new Paint();
+        paint.mTextSize = 1;
+        TextLayout layout = TextLayout.create(CONTEXT, "a verylongword b", paint, 5);
+        Assert.assertEquals(3, layout.getLineCount());
+        Assert.assertEquals("verylongword", layout.getLine(1));
+        Assert.assertEquals(12, layout.getWidth(), 0);
+        Assert.assertTrue(layout.isLayoutOf("a verylongword b", paint, 1));
+        Assert.assertFalse(layout.isLayoutOf("a verylongword b", paint, 14));
+
+        Assert.assertEquals(0, TextLayout.create(CONTEXT, "   ", paint, 5).getLineCount());
+        Assert.assertEquals(1, TextLayout.create(CONTEXT, "a b c", paint, Float.POSITIVE_INFINITY).getLineCount());
+    }
+
+    @Test
+    public void textIsMeasuredOnce() {
+        final int[] measured = new int[2];
+        Context context = new Context() {
+            @Override
+            public void getStringBounds(String string, RectF bounds, Paint paint) {
+                measured[0] += string.length();
+                CONTEXT.getStringBounds(string, bounds, paint);
+            }
+
+            @Override
+            public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+                measured[1] += end - start;
+                CONTEXT.getTextAdvances(text, start, end, advances, paint);
+            }
+        };
+        Paint paint = new Paint();
+        paint.mTextSize = 1;
+        TextLayout layout = TextLayout.create(context, " the quick brown fox ", paint, 10);
+        Assert.assertEquals(0, measured[0]);
+        Assert.assertEquals(19, measured[1]);
+        Assert.assertEquals(2, layout.getLineHeight(), 0);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link LZWFilter} with the HashMap based {@link LegacyLZWFilter} on a 4 MB content
+ * stream like text, encoded once by each filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LZWFilterBenchmark
+{
+    private static final int SIZE = 4 * 1024 * 1024;
+
+    private final COSDictionary options = new COSDictionary();
+    private final ByteArrayOutputStream result = new ByteArrayOutputStream(SIZE);
+    private byte[] data;
+    private byte[] encoded;
+    private byte[] legacyEncoded;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder(SIZE + 64);
+        while (text.length() < SIZE)
+        {
+            text.append("BT /F1 ").append(8 + random.nextInt(6)).append(" Tf ");
+            text.append(random.nextInt(600)).append(' ').append(random.nextInt(800)).append(" Td (");
+            for (int i = random.nextInt(40); i >= 0; i--)
+            {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(") Tj ET\n");
+        }
+        data = text.substring(0, SIZE).getBytes("ISO-8859-1");
+        encoded = encode(new LZWFilter());
+        legacyEncoded = encode(new LegacyLZWFilter());
+    }
+
+    private byte[] encode(Filter filter) throws IOException
+    {
+        result.reset();
+        filter.encode(new ByteArrayInputStream(data), result, options, 0);
+        return result.toByteArray();
+    }
+
+    private int decode(Filter filter, byte[] input) throws IOException
+    {
+        result.reset();
+        filter.decode(new ByteArrayInputStream(input), result, options, 0);
+        return result.size();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException
+    {
+        return encode(new LZWFilter());
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() throws IOException
+    {
+        return encode(new LegacyLZWFilter());
+    }
+
+    @Benchmark
+    public int decode() throws IOException
+    {
+        return decode(new LZWFilter(), encoded);
+    }
+
+    @Benchmark
+    public int legacyDecode() throws IOException
+    {
+        return decode(new LegacyLZWFilter(), legacyEncoded);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdfwriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Saves a synthetic document of 10000 small pages and reports the number of written objects
+ * per second. Every page is written as six objects: the page dictionary, its resources, the
+ * font map of the resources, a graphics state, the content stream and its length. The
+ * content streams are tiny, so the time is dominated by the bookkeeping of {@link COSWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class COSWriterBenchmark
+{
+    private static final int PAGES = 10000;
+    private static final int OBJECTS_PER_PAGE = 6;
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream()
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length)
+        {
+        }
+    };
+
+    private PDDocument document;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        document = new PDDocument();
+        document.setDocumentId(0L);
+        COSName gsName = COSName.getPDFName("GS0");
+        for (int i = 0; i < PAGES; i++)
+        {
+            PDPage page = new PDPage();
+            document.addPage(page);
+
+            COSDictionary graphicsState = new COSDictionary();
+            graphicsState.setItem(COSName.TYPE, COSName.EXT_G_STATE);
+            graphicsState.setFloat(COSName.CA, 0.5f);
+            COSDictionary graphicsStates = new COSDictionary();
+            graphicsStates.setDirect(true);
+            graphicsStates.setItem(gsName, graphicsState);
+            PDResources resources = new PDResources();
+            resources.getCOSDictionary().setItem(COSName.EXT_G_STATE, graphicsStates);
+            page.setResources(resources);
+
+            PDPageContentStream content = new PDPageContentStream(document, page, false, false);
+            content.appendRawCommands("/GS0 gs\n");
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 12);
+            content.moveTextPositionByAmount(72, 720);
+            content.drawString("Page " + (i + 1));
+            content.endText();
+            content.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        document.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGES * OBJECTS_PER_PAGE)
+    public COSWriter save() throws IOException, COSVisitorException
+    {
+        COSWriter writer = new COSWriter(NULL_OUTPUT);
+        writer.write(document);
+        return writer;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.common.function;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdmodel.common.function.type4.ExecutionContext;
+import org.apache.pdfbox.pdmodel.common.function.type4.InstructionSequence;
+import org.apache.pdfbox.pdmodel.common.function.type4.InstructionSequenceBuilder;
+import org.apache.pdfbox.pdmodel.common.function.type4.Operators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the cost of one evaluation of a Type 4 tint transform, mapping a tint to CMYK with
+ * a conditional, compiled by {@link PDFunctionType4} and interpreted like before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PDFunctionType4Benchmark
+{
+    private static final String PROGRAM = "{ dup 0.5 gt { 0.5 sub 2 mul 1 } { 2 mul 0 } ifelse "
+            + "exch dup 0.84 mul exch 0.21 mul 3 -1 roll 0 exch }";
+
+    private static final Operators OPERATORS = new Operators();
+
+    private PDFunctionType4 function;
+    private InstructionSequence instructions;
+    private final float[] input = new float[1];
+    private final float[] output = new float[4];
+    private float tint = 0;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        COSStream stream = new COSStream(new RandomAccessBuffer());
+        stream.setInt(COSName.FUNCTION_TYPE, 4);
+        COSArray domain = new COSArray();
+        domain.setFloatArray(new float[] { 0, 1 });
+        stream.setItem(COSName.DOMAIN, domain);
+        COSArray range = new COSArray();
+        for (int i = 0; i < 4; i++)
+        {
+            range.add(new COSFloat(0));
+            range.add(new COSFloat(1));
+        }
+        stream.setItem(COSName.RANGE, range);
+        OutputStream out = stream.createUnfilteredStream();
+        out.write(PROGRAM.getBytes("ISO-8859-1"));
+        out.close();
+        function = new PDFunctionType4(stream);
+        instructions = InstructionSequenceBuilder.parse(PROGRAM);
+    }
+
+    private float nextTint()
+    {
+        tint += 0.0625f;
+        if (tint > 1)
+        {
+            tint = 0;
+        }
+        return tint;
+    }
+
+    @Benchmark
+    public float[] compiled() throws IOException
+    {
+        input[0] = nextTint();
+        function.eval(input, output);
+        return output;
+    }
+
+    @Benchmark
+    public float[] compiledAllocating() throws IOException
+    {
+        input[0] = nextTint();
+        return function.eval(input);
+    }
+
+    @Benchmark
+    public float[] interpreted()
+    {
+        // the evaluation before programs were compiled
+        input[0] = nextTint();
+        ExecutionContext context = new ExecutionContext(OPERATORS);
+        context.getStack().push(function.clipToRange(input[0], 0, 1));
+        instructions.execute(context);
+        for (int i = output.length - 1; i >= 0; i--)
+        {
+            output[i] = function.clipToRange(context.popReal(), 0, 1);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.util;
+
+import java.io.UnsupportedEncodingException;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the NumberFormat based operand formatting of PDPageContentStream with
+ * {@link NumberFormatUtil}, using typical page coordinates and color components.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NumberFormatBenchmark
+{
+    private static final int COUNT = 1024;
+
+    private final float[] values = new float[COUNT];
+    private final byte[] buffer = new byte[NumberFormatUtil.MAX_LENGTH];
+    private NumberFormat formatDecimal;
+    private int index;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++)
+        {
+            switch (i % 3)
+            {
+            case 0:
+                values[i] = random.nextInt(612);
+                break;
+            case 1:
+                values[i] = random.nextFloat() * 792;
+                break;
+            default:
+                values[i] = random.nextInt(256) / 255f;
+                break;
+            }
+        }
+        formatDecimal = NumberFormat.getNumberInstance(Locale.US);
+        formatDecimal.setMaximumFractionDigits(10);
+        formatDecimal.setGroupingUsed(false);
+    }
+
+    private float next()
+    {
+        index = (index + 1) & (COUNT - 1);
+        return values[index];
+    }
+
+    @Benchmark
+    public byte[] numberFormat() throws UnsupportedEncodingException
+    {
+        return formatDecimal.format(next()).getBytes("ISO-8859-1");
+    }
+
+    @Benchmark
+    public byte[] formatFloatFast()
+    {
+        NumberFormatUtil.formatFloatFast(next(), 10, buffer);
+        return buffer;
+    }
+}
@@ -20,6 +20,8 @@ public class PDFCanvas implements Canvas, Context {
     private final PDPage mPage;
     private PDPageContentStream mStream;
     private int mGraphicsStackHeight = 0;
+    // the bounding box height of the font, getFontBoundingBox creates a new rectangle every time
+    private float mFontHeight = -1;
 
     public PDFCanvas(PDDocument doc, PDPage page) throws IOException {
         mPage = page;
@@ -129,8 +131,11 @@ public class PDFCanvas implements Canvas, Context {
 
         try {
             PDFont font = PDType1Font.HELVETICA_BOLD;
-            float width = font.getStringWidth(string) / 1000 * paint.mTextSize;
-            float height = font.getFontBoundingBox().getHeight() / 1000 * paint.mTextSize;
+            if(mFontHeight < 0) {
+                mFontHeight = font.getFontBoundingBox().getHeight();
+            }
+            float width = font.getStringWidth(string, 0, string.length()) / 1000 * paint.mTextSize;
+            float height = mFontHeight / 1000 * paint.mTextSize;
 
             bounds.setWidth(width);
             bounds.setHeight(height);
@@ -140,6 +145,21 @@ public class PDFCanvas implements Canvas, Context {
         }
     }
 
+    @Override
+    public void getTextAdvances(CharSequence text, int start, int end, float[] advances, Paint paint) {
+        try {
+            PDFont font = PDType1Font.HELVETICA_BOLD;
+            font.getStringAdvances(text, start, end, advances);
+            final float scale = paint.mTextSize / 1000;
+            for(int i=0;i<end-start;i++){
+                advances[i] *= scale;
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void drawText(String string, int x, int y, Paint paint) {
         try {
@@ -154,7 +174,7 @@ public class PDFCanvas implements Canvas, Context {
             mStream.setTextMatrix(matrix);
 
             mStream.moveTextPositionByAmount(x, -y);
-            mStream.drawString(string);
+            mStream.drawKernedString(string);
             mStream.endText();
 
         } catch (IOException e) {
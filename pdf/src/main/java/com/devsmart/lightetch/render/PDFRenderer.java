@@ -0,0 +1,144 @@
+package com.devsmart.lightetch.render;
+
+
+import com.devsmart.lightetch.Context;
+import com.devsmart.lightetch.Renderer;
+import com.devsmart.lightetch.View;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders many pages into a PDDocument using a pool of worker threads.
+ *
+ * Every page is measured, laid out and drawn on a worker with its own PDPage, PDFCanvas and
+ * content stream. The finished pages are added to the document on the calling thread in page
+ * order, so the document is the same no matter how many threads were used. Fonts and other
+ * shared resources are only read by the workers.
+ */
+public class PDFRenderer {
+
+    /**
+     * Creates the view tree of a single page. This is called on a worker thread, the returned
+     * views must only use the given context.
+     */
+    public interface PageFactory {
+        View createPage(Context context, int pageIndex) throws Exception;
+    }
+
+    private static class PageTask implements Callable<PDPage> {
+
+        private final PDDocument mDocument;
+        private final PDRectangle mPageSize;
+        private final PageFactory mFactory;
+        private final int mPageIndex;
+
+        PageTask(PDDocument document, PDRectangle pageSize, PageFactory factory, int pageIndex) {
+            mDocument = document;
+            mPageSize = pageSize;
+            mFactory = factory;
+            mPageIndex = pageIndex;
+        }
+
+        @Override
+        public PDPage call() throws Exception {
+            PDPage page = new PDPage(mPageSize);
+            PDFCanvas canvas = new PDFCanvas(mDocument, page);
+            View root = mFactory.createPage(canvas, mPageIndex);
+            Renderer.render(root, canvas);
+            canvas.done();
+            return page;
+        }
+    }
+
+    /**
+     * Renders pageCount pages on the given executor and appends them to the document.
+     * The executor is not shut down.
+     * @return the new pages in page order
+     */
+    public static List<PDPage> renderPages(PDDocument document, PDRectangle pageSize, int pageCount,
+                                           PageFactory factory, ExecutorService executor) throws IOException {
+        return renderPages(document, pageSize, pageCount, factory, executor, null);
+    }
+
+    /**
+     * Renders pageCount pages on the given executor, appends them to the document and hands every
+     * page to the writer as soon as it and all pages before it are finished, so the content of
+     * written pages doesn't stay in memory. The writer must have been started with
+     * {@link COSWriter#startDocument(PDDocument)}, finishing the document is left to the caller.
+     * The executor is not shut down.
+     * @return the new pages in page order
+     */
+    public static List<PDPage> renderPages(PDDocument document, PDRectangle pageSize, int pageCount,
+                                           PageFactory factory, ExecutorService executor,
+                                           COSWriter writer) throws IOException {
+
+        ArrayList<Future<PDPage>> futures = new ArrayList<Future<PDPage>>(pageCount);
+        for(int i=0;i<pageCount;i++){
+            futures.add(executor.submit(new PageTask(document, pageSize, factory, i)));
+        }
+
+        ArrayList<PDPage> pages = new ArrayList<PDPage>(pageCount);
+        try {
+            for(Future<PDPage> future : futures) {
+                PDPage page = future.get();
+                document.addPage(page);
+                pages.add(page);
+                if(writer != null) {
+                    writer.writePage(page);
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while rendering pages");
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            IOException io = new IOException("error rendering page " + pages.size());
+            io.initCause(cause);
+            throw io;
+        } catch (COSVisitorException e) {
+            cancel(futures);
+            IOException io = new IOException("error writing page " + (pages.size() - 1));
+            io.initCause(e);
+            throw io;
+        }
+
+        return pages;
+    }
+
+    /**
+     * Renders pageCount pages using numThreads worker threads and appends them to the document.
+     * @return the new pages in page order
+     */
+    public static List<PDPage> renderPages(PDDocument document, PDRectangle pageSize, int pageCount,
+                                           PageFactory factory, int numThreads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            return renderPages(document, pageSize, pageCount, factory, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void cancel(List<Future<PDPage>> futures) {
+        for(Future<PDPage> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.afm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.fontbox.util.BoundingBox;
+
+/**
+ * This class converts AFM(Adobe Font Metrics) documents into a compact binary form and reads
+ * them back, which is much faster than parsing the text with {@link AFMParser}.
+ *
+ * The binary form keeps the global metrics of the font, the code, name, width and bounding box
+ * of every character and the kerning pairs, with the characters referenced by their index.
+ * Comments, ligatures, composites and track kerning are dropped.
+ */
+public final class AFMCompiler
+{
+    /**
+     * The file extension of compiled metrics.
+     */
+    public static final String EXTENSION = ".bafm";
+
+    // "AFMB"
+    private static final int MAGIC = 0x41464D42;
+    private static final int VERSION = 1;
+
+    private AFMCompiler()
+    {
+    }
+
+    /**
+     * Compiles every AFM file of a directory.
+     *
+     * @param args The directory with the AFM files and the directory to write the compiled
+     * metrics to.
+     *
+     * @throws IOException If there is an error reading or writing a file.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("usage: java " + AFMCompiler.class.getName() + " <afm dir> <output dir>");
+            System.exit(1);
+        }
+        File outputDir = new File(args[1]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+        {
+            throw new IOException("Can't create " + outputDir);
+        }
+        File[] files = new File(args[0]).listFiles();
+        if (files == null)
+        {
+            throw new IOException("Can't list " + args[0]);
+        }
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!name.endsWith(".afm"))
+            {
+                continue;
+            }
+            FontMetric metric;
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                metric = new AFMParser(in).parse();
+            }
+            finally
+            {
+                in.close();
+            }
+            File target = new File(outputDir, name.substring(0, name.length() - 4) + EXTENSION);
+            OutputStream out = new FileOutputStream(target);
+            try
+            {
+                write(metric, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the binary form of font metrics.
+     *
+     * @param metric The metrics to write.
+     * @param output The stream to write to, it isn't closed.
+     *
+     * @throws IOException If there is an error writing the data or a kerning pair references
+     * an unknown character.
+     */
+    public static void write(FontMetric metric, OutputStream output) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        out.writeFloat(metric.getAFMVersion());
+        writeString(out, metric.getFontName());
+        writeString(out, metric.getFullName());
+        writeString(out, metric.getFamilyName());
+        writeString(out, metric.getWeight());
+        writeString(out, metric.getFontVersion());
+        writeString(out, metric.getEncodingScheme());
+        writeString(out, metric.getCharacterSet());
+        writeBoundingBox(out, metric.getFontBBox());
+        out.writeBoolean(metric.isFixedPitch());
+        out.writeFloat(metric.getItalicAngle());
+        out.writeFloat(metric.getCapHeight());
+        out.writeFloat(metric.getXHeight());
+        out.writeFloat(metric.getAscender());
+        out.writeFloat(metric.getDescender());
+        out.writeFloat(metric.getUnderlinePosition());
+        out.writeFloat(metric.getUnderlineThickness());
+
+        List<CharMetric> charMetrics = metric.getCharMetrics();
+        Map<String, Integer> indices = new HashMap<String, Integer>(charMetrics.size() * 2);
+        out.writeShort(charMetrics.size());
+        for (int i = 0; i < charMetrics.size(); i++)
+        {
+            CharMetric charMetric = charMetrics.get(i);
+            indices.put(charMetric.getName(), i);
+            out.writeShort(charMetric.getCharacterCode());
+            writeString(out, charMetric.getName());
+            out.writeFloat(charMetric.getWx());
+            out.writeFloat(charMetric.getWy());
+            writeBoundingBox(out, charMetric.getBoundingBox());
+        }
+        writeKernPairs(out, metric.getKernPairs(), indices);
+        writeKernPairs(out, metric.getKernPairs0(), indices);
+        writeKernPairs(out, metric.getKernPairs1(), indices);
+        out.flush();
+    }
+
+    /**
+     * Reads the binary form of font metrics.
+     *
+     * @param input The stream to read from, it isn't closed.
+     * @return The font metrics.
+     *
+     * @throws IOException If the data isn't valid.
+     */
+    public static FontMetric read(InputStream input) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION)
+        {
+            throw new IOException("Not a compiled AFM file");
+        }
+        FontMetric metric = new FontMetric();
+        metric.setAFMVersion(in.readFloat());
+        metric.setFontName(readString(in));
+        metric.setFullName(readString(in));
+        metric.setFamilyName(readString(in));
+        metric.setWeight(readString(in));
+        metric.setFontVersion(readString(in));
+        metric.setEncodingScheme(readString(in));
+        metric.setCharacterSet(readString(in));
+        metric.setFontBBox(readBoundingBox(in));
+        metric.setFixedPitch(in.readBoolean());
+        metric.setItalicAngle(in.readFloat());
+        metric.setCapHeight(in.readFloat());
+        metric.setXHeight(in.readFloat());
+        metric.setAscender(in.readFloat());
+        metric.setDescender(in.readFloat());
+        metric.setUnderlinePosition(in.readFloat());
+        metric.setUnderlineThickness(in.readFloat());
+
+        int count = in.readUnsignedShort();
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            CharMetric charMetric = new CharMetric();
+            charMetric.setCharacterCode(in.readShort());
+            names[i] = readString(in);
+            charMetric.setName(names[i]);
+            charMetric.setWx(in.readFloat());
+            charMetric.setWy(in.readFloat());
+            charMetric.setBoundingBox(readBoundingBox(in));
+            metric.addCharMetric(charMetric);
+        }
+        metric.setKernPairs(readKernPairs(in, names));
+        metric.setKernPairs0(readKernPairs(in, names));
+        metric.setKernPairs1(readKernPairs(in, names));
+        return metric;
+    }
+
+    private static void writeKernPairs(DataOutputStream out, List<KernPair> pairs,
+            Map<String, Integer> indices) throws IOException
+    {
+        out.writeInt(pairs.size());
+        for (KernPair pair : pairs)
+        {
+            out.writeShort(indexOf(indices, pair.getFirstKernCharacter()));
+            out.writeShort(indexOf(indices, pair.getSecondKernCharacter()));
+            out.writeFloat(pair.getX());
+            out.writeFloat(pair.getY());
+        }
+    }
+
+    private static List<KernPair> readKernPairs(DataInputStream in, String[] names) throws IOException
+    {
+        int count = in.readInt();
+        List<KernPair> pairs = new ArrayList<KernPair>(count);
+        for (int i = 0; i < count; i++)
+        {
+            KernPair pair = new KernPair();
+            pair.setFirstKernCharacter(names[in.readUnsignedShort()]);
+            pair.setSecondKernCharacter(names[in.readUnsignedShort()]);
+            pair.setX(in.readFloat());
+            pair.setY(in.readFloat());
+            pairs.add(pair);
+        }
+        return pairs;
+    }
+
+    private static int indexOf(Map<String, Integer> indices, String name) throws IOException
+    {
+        Integer index = indices.get(name);
+        if (index == null)
+        {
+            throw new IOException("Kerning pair with unknown character " + name);
+        }
+        return index.intValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBoundingBox(DataOutputStream out, BoundingBox box) throws IOException
+    {
+        out.writeBoolean(box != null);
+        if (box != null)
+        {
+            out.writeFloat(box.getLowerLeftX());
+            out.writeFloat(box.getLowerLeftY());
+            out.writeFloat(box.getUpperRightX());
+            out.writeFloat(box.getUpperRightY());
+        }
+    }
+
+    private static BoundingBox readBoundingBox(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean())
+        {
+            return null;
+        }
+        return new BoundingBox(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+    }
+}
@@ -20,8 +20,13 @@ package org.apache.fontbox.ttf;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 /**
  * Glyph description for composite glyphs. Composite glyphs are made up of one or more simple glyphs, usually with some
@@ -33,8 +38,13 @@ import java.util.List;
 public class GlyfCompositeDescript extends GlyfDescript
 {
 
+    private static final Log LOG = LogFactory.getLog(GlyfCompositeDescript.class);
+
     private List<GlyfCompositeComp> components = new ArrayList<GlyfCompositeComp>();
-    private GlyphData[] glyphs = null;
+
+    private GlyphTable glyphTable = null;
+    // the descriptions of the components, which may have been dropped from the glyph cache
+    private Map<Integer, GlyphDescription> descriptions = new HashMap<Integer, GlyphDescription>();
     private boolean beingResolved = false;
     private boolean resolved = false;
 
@@ -49,7 +59,7 @@ public class GlyfCompositeDescript extends GlyfDescript
     {
         super((short) -1, bais);
 
-        glyphs = glyphTable.getGlyphs();
+        this.glyphTable = glyphTable;
 
         // Get all of the composite components
         GlyfCompositeComp comp;
@@ -245,14 +255,23 @@ public class GlyfCompositeDescript extends GlyfDescript
 
     private GlyphDescription getGlypDescription(int index)
     {
-        if (glyphs != null && index < glyphs.length)
+        GlyphDescription description = descriptions.get(index);
+        if (description == null && glyphTable != null)
         {
-            GlyphData glyph = glyphs[index];
-            if (glyph != null)
+            try
             {
-                return glyph.getDescription();
+                GlyphData glyph = glyphTable.getGlyph(index);
+                if (glyph != null)
+                {
+                    description = glyph.getDescription();
+                    descriptions.put(index, description);
+                }
+            }
+            catch (IOException e)
+            {
+                LOG.error("Could not read component " + index + " of a composite glyph", e);
             }
         }
-        return null;
+        return description;
     }
 }
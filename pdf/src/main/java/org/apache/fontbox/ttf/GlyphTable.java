@@ -17,10 +17,17 @@
 package org.apache.fontbox.ttf;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A table in a true type font.
  * 
+ * Glyphs are decoded on first access, reading the table only keeps the offsets of the loca
+ * table. Decoded glyphs are kept for the lifetime of the font, or in a least recently used
+ * cache of limited size if {@link #setCacheSize(int)} was called. The font data must stay
+ * open as long as glyphs are read.
+ * 
  * @author Ben Litchfield (ben@benlitchfield.com)
  * 
  */
@@ -32,6 +39,14 @@ public class GlyphTable extends TTFTable
     public static final String TAG = "glyf";
 
     private GlyphData[] glyphs;
+    private Map<Integer, GlyphData> cache;
+    private int cacheSize = -1;
+
+    private TrueTypeFont font;
+    private TTFDataStream data;
+    // the glyph offsets
+    private long[] offsets;
+    private int numGlyphs;
 
     /**
      * This will read the required data from the stream.
@@ -42,56 +57,122 @@ public class GlyphTable extends TTFTable
      */
     public void initData(TrueTypeFont ttf, TTFDataStream data) throws IOException
     {
-        MaximumProfileTable maxp = ttf.getMaximumProfile();
-        IndexToLocationTable loc = ttf.getIndexToLocation();
-        // the glyph offsets
-        long[] offsets = loc.getOffsets();
-        // number of glyphs
-        int numGlyphs = maxp.getNumGlyphs();
-        // the end of the glyph table
-        long endOfGlyphs = offsets[numGlyphs];
-        long offset = getOffset();
-        glyphs = new GlyphData[numGlyphs];
-        for (int i = 0; i < numGlyphs; i++)
+        font = ttf;
+        this.data = data;
+        offsets = ttf.getIndexToLocation().getOffsets();
+        numGlyphs = ttf.getMaximumProfile().getNumGlyphs();
+    }
+
+    /**
+     * Returns the glyph with the given id, decoding it if it hasn't been used before.
+     * Composite glyphs are resolved.
+     * 
+     * @param gid The glyph id.
+     * @return The glyph or null if the glyph has no outline or the id is invalid.
+     * @throws IOException If there is an error reading the glyph.
+     */
+    public synchronized GlyphData getGlyph(int gid) throws IOException
+    {
+        if (glyphs != null && gid >= 0 && gid < glyphs.length && glyphs[gid] != null)
         {
-            // end of glyphs reached?
-            if (endOfGlyphs == offsets[i])
-            {
-                break;
-            }
-            // the current glyph isn't defined
-            // if the next offset equals the current index
-            if (offsets[i] == offsets[i + 1])
+            return glyphs[gid];
+        }
+        if (gid < 0 || gid >= numGlyphs || data == null)
+        {
+            return null;
+        }
+        GlyphData glyph = cache != null ? cache.get(gid) : null;
+        if (glyph != null)
+        {
+            return glyph;
+        }
+        // the glyph isn't defined if the next offset equals the current one,
+        // nothing is defined behind the end of the glyphs
+        if (offsets[gid] == offsets[gid + 1] || offsets[gid] >= offsets[numGlyphs])
+        {
+            return null;
+        }
+        glyph = new GlyphData();
+        data.seek(getOffset() + offsets[gid]);
+        glyph.initData(font, data);
+        if (cacheSize < 0)
+        {
+            if (glyphs == null)
             {
-                continue;
+                glyphs = new GlyphData[numGlyphs];
             }
-            glyphs[i] = new GlyphData();
-            data.seek(offset + offsets[i]);
-            glyphs[i].initData(ttf, data);
+            glyphs[gid] = glyph;
+        }
+        else if (cacheSize > 0)
+        {
+            cache.put(gid, glyph);
         }
-        for (int i = 0; i < numGlyphs; i++)
+        // resolve composite glyphs, which loads their components
+        if (glyph.getDescription().isComposite())
         {
-            GlyphData glyph = glyphs[i];
-            // resolve composite glyphs
-            if (glyph != null && glyph.getDescription().isComposite())
+            glyph.getDescription().resolve();
+        }
+        return glyph;
+    }
+
+    /**
+     * Limits the number of decoded glyphs which are kept in memory. Glyphs which have been
+     * decoded before are dropped.
+     * 
+     * @param size The maximum number of glyphs to keep or -1 to keep all of them.
+     */
+    public synchronized void setCacheSize(int size)
+    {
+        cacheSize = size;
+        glyphs = null;
+        if (size > 0)
+        {
+            final int maxEntries = size;
+            cache = new LinkedHashMap<Integer, GlyphData>(16, 0.75f, true)
             {
-                glyph.getDescription().resolve();
-            }
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, GlyphData> eldest)
+                {
+                    return size() > maxEntries;
+                }
+            };
+        }
+        else
+        {
+            cache = null;
         }
     }
 
     /**
+     * @return The number of glyphs in the font.
+     */
+    public int getNumberOfGlyphs()
+    {
+        return glyphs != null && data == null ? glyphs.length : numGlyphs;
+    }
+
+    /**
+     * Returns all glyphs, which decodes every glyph of the font. Use {@link #getGlyph(int)} to
+     * decode only the glyphs which are needed.
+     * 
      * @return Returns the glyphs.
+     * @throws IOException If there is an error reading the glyphs.
      */
-    public GlyphData[] getGlyphs()
+    public synchronized GlyphData[] getGlyphs() throws IOException
     {
-        return glyphs;
+        int count = getNumberOfGlyphs();
+        GlyphData[] all = new GlyphData[count];
+        for (int i = 0; i < count; i++)
+        {
+            all[i] = getGlyph(i);
+        }
+        return all;
     }
 
     /**
      * @param glyphsValue The glyphs to set.
      */
-    public void setGlyphs(GlyphData[] glyphsValue)
+    public synchronized void setGlyphs(GlyphData[] glyphsValue)
     {
         glyphs = glyphsValue;
     }
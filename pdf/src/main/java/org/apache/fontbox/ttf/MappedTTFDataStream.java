@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.ttf;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An implementation of the TTFDataStream which maps the font file into memory.
+ *
+ * Unlike {@link MemoryTTFDataStream} the data isn't copied to the Java heap, the pages of
+ * the file are shared with the operating system's file cache and loaded when they are read.
+ * The mapping stays valid until the stream is garbage collected, even after it is closed.
+ */
+public class MappedTTFDataStream extends TTFDataStream
+{
+    private ByteBuffer data;
+    // used for bulk reads, absolute reads don't touch its position
+    private ByteBuffer view;
+    private int currentPosition = 0;
+    private final int length;
+
+    /**
+     * Constructor.
+     *
+     * @param file The font file.
+     *
+     * @throws IOException If the file can't be mapped.
+     */
+    public MappedTTFDataStream(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Font file too large: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            // the mapping doesn't need the file to stay open
+            raf.close();
+        }
+        view = data.duplicate();
+        length = data.limit();
+    }
+
+    /**
+     * Read an unsigned byte.
+     * @return An unsigned byte.
+     * @throws IOException If there is an error reading the data.
+     */
+    public int read() throws IOException
+    {
+        checkClosed();
+        int retval = -1;
+        if (currentPosition < length)
+        {
+            retval = data.get(currentPosition) & 0xff;
+        }
+        currentPosition++;
+        return retval;
+    }
+
+    /**
+     * Read a signed 64-bit integer.
+     * @return A signed long.
+     * @throws IOException If there is an error reading the data.
+     */
+    public long readLong() throws IOException
+    {
+        checkAvailable(8);
+        long retval = data.getLong(currentPosition);
+        currentPosition += 8;
+        return retval;
+    }
+
+    /**
+     * Read an unsigned short.
+     *
+     * @return An unsigned short.
+     * @throws IOException If there is an error reading the data.
+     */
+    public int readUnsignedShort() throws IOException
+    {
+        checkAvailable(2);
+        int retval = data.getShort(currentPosition) & 0xffff;
+        currentPosition += 2;
+        return retval;
+    }
+
+    /**
+     * Read an signed short.
+     *
+     * @return An signed short.
+     * @throws IOException If there is an error reading the data.
+     */
+    public short readSignedShort() throws IOException
+    {
+        checkAvailable(2);
+        short retval = data.getShort(currentPosition);
+        currentPosition += 2;
+        return retval;
+    }
+
+    /**
+     * Close the underlying resources. The mapping is released by the garbage collector.
+     *
+     * @throws IOException If there is an error closing the resources.
+     */
+    public void close() throws IOException
+    {
+        data = null;
+        view = null;
+    }
+
+    /**
+     * Seek into the datasource.
+     *
+     * @param pos The position to seek to.
+     * @throws IOException If there is an error seeking to that position.
+     */
+    public void seek(long pos) throws IOException
+    {
+        currentPosition = (int) Math.min(pos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @see java.io.InputStream#read( byte[], int, int )
+     *
+     * @param b The buffer to write to.
+     * @param off The offset into the buffer.
+     * @param len The length into the buffer.
+     *
+     * @return The number of bytes read, or -1 at the end of the stream
+     *
+     * @throws IOException If there is an error reading from the stream.
+     */
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        checkClosed();
+        if (currentPosition >= length)
+        {
+            return -1;
+        }
+        int amountRead = Math.min(len, length - currentPosition);
+        view.position(currentPosition);
+        view.get(b, off, amountRead);
+        currentPosition += amountRead;
+        return amountRead;
+    }
+
+    /**
+     * Get the current position in the stream.
+     * @return The current position in the stream.
+     * @throws IOException If an error occurs while reading the stream.
+     */
+    public long getCurrentPosition() throws IOException
+    {
+        return currentPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream getOriginalData() throws IOException
+    {
+        checkClosed();
+        final ByteBuffer original = data.duplicate();
+        original.clear();
+        return new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                return original.hasRemaining() ? original.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                if (!original.hasRemaining())
+                {
+                    return -1;
+                }
+                int amountRead = Math.min(len, original.remaining());
+                original.get(b, off, amountRead);
+                return amountRead;
+            }
+
+            @Override
+            public long skip(long n)
+            {
+                int amount = (int) Math.max(0, Math.min(n, original.remaining()));
+                original.position(original.position() + amount);
+                return amount;
+            }
+
+            @Override
+            public int available()
+            {
+                return original.remaining();
+            }
+        };
+    }
+
+    private void checkAvailable(int amount) throws IOException
+    {
+        checkClosed();
+        if (currentPosition < 0 || currentPosition > length - amount)
+        {
+            throw new EOFException();
+        }
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (data == null)
+        {
+            throw new IOException("MappedTTFDataStream already closed");
+        }
+    }
+}
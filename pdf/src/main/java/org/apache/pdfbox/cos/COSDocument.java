@@ -29,6 +29,7 @@ import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.filter.FlateCompression;
 import org.apache.pdfbox.io.RandomAccess;
 import org.apache.pdfbox.io.RandomAccessBuffer;
 import org.apache.pdfbox.io.RandomAccessFile;
@@ -86,6 +87,8 @@ public class COSDocument extends COSBase implements Closeable
     private boolean closed = false;
 
     private boolean isXRefStream;
+
+    private FlateCompression compression = FlateCompression.DEFAULT;
     
     /**
      * Flag to skip malformed or otherwise unparseable input where possible.
@@ -689,6 +692,32 @@ public class COSDocument extends COSBase implements Closeable
         return isXRefStream;
     }
     
+    /**
+     * This will get the settings used to flate encode the streams of this document which
+     * have no settings of their own.
+     *
+     * @return The compression settings.
+     */
+    public FlateCompression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * This will set the settings used to flate encode the streams of this document which
+     * have no settings of their own.
+     *
+     * @param compressionValue The compression settings.
+     */
+    public void setCompression(FlateCompression compressionValue)
+    {
+        if (compressionValue == null)
+        {
+            throw new IllegalArgumentException("compression must not be null");
+        }
+        compression = compressionValue;
+    }
+
     /**
      * Sets isXRefStream to the given value.
      * 
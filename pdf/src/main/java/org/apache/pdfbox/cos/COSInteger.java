@@ -45,6 +45,14 @@ public class COSInteger extends COSNumber
      * to {@link #HIGH}.
      */
     private static final COSInteger[] STATIC = new COSInteger[HIGH - LOW + 1];
+    static
+    {
+        // filled eagerly, so that get() can be called from several threads
+        for (int i = 0; i < STATIC.length; i++)
+        {
+            STATIC[i] = new COSInteger(i + LOW);
+        }
+    }
 
     /**
      * Constant for the number zero.
@@ -78,12 +86,7 @@ public class COSInteger extends COSNumber
      */
     public static COSInteger get(long val) {
         if (LOW <= val && val <= HIGH) {
-            int index = (int) val - LOW;
-            // no synchronization needed
-            if (STATIC[index] == null) {
-                STATIC[index] = new COSInteger(val);
-            }
-            return STATIC[index];
+            return STATIC[(int) val - LOW];
         } else {
             return new COSInteger(val);
         }
@@ -511,6 +511,10 @@ public final class COSName extends COSBase implements Comparable<COSName>
      * A common COSName value.
      */
     public static final COSName E = new COSName("E");
+    /**
+     * A common COSName value.
+     */
+    public static final COSName EARLY_CHANGE = new COSName("EarlyChange");
     /**
      * A common COSName value.
      */
@@ -1591,8 +1595,8 @@ public final class COSName extends COSBase implements Comparable<COSName>
      */
     public static final COSName SIG_FLAGS = new COSName("SigFlags");
 
-    private String name;
-    private int hashCode;
+    private final String name;
+    private final int hashCode;
 
     /**
      * This will get a COSName object with that name.
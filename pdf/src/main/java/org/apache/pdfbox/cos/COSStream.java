@@ -28,6 +28,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.filter.Filter;
 import org.apache.pdfbox.filter.FilterManager;
+import org.apache.pdfbox.filter.FlateCompression;
 import org.apache.pdfbox.io.*;
 import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.io.IOUtils;
@@ -57,11 +58,18 @@ public class COSStream extends COSDictionary
      */
     private RandomAccessFileOutputStream unFilteredStream;
 
+    /**
+     * The settings used to flate encode this stream, null to use the settings of the document.
+     */
+    private FlateCompression compression;
+
     private RandomAccess clone (RandomAccess file) {
         if (file == null) {
             return null;
         } else if (file instanceof RandomAccessFile) {
             return file;
+        } else if (file instanceof RandomAccessSpillBuffer) {
+            return ((RandomAccessSpillBuffer)file).clone();
         } else {
             return ((RandomAccessBuffer)file).clone();
         }
@@ -104,6 +112,28 @@ public class COSStream extends COSDictionary
         file = stream.file;
         filteredStream = stream.filteredStream;
         unFilteredStream = stream.unFilteredStream;
+        compression = stream.compression;
+    }
+
+    /**
+     * This will get the settings used to flate encode this stream.
+     *
+     * @return The compression settings or null if the settings of the document are used.
+     */
+    public FlateCompression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * This will set the settings used to flate encode this stream. They only apply to data
+     * which is encoded after this call.
+     *
+     * @param compressionValue The compression settings or null to use the settings of the document.
+     */
+    public void setCompression(FlateCompression compressionValue)
+    {
+        compression = compressionValue;
     }
 
     /**
@@ -138,6 +168,25 @@ public class COSStream extends COSDictionary
         return new BufferedInputStream( input, BUFFER_SIZE );
     }
 
+    /**
+     * This will write the encoded stream to the given output. The data is copied straight from
+     * the scratch storage in as large blocks as possible, see
+     * {@link IOUtils#copy(RandomAccess, long, long, OutputStream)}.
+     *
+     * @param out the stream to write the bytes of the physical (encoded) stream to
+     * @return the number of bytes written
+     *
+     * @throws java.io.IOException when encoding causes an exception or the data can't be written
+     */
+    public long writeFilteredStream(OutputStream out) throws IOException
+    {
+        if( filteredStream == null )
+        {
+            doEncode();
+        }
+        return IOUtils.copy( file, filteredStream.getPosition(), filteredStream.getLength(), out );
+    }
+
     /**
      * This will get the length of the encoded stream.
      * 
@@ -476,6 +525,31 @@ public class COSStream extends COSDictionary
         return new BufferedOutputStream( unFilteredStream, BUFFER_SIZE );
     }
     
+    /**
+     * This will drop the data of the stream after it has been written. The dictionary is kept,
+     * so references to this stream stay valid, but the stream can't be read anymore. Data held
+     * in memory is freed, data in a shared scratch file is left to the document.
+     */
+    public void releaseData()
+    {
+        IOUtils.closeQuietly(filteredStream);
+        filteredStream = null;
+        IOUtils.closeQuietly(unFilteredStream);
+        unFilteredStream = null;
+        if (file instanceof RandomAccessBuffer || file instanceof RandomAccessSpillBuffer)
+        {
+            try
+            {
+                file.close();
+            }
+            catch (IOException exception)
+            {
+                LOG.error("Exception occured when releasing the stream data.", exception);
+            }
+        }
+        file = null;
+    }
+
     public void close()
     {
     	try
@@ -20,44 +20,99 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
-import org.apache.pdfbox.io.ASCII85InputStream;
-import org.apache.pdfbox.io.ASCII85OutputStream;
-
 import org.apache.pdfbox.cos.COSDictionary;
 
 /**
- * This is the used for the ASCIIHexDecode filter.
+ * This is the used for the ASCII85Decode filter.
+ *
+ * Both directions work on buffers of whole groups, four bytes to five characters, rather than
+ * one byte at a time through {@link org.apache.pdfbox.io.ASCII85InputStream} and
+ * {@link org.apache.pdfbox.io.ASCII85OutputStream}. The encoded data is written in lines of
+ * 72 characters and ends with the ~&gt; end of data marker.
  *
  * @author <a href="mailto:ben@benlitchfield.com">Ben Litchfield</a>
  * @version $Revision: 1.8 $
  */
 public class ASCII85Filter implements Filter
 {
+    private static final int OFFSET = '!';
+    private static final int Z = 'z';
+    private static final int TERMINATOR = '~';
+    private static final int LINE_LENGTH = 72;
+
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * {@inheritDoc}
      */
     public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        ASCII85InputStream is = null;
-        try
+        byte[] in = new byte[BUFFER_SIZE];
+        // four bytes for every five characters, or for every z
+        byte[] out = new byte[4 * BUFFER_SIZE];
+        long group = 0;
+        int groupLength = 0;
+        boolean terminated = false;
+
+        int amountRead;
+        while( !terminated && (amountRead = compressedData.read( in, 0, BUFFER_SIZE )) != -1 )
         {
-            is = new ASCII85InputStream(compressedData);
-            byte[] buffer = new byte[1024];
-            int amountRead = 0;
-            while( (amountRead = is.read( buffer, 0, 1024) ) != -1 )
+            int outPos = 0;
+            for( int i=0; i<amountRead; i++ )
             {
-                result.write(buffer, 0, amountRead);
+                int c = in[i] & 0xff;
+                if( c >= OFFSET && c < OFFSET + 85 )
+                {
+                    group = group * 85 + (c - OFFSET);
+                    if( ++groupLength == 5 )
+                    {
+                        out[outPos++] = (byte)(group >>> 24);
+                        out[outPos++] = (byte)(group >>> 16);
+                        out[outPos++] = (byte)(group >>> 8);
+                        out[outPos++] = (byte)group;
+                        group = 0;
+                        groupLength = 0;
+                    }
+                }
+                else if( c == Z && groupLength == 0 )
+                {
+                    out[outPos++] = 0;
+                    out[outPos++] = 0;
+                    out[outPos++] = 0;
+                    out[outPos++] = 0;
+                }
+                else if( c == TERMINATOR )
+                {
+                    terminated = true;
+                    break;
+                }
+                else if( !isWhitespace( c ) )
+                {
+                    throw new IOException( "Invalid data in Ascii85 stream" );
+                }
             }
-            result.flush();
+            result.write( out, 0, outPos );
         }
-        finally
+
+        if( groupLength > 1 )
         {
-            if( is != null )
+            // a final partial group of n characters is padded with u and gives n - 1 bytes
+            for( int i=groupLength; i<5; i++ )
+            {
+                group = group * 85 + 84;
+            }
+            for( int i=1; i<groupLength; i++ )
             {
-                is.close();
+                result.write( (int)(group >>> (32 - 8 * i)) );
             }
         }
+        result.flush();
+    }
+
+    private static boolean isWhitespace( int c )
+    {
+        return c == 0 || c == 9 || c == 10 || c == 12 || c == 13 || c == 32;
     }
 
     /**
@@ -66,14 +121,89 @@ public class ASCII85Filter implements Filter
     public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        ASCII85OutputStream os = new ASCII85OutputStream(result);
-        byte[] buffer = new byte[1024];
-        int amountRead = 0;
-        while( (amountRead = rawData.read( buffer, 0, 1024 )) != -1 )
+        byte[] in = new byte[BUFFER_SIZE];
+        // five characters for every four bytes, and a line break for every line
+        byte[] out = new byte[BUFFER_SIZE / 4 * 5 + BUFFER_SIZE / LINE_LENGTH * 2 + 16];
+        int[] digits = new int[5];
+        int column = 0;
+        int inLength = 0;
+
+        int amountRead;
+        while( (amountRead = rawData.read( in, inLength, BUFFER_SIZE - inLength )) != -1 )
+        {
+            inLength += amountRead;
+            int groupsEnd = inLength & ~3;
+            int outPos = 0;
+            for( int i=0; i<groupsEnd; i+=4 )
+            {
+                long group = ((in[i] & 0xffL) << 24) | ((in[i+1] & 0xff) << 16) | ((in[i+2] & 0xff) << 8)
+                    | (in[i+3] & 0xff);
+                if( group == 0 )
+                {
+                    out[outPos++] = (byte)Z;
+                    if( ++column == LINE_LENGTH )
+                    {
+                        out[outPos++] = '\n';
+                        column = 0;
+                    }
+                    continue;
+                }
+                for( int j=4; j>=0; j-- )
+                {
+                    digits[j] = (int)(group % 85);
+                    group /= 85;
+                }
+                for( int j=0; j<5; j++ )
+                {
+                    out[outPos++] = (byte)(digits[j] + OFFSET);
+                    if( ++column == LINE_LENGTH )
+                    {
+                        out[outPos++] = '\n';
+                        column = 0;
+                    }
+                }
+            }
+            result.write( out, 0, outPos );
+            // keep the bytes of an incomplete group for the next read
+            for( int i=groupsEnd; i<inLength; i++ )
+            {
+                in[i - groupsEnd] = in[i];
+            }
+            inLength -= groupsEnd;
+        }
+
+        int outPos = 0;
+        if( inLength > 0 )
+        {
+            // a final partial group of n bytes is padded with zeros and gives n + 1 characters
+            long group = 0;
+            for( int i=0; i<4; i++ )
+            {
+                group = (group << 8) | (i < inLength ? in[i] & 0xff : 0);
+            }
+            for( int j=4; j>=0; j-- )
+            {
+                digits[j] = (int)(group % 85);
+                group /= 85;
+            }
+            for( int j=0; j<=inLength; j++ )
+            {
+                out[outPos++] = (byte)(digits[j] + OFFSET);
+                if( ++column == LINE_LENGTH )
+                {
+                    out[outPos++] = '\n';
+                    column = 0;
+                }
+            }
+        }
+        if( column + 2 > LINE_LENGTH )
         {
-            os.write( buffer, 0, amountRead );
+            out[outPos++] = '\n';
         }
-        os.close();
+        out[outPos++] = (byte)TERMINATOR;
+        out[outPos++] = '>';
+        out[outPos++] = '\n';
+        result.write( out, 0, outPos );
         result.flush();
     }
 }
@@ -29,6 +29,9 @@ import org.apache.pdfbox.persistence.util.COSHEXTable;
 /**
  * This is the used for the ASCIIHexDecode filter.
  *
+ * Both directions work on buffers instead of single bytes. The encoded data is written in lines
+ * of 128 digits and ends with the &gt; end of data marker.
+ *
  * @author <a href="mailto:ben@benlitchfield.com">Ben Litchfield</a>
  * @version $Revision: 1.9 $
  */
@@ -39,6 +42,12 @@ public class ASCIIHexFilter implements Filter
      * Log instance.
      */
     private static final Log log = LogFactory.getLog(ASCIIHexFilter.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // the encoded data is broken into lines of 128 digits
+    private static final int BYTES_PER_LINE = 64;
+
     /**
      * Whitespace.
      *   0  0x00  Null (NUL)
@@ -65,43 +74,48 @@ public class ASCIIHexFilter implements Filter
     public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException 
     {
-        int value = 0;
-        int firstByte = 0;
-        int secondByte = 0;
-        while ((firstByte = compressedData.read()) != -1) 
+        byte[] in = new byte[BUFFER_SIZE];
+        byte[] out = new byte[BUFFER_SIZE / 2 + 1];
+        // the first digit of a byte, or -1 if the next digit starts a new byte
+        int high = -1;
+        boolean terminated = false;
+
+        int amountRead;
+        while( !terminated && (amountRead = compressedData.read( in, 0, BUFFER_SIZE )) != -1 )
         {
-            // always after first char
-            while(isWhitespace(firstByte))
-            {
-                firstByte = compressedData.read();
-            }
-            if(isEOD(firstByte))
-            {
-                break;
-            }
-       
-            if(REVERSE_HEX[firstByte] == -1)
-            {
-                log.error("Invalid Hex Code; int: " + firstByte + " char: " + (char) firstByte);
-            }
-            value = REVERSE_HEX[firstByte] * 16;
-            secondByte = compressedData.read();
-       
-            if(isEOD(secondByte)) 
-            {
-                // second value behaves like 0 in case of EOD
-                result.write( value );
-                break;
-            }
-            if(secondByte >= 0) 
+            int outPos = 0;
+            for( int i=0; i<amountRead; i++ )
             {
-                if(REVERSE_HEX[secondByte] == -1)
+                int c = in[i] & 0xff;
+                int digit = c < REVERSE_HEX.length ? REVERSE_HEX[c] : -1;
+                if( digit >= 0 )
+                {
+                    if( high < 0 )
+                    {
+                        high = digit;
+                    }
+                    else
+                    {
+                        out[outPos++] = (byte)(high * 16 + digit);
+                        high = -1;
+                    }
+                }
+                else if( isEOD( c ) )
                 {
-                    log.error("Invalid Hex Code; int: " + secondByte + " char: " + (char) secondByte);
+                    terminated = true;
+                    break;
+                }
+                else if( !isWhitespace( c ) )
+                {
+                    log.error("Invalid Hex Code; int: " + c + " char: " + (char) c);
                 }
-                value += REVERSE_HEX[secondByte];
             }
-            result.write( value );
+            result.write( out, 0, outPos );
+        }
+        if( high >= 0 )
+        {
+            // a missing last digit behaves like 0
+            result.write( high * 16 );
         }
         result.flush();
     }
@@ -219,12 +233,29 @@ public class ASCIIHexFilter implements Filter
     public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        int byteRead = 0;
-        while( (byteRead = rawData.read()) != -1 )
+        byte[] in = new byte[BUFFER_SIZE];
+        // two digits for every byte, and a line break for every line
+        byte[] out = new byte[2 * BUFFER_SIZE + BUFFER_SIZE / BYTES_PER_LINE + 2];
+        int column = 0;
+
+        int amountRead;
+        while( (amountRead = rawData.read( in, 0, BUFFER_SIZE )) != -1 )
         {
-            int value = (byteRead+256)%256;
-            result.write( COSHEXTable.TABLE[value] );
+            int outPos = 0;
+            for( int i=0; i<amountRead; i++ )
+            {
+                byte[] digits = COSHEXTable.TABLE[in[i] & 0xff];
+                out[outPos++] = digits[0];
+                out[outPos++] = digits[1];
+                if( ++column == BYTES_PER_LINE )
+                {
+                    out[outPos++] = '\n';
+                    column = 0;
+                }
+            }
+            result.write( out, 0, outPos );
         }
+        result.write( '>' );
         result.flush();
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.filter;
+
+import java.util.zip.Deflater;
+
+/**
+ * The settings used by the FlateDecode filter to compress a stream.
+ *
+ * Settings can be given for a whole document with
+ * {@link org.apache.pdfbox.pdmodel.PDDocument#setCompression(FlateCompression)} and for single
+ * streams with {@link org.apache.pdfbox.pdmodel.common.PDStream#setCompression(FlateCompression)}.
+ *
+ * @see Deflater
+ */
+public final class FlateCompression
+{
+    private static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    /**
+     * A reasonable size from which on compressing a stream on several cores pays off.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The default zlib settings.
+     */
+    public static final FlateCompression DEFAULT =
+            new FlateCompression(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, DEFAULT_BUFFER_SIZE);
+
+    /**
+     * The fastest compression, e.g. for interactive previews.
+     */
+    public static final FlateCompression FAST =
+            new FlateCompression(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, DEFAULT_BUFFER_SIZE);
+
+    /**
+     * The smallest output, e.g. for archival documents.
+     */
+    public static final FlateCompression MAX =
+            new FlateCompression(Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY, 4 * DEFAULT_BUFFER_SIZE);
+
+    private final int level;
+    private final int strategy;
+    private final int bufferSize;
+    private final int parallelThreshold;
+
+    /**
+     * Constructor for settings which compress every stream on a single thread.
+     *
+     * @param level The compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param strategy The compression strategy, one of {@link Deflater#DEFAULT_STRATEGY},
+     *        {@link Deflater#FILTERED} and {@link Deflater#HUFFMAN_ONLY}.
+     * @param bufferSize The size of the buffers used while compressing.
+     */
+    public FlateCompression(int level, int strategy, int bufferSize)
+    {
+        this(level, strategy, bufferSize, -1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param level The compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param strategy The compression strategy, one of {@link Deflater#DEFAULT_STRATEGY},
+     *        {@link Deflater#FILTERED} and {@link Deflater#HUFFMAN_ONLY}.
+     * @param bufferSize The size of the buffers used while compressing.
+     * @param parallelThreshold Streams of at least this many bytes are split into blocks which
+     *        are compressed on several threads, -1 to always use a single thread.
+     */
+    public FlateCompression(int level, int strategy, int bufferSize, int parallelThreshold)
+    {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+        {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED
+                && strategy != Deflater.HUFFMAN_ONLY)
+        {
+            throw new IllegalArgumentException("invalid compression strategy " + strategy);
+        }
+        if (bufferSize <= 0)
+        {
+            throw new IllegalArgumentException("invalid buffer size " + bufferSize);
+        }
+        if (parallelThreshold < -1)
+        {
+            throw new IllegalArgumentException("invalid parallel threshold " + parallelThreshold);
+        }
+        this.level = level;
+        this.strategy = strategy;
+        this.bufferSize = bufferSize;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Creates settings which compress large streams on several threads, like pigz does. The
+     * output is a little larger than with a single thread. A Java 6 runtime ignores the
+     * threshold and uses a single thread.
+     *
+     * @param threshold The minimum size of a stream which is compressed in parallel.
+     * @return The new settings.
+     */
+    public FlateCompression withParallelThreshold(int threshold)
+    {
+        return new FlateCompression(level, strategy, bufferSize, threshold);
+    }
+
+    /**
+     * @return The compression level.
+     */
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * @return The compression strategy.
+     */
+    public int getStrategy()
+    {
+        return strategy;
+    }
+
+    /**
+     * @return The size of the buffers used while compressing.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * @return The minimum size of a stream which is compressed in parallel or -1.
+     */
+    public int getParallelThreshold()
+    {
+        return parallelThreshold;
+    }
+
+    /**
+     * Tells if a stream is compressed on several threads. This is never the case on a Java 6
+     * runtime, which can't end a block of compressed data with a sync flush.
+     *
+     * @param length The length of the stream.
+     * @return true if the stream is compressed in parallel
+     */
+    public boolean isParallel(long length)
+    {
+        return parallelThreshold >= 0 && length >= parallelThreshold && ParallelFlateEncoder.SUPPORTED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof FlateCompression))
+        {
+            return false;
+        }
+        FlateCompression other = (FlateCompression) o;
+        return level == other.level && strategy == other.strategy && bufferSize == other.bufferSize
+                && parallelThreshold == other.parallelThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return ((level * 31 + strategy) * 31 + bufferSize) * 31 + parallelThreshold;
+    }
+}
@@ -21,7 +21,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 
@@ -31,6 +37,7 @@ import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 
 /**
  * This is the used for the FlateDecode filter.
@@ -47,7 +54,12 @@ public class FlateFilter implements Filter
      */
     private static final Log LOG = LogFactory.getLog(FlateFilter.class);
 
-    private static final int BUFFER_SIZE = 16348;
+    private static final int MAX_POOLED_DEFLATERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final ConcurrentMap<Integer, Queue<Deflater>> DEFLATER_POOLS =
+            new ConcurrentHashMap<Integer, Queue<Deflater>>();
+
+    private static final AtomicInteger POOLED_DEFLATERS = new AtomicInteger();
 
     /**
      * {@inheritDoc}
@@ -324,22 +336,201 @@ public class FlateFilter implements Filter
 
     /**
      * {@inheritDoc}
+     *
+     * The stream is compressed with the settings of the COSStream given as options, see
+     * {@link COSStream#getCompression()}, or the default settings if it has none.
      */
     public void encode(InputStream rawData, OutputStream result, COSDictionary options, int filterIndex )
     throws IOException
     {
-        DeflaterOutputStream out = new DeflaterOutputStream(result);
-        int amountRead = 0;
-        int mayRead = rawData.available();
-        if (mayRead > 0)
+        FlateCompression compression = null;
+        if (options instanceof COSStream)
+        {
+            compression = ((COSStream)options).getCompression();
+        }
+        if (compression == null)
+        {
+            compression = FlateCompression.DEFAULT;
+        }
+        if (compression.isParallel(rawData.available()))
+        {
+            ParallelFlateEncoder.encode(rawData, result, compression);
+            result.flush();
+            return;
+        }
+        int bufferSize = compression.getBufferSize();
+        Deflater deflater = acquireDeflater(compression, false);
+        try
         {
-            byte[] buffer = new byte[Math.min(mayRead,BUFFER_SIZE)];
-            while ((amountRead = rawData.read(buffer, 0, Math.min(mayRead,BUFFER_SIZE))) != -1)
+            DeflaterOutputStream out = new DeflaterOutputStream(result, deflater, bufferSize);
+            int amountRead = 0;
+            int mayRead = rawData.available();
+            if (mayRead > 0)
             {
-                out.write(buffer, 0, amountRead);
+                byte[] buffer = new byte[Math.min(mayRead,bufferSize)];
+                while ((amountRead = rawData.read(buffer, 0, Math.min(mayRead,bufferSize))) != -1)
+                {
+                    out.write(buffer, 0, amountRead);
+                }
             }
+            out.close();
+        }
+        finally
+        {
+            releaseDeflater(compression, false, deflater);
         }
-        out.close();
         result.flush();
     }
+
+    /**
+     * Creates a stream which compresses the data written to it, for data which is produced
+     * incrementally. Closing the stream finishes the compressed data and closes the result
+     * stream.
+     *
+     * Settings with a parallel threshold compress the data on several threads once it reaches
+     * the threshold, see {@link FlateCompression#withParallelThreshold(int)}. Until then the data
+     * is buffered uncompressed in memory, so up to a threshold's worth of data is held at once,
+     * and shorter data is compressed on a single thread when the stream is closed. Without a
+     * threshold, or on a runtime which can't compress in parallel, the data is compressed on a
+     * single thread as it is written.
+     *
+     * @param result The stream to write the encoded data to.
+     * @param compression The compression settings.
+     *
+     * @return The stream to write the data to encode to.
+     */
+    public static OutputStream createEncoderStream(OutputStream result, final FlateCompression compression)
+    {
+        if (compression.getParallelThreshold() >= 0 && ParallelFlateEncoder.SUPPORTED)
+        {
+            return new ParallelFlateEncoder.EncoderStream(result, compression);
+        }
+        final Deflater deflater = acquireDeflater(compression, false);
+        return new DeflaterOutputStream(result, deflater, compression.getBufferSize())
+        {
+            private boolean closed = false;
+
+            public void close() throws IOException
+            {
+                if (closed)
+                {
+                    return;
+                }
+                closed = true;
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    releaseDeflater(compression, false, deflater);
+                }
+            }
+        };
+    }
+
+    /**
+     * Compresses a block of data that is already in memory in one pass.
+     *
+     * @param rawData The data to encode.
+     * @param offset The offset of the first byte to encode.
+     * @param length The number of bytes to encode.
+     * @param result The stream to write the encoded data to.
+     *
+     * @throws IOException If there is an error writing the encoded data.
+     */
+    public static void encode(byte[] rawData, int offset, int length, OutputStream result)
+    throws IOException
+    {
+        encode(rawData, offset, length, result, FlateCompression.DEFAULT);
+    }
+
+    /**
+     * Compresses a block of data that is already in memory in one pass.
+     *
+     * @param rawData The data to encode.
+     * @param offset The offset of the first byte to encode.
+     * @param length The number of bytes to encode.
+     * @param result The stream to write the encoded data to.
+     * @param compression The compression settings.
+     *
+     * @throws IOException If there is an error writing the encoded data.
+     */
+    public static void encode(byte[] rawData, int offset, int length, OutputStream result,
+            FlateCompression compression) throws IOException
+    {
+        if (compression.isParallel(length))
+        {
+            ParallelFlateEncoder.encode(new ByteArrayInputStream(rawData, offset, length), result, compression);
+            result.flush();
+            return;
+        }
+        Deflater deflater = acquireDeflater(compression, false);
+        try
+        {
+            deflater.setInput(rawData, offset, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, Math.min(length, compression.getBufferSize()))];
+            while (!deflater.finished())
+            {
+                int amountWritten = deflater.deflate(buffer);
+                result.write(buffer, 0, amountWritten);
+            }
+        }
+        finally
+        {
+            releaseDeflater(compression, false, deflater);
+        }
+        result.flush();
+    }
+
+    // Deflaters hold native memory which is only freed by end() or finalization, so they are
+    // reused. Every pool holds deflaters of one level, strategy and format, changing the
+    // parameters of a used deflater could change the output. Raw deflaters without the zlib
+    // wrapper are used by the ParallelFlateEncoder.
+    static Deflater acquireDeflater(FlateCompression compression, boolean nowrap)
+    {
+        Queue<Deflater> pool = DEFLATER_POOLS.get(poolKey(compression, nowrap));
+        Deflater deflater = pool != null ? pool.poll() : null;
+        if (deflater != null)
+        {
+            POOLED_DEFLATERS.decrementAndGet();
+            return deflater;
+        }
+        deflater = new Deflater(compression.getLevel(), nowrap);
+        if (compression.getStrategy() != Deflater.DEFAULT_STRATEGY)
+        {
+            deflater.setStrategy(compression.getStrategy());
+        }
+        return deflater;
+    }
+
+    static void releaseDeflater(FlateCompression compression, boolean nowrap, Deflater deflater)
+    {
+        if (POOLED_DEFLATERS.incrementAndGet() > MAX_POOLED_DEFLATERS)
+        {
+            POOLED_DEFLATERS.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        Integer key = poolKey(compression, nowrap);
+        Queue<Deflater> pool = DEFLATER_POOLS.get(key);
+        if (pool == null)
+        {
+            Queue<Deflater> newPool = new ConcurrentLinkedQueue<Deflater>();
+            pool = DEFLATER_POOLS.putIfAbsent(key, newPool);
+            if (pool == null)
+            {
+                pool = newPool;
+            }
+        }
+        pool.offer(deflater);
+    }
+
+    private static Integer poolKey(FlateCompression compression, boolean nowrap)
+    {
+        int key = (compression.getLevel() + 1) * 4 + compression.getStrategy();
+        return nowrap ? -1 - key : key;
+    }
 }
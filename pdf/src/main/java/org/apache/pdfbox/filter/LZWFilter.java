@@ -16,21 +16,26 @@
  */
 package org.apache.pdfbox.filter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
 import java.io.StreamCorruptedException;
+import java.util.Arrays;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
-
-import org.apache.pdfbox.io.NBitInputStream;
-import org.apache.pdfbox.io.NBitOutputStream;
+import org.apache.pdfbox.cos.COSName;
 
 /**
  * This is the used for the LZWDecode filter.
  *
+ * The string table is kept in flat arrays: every code has the code of its prefix, its last
+ * byte and its length, so a string is written backwards into a reusable buffer when decoding.
+ * The encoder finds the code of a prefix followed by a byte in an open addressing hash table.
+ * The EarlyChange parameter of the decode parameters is honoured, by default the code length
+ * grows one code early as the PDF specification requires.
+ *
  * @author <a href="mailto:ben@benlitchfield.com">Ben Litchfield</a>
  * @version $Revision: 1.15 $
  */
@@ -46,75 +51,132 @@ public class LZWFilter implements Filter
      */
     public static final long EOD = 257;
 
+    private static final int CLEAR = 256;
+    private static final int END = 257;
+    private static final int FIRST_CODE = 258;
+    private static final int MAX_CODES = 4096;
+    private static final int MAX_CODE_LENGTH = 12;
+
+    // the encoder's hash table, twice the size of the string table
+    private static final int HASH_SIZE = 8192;
+    private static final int HASH_MASK = HASH_SIZE - 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * {@inheritDoc}
      */
     public void decode( InputStream compressedData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        //log.debug("decode( )");
-        NBitInputStream in = null;
-        in = new NBitInputStream( compressedData );
-        in.setBitsInChunk( 9 );
-        LZWDictionary dic = new LZWDictionary();
-        byte firstByte = 0;
-        long nextCommand = 0;
-        while( (nextCommand = in.read() ) != EOD )
+        int earlyChange = getEarlyChange( options, filterIndex );
+
+        int[] prefix = new int[MAX_CODES];
+        byte[] suffix = new byte[MAX_CODES];
+        int[] length = new int[MAX_CODES];
+        for( int i=0; i<256; i++ )
         {
-            // log.debug( "decode - nextCommand=" + nextCommand + ", bitsInChunk: " + in.getBitsInChunk());
+            prefix[i] = -1;
+            suffix[i] = (byte)i;
+            length[i] = 1;
+        }
+        // a string is at most as long as the table
+        byte[] string = new byte[MAX_CODES];
+        byte[] out = new byte[BUFFER_SIZE];
+        int outCount = 0;
 
-            if( nextCommand == CLEAR_TABLE )
-            {
-                in.setBitsInChunk( 9 );
-                dic = new LZWDictionary();
-            }
-            else
+        byte[] in = new byte[BUFFER_SIZE];
+        int inCount = 0;
+        int inPos = 0;
+        int bitBuffer = 0;
+        int bitCount = 0;
+
+        int codeLength = 9;
+        int nextCode = FIRST_CODE;
+        int previous = -1;
+        while( true )
+        {
+            while( bitCount < codeLength )
             {
-                byte[] data = dic.getData( nextCommand );
-                if( data == null )
+                if( inPos == inCount )
                 {
-                    dic.visit( firstByte );
-                    data = dic.getData( nextCommand );
-                    dic.clear();
+                    inCount = compressedData.read( in, 0, in.length );
+                    inPos = 0;
+                    if( inCount <= 0 )
+                    {
+                        break;
+                    }
                 }
-                if( data == null )
-                {
-                    throw new StreamCorruptedException( "Error: data is null" );
-                }
-                dic.visit(data);
+                bitBuffer = (bitBuffer << 8) | (in[inPos++] & 0xFF);
+                bitCount += 8;
+            }
+            if( bitCount < codeLength )
+            {
+                // missing EOD
+                break;
+            }
+            bitCount -= codeLength;
+            int code = (bitBuffer >>> bitCount) & ((1 << codeLength) - 1);
 
-                //log.debug( "decode - dic.getNextCode(): " + dic.getNextCode());
+            if( code == CLEAR )
+            {
+                codeLength = 9;
+                nextCode = FIRST_CODE;
+                previous = -1;
+                continue;
+            }
+            if( code == END )
+            {
+                break;
+            }
 
-                if( dic.getNextCode() >= 2047 )
-                {
-                    in.setBitsInChunk( 12 );
-                }
-                else if( dic.getNextCode() >= 1023 )
-                {
-                    in.setBitsInChunk( 11 );
-                }
-                else if( dic.getNextCode() >= 511 )
+            int stringLength;
+            if( code < nextCode )
+            {
+                stringLength = length[code];
+                int c = code;
+                for( int i=stringLength-1; i>=0; i-- )
                 {
-                    in.setBitsInChunk( 10 );
+                    string[i] = suffix[c];
+                    c = prefix[c];
                 }
-                else
+            }
+            else if( code == nextCode && previous != -1 )
+            {
+                // the previous string followed by its own first byte
+                stringLength = length[previous] + 1;
+                int c = previous;
+                for( int i=stringLength-2; i>=0; i-- )
                 {
-                    in.setBitsInChunk( 9 );
+                    string[i] = suffix[c];
+                    c = prefix[c];
                 }
-                /**
-                if( in.getBitsInChunk() != dic.getCodeSize() )
-                {
-                    in.unread( nextCommand );
-                    in.setBitsInChunk( dic.getCodeSize() );
-                    System.out.print( "Switching " + nextCommand + " to " );
-                    nextCommand = in.read();
-                    System.out.println( "" +  nextCommand );
-                    data = dic.getData( nextCommand );
-                }**/
-                firstByte = data[0];
-                result.write( data );
+                string[stringLength - 1] = string[0];
+            }
+            else
+            {
+                throw new StreamCorruptedException( "Error: invalid LZW code " + code );
+            }
+
+            if( previous != -1 && nextCode < MAX_CODES )
+            {
+                prefix[nextCode] = previous;
+                suffix[nextCode] = string[0];
+                length[nextCode] = length[previous] + 1;
+                nextCode++;
+                codeLength = getCodeLength( nextCode, earlyChange );
             }
+            previous = code;
+
+            if( outCount + stringLength > out.length )
+            {
+                result.write( out, 0, outCount );
+                outCount = 0;
+            }
+            System.arraycopy( string, 0, out, outCount, stringLength );
+            outCount += stringLength;
         }
+        result.write( out, 0, outCount );
         result.flush();
     }
 
@@ -125,87 +187,183 @@ public class LZWFilter implements Filter
     public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        //log.debug("encode( )");
-        PushbackInputStream input = new PushbackInputStream( rawData, 4096 );
-        LZWDictionary dic = new LZWDictionary();
-        NBitOutputStream out = new NBitOutputStream( result );
-        out.setBitsInChunk( 9 ); //initially nine
-        out.write( CLEAR_TABLE );
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int byteRead = 0;
-        for( int i=0; (byteRead = input.read()) != -1; i++ )
+        int earlyChange = getEarlyChange( options, filterIndex );
+
+        // key is the prefix code shifted left by 8 bits plus the byte, -1 marks an empty slot
+        int[] hashKeys = new int[HASH_SIZE];
+        int[] hashCodes = new int[HASH_SIZE];
+        Arrays.fill( hashKeys, -1 );
+
+        byte[] in = new byte[BUFFER_SIZE];
+        byte[] out = new byte[BUFFER_SIZE];
+        int outCount = 0;
+        int bitBuffer = 0;
+        int bitCount = 0;
+
+        int codeLength = 9;
+        int nextCode = FIRST_CODE;
+        int current = -1;
+
+        // start with a clear table code, like other writers do
+        bitBuffer = CLEAR;
+        bitCount = codeLength;
+
+        int inCount;
+        while( (inCount = rawData.read( in, 0, in.length )) != -1 )
         {
-            //log.debug( "byteRead = '" + (char)byteRead + "' (0x" + Integer.toHexString(byteRead) + "), i=" + i);
-            buffer.write( byteRead );
-            dic.visit( (byte)byteRead );
-            out.setBitsInChunk( dic.getCodeSize() );
-
-            //log.debug( "Getting node '" + new String( buffer.toByteArray() ) + "', buffer.size = " + buffer.size() );
-            LZWNode node = dic.getNode( buffer.toByteArray() );
-            int nextByte = input.read();
-            if( nextByte != -1 )
+            for( int i=0; i<inCount; i++ )
             {
-                //log.debug( "nextByte = '" + (char)nextByte + "' (0x" + Integer.toHexString(nextByte) + ")");
-                LZWNode next = node.getNode( (byte)nextByte );
-                if( next == null )
+                int b = in[i] & 0xFF;
+                if( current == -1 )
+                {
+                    current = b;
+                    continue;
+                }
+                int key = (current << 8) | b;
+                int slot = hash( key );
+                while( hashKeys[slot] != -1 && hashKeys[slot] != key )
                 {
-                    //log.debug("encode - No next node, writing node and resetting buffer (" +
-                    //          " node.getCode: " + node.getCode() + ")" +
-                    //          " bitsInChunk: " + out.getBitsInChunk() +
-                    //          ")");
-                    out.write( node.getCode() );
-                    buffer.reset();
+                    slot = (slot + 1) & HASH_MASK;
+                }
+                if( hashKeys[slot] == key )
+                {
+                    if( nextCode < MAX_CODES )
+                    {
+                        current = hashCodes[slot];
+                        continue;
+                    }
+                    // the table is full and the string goes on, it is cleared before the
+                    // current code is written and that code starts over with the new table
+                    bitBuffer = (bitBuffer << codeLength) | CLEAR;
+                    bitCount += codeLength;
+                    Arrays.fill( hashKeys, -1 );
+                    nextCode = FIRST_CODE;
+                    codeLength = 9;
+                    slot = hash( key );
                 }
 
-                input.unread( nextByte );
+                // write the code of the longest known string
+                bitBuffer = (bitBuffer << codeLength) | current;
+                bitCount += codeLength;
+                while( bitCount >= 8 )
+                {
+                    bitCount -= 8;
+                    if( outCount == out.length )
+                    {
+                        result.write( out, 0, outCount );
+                        outCount = 0;
+                    }
+                    out[outCount++] = (byte)(bitBuffer >>> bitCount);
+                }
+
+                if( nextCode == MAX_CODES )
+                {
+                    // the table is full and the string ends, it is cleared after its code
+                    bitBuffer = (bitBuffer << codeLength) | CLEAR;
+                    bitCount += codeLength;
+                    Arrays.fill( hashKeys, -1 );
+                    nextCode = FIRST_CODE;
+                    codeLength = 9;
+                }
+                else
+                {
+                    hashKeys[slot] = key;
+                    hashCodes[slot] = nextCode++;
+                    // the decoder adds the code one code later
+                    codeLength = getCodeLength( nextCode - 1, earlyChange );
+                }
+                current = b;
             }
-            else
+        }
+
+        if( current != -1 )
+        {
+            bitBuffer = (bitBuffer << codeLength) | current;
+            bitCount += codeLength;
+            // the decoder adds a code for the last string before reading the EOD
+            if( nextCode > FIRST_CODE )
             {
-                //log.debug("encode - EOF on lookahead: writing node, resetting buffer, and terminating read loop (" +
-                //          " node.getCode: " + node.getCode() + ")" +
-                //          " bitsInChunk: " + out.getBitsInChunk() +
-                //          ")");
-                out.write( node.getCode() );
-                buffer.reset();
-                break;
+                codeLength = getCodeLength( nextCode, earlyChange );
             }
-
-            if( dic.getNextCode() == 4096 )
+            while( bitCount >= 8 )
             {
-                //log.debug("encode - Clearing dictionary and unreading pending buffer data (" +
-                //          " bitsInChunk: " + out.getBitsInChunk() +
-                //          ")");
-                out.write( CLEAR_TABLE );
-                dic = new LZWDictionary();
-                input.unread( buffer.toByteArray() );
-                buffer.reset();
+                bitCount -= 8;
+                if( outCount == out.length )
+                {
+                    result.write( out, 0, outCount );
+                    outCount = 0;
+                }
+                out[outCount++] = (byte)(bitBuffer >>> bitCount);
             }
         }
-
-        // Fix the code size based on the fact that we are writing the EOD
-        //
-        if( dic.getNextCode() >= 2047 )
+        bitBuffer = (bitBuffer << codeLength) | END;
+        bitCount += codeLength;
+        while( bitCount > 0 )
         {
-            out.setBitsInChunk( 12 );
+            if( outCount == out.length )
+            {
+                result.write( out, 0, outCount );
+                outCount = 0;
+            }
+            // the last byte is padded with zero bits
+            bitCount -= 8;
+            out[outCount++] = (byte)(bitCount >= 0 ? bitBuffer >>> bitCount : bitBuffer << -bitCount);
         }
-        else if( dic.getNextCode() >= 1023 )
+        result.write( out, 0, outCount );
+        result.flush();
+    }
+
+    private static int hash( int key )
+    {
+        return (key * 0x9E3779B1 >>> 19) & HASH_MASK;
+    }
+
+    /**
+     * Gets the length of the next code to read once a code has been added to the table.
+     *
+     * @param nextCode The code which will be added next.
+     * @param earlyChange 1 if the length grows one code early, 0 if it doesn't.
+     * @return The code length in bits.
+     */
+    private static int getCodeLength( int nextCode, int earlyChange )
+    {
+        int code = nextCode + earlyChange;
+        if( code >= 2048 )
         {
-            out.setBitsInChunk( 11 );
+            return MAX_CODE_LENGTH;
         }
-        else if( dic.getNextCode() >= 511 )
+        else if( code >= 1024 )
         {
-            out.setBitsInChunk( 10 );
+            return 11;
         }
-        else
+        else if( code >= 512 )
         {
-            out.setBitsInChunk( 9 );
+            return 10;
         }
+        return 9;
+    }
 
-        //log.debug("encode - Writing EOD (" +
-        //          " bitsInChunk: " + out.getBitsInChunk() +
-        //          ")");
-        out.write( EOD );
-        out.close();
-        result.flush();
+    private static int getEarlyChange( COSDictionary options, int filterIndex ) throws IOException
+    {
+        COSBase baseObj = options.getDictionaryObject( COSName.DECODE_PARMS, COSName.DP );
+        COSDictionary dict = null;
+        if( baseObj instanceof COSDictionary )
+        {
+            dict = (COSDictionary)baseObj;
+        }
+        else if( baseObj instanceof COSArray )
+        {
+            COSArray paramArray = (COSArray)baseObj;
+            if( filterIndex < paramArray.size() && paramArray.getObject( filterIndex ) instanceof COSDictionary )
+            {
+                dict = (COSDictionary)paramArray.getObject( filterIndex );
+            }
+        }
+        else if( baseObj != null )
+        {
+            throw new IOException( "Error: Expected COSArray or COSDictionary and not "
+                    + baseObj.getClass().getName() );
+        }
+        return dict == null ? 1 : dict.getInt( COSName.EARLY_CHANGE, 1 );
     }
 }
@@ -0,0 +1,548 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a stream on several threads in the way of pigz.
+ *
+ * The input is split into blocks which are deflated concurrently as raw deflate data. Every
+ * block is primed with the last 32 KiB of the block before it as preset dictionary, so matches
+ * may still reach back into the previous block, and all blocks but the last end with a sync
+ * flush, which aligns them to a byte boundary. The blocks are then simply concatenated between
+ * a zlib header and the Adler-32 checksum of the whole input, giving a single valid zlib
+ * stream which any inflater can read.
+ */
+final class ParallelFlateEncoder
+{
+    /**
+     * The size of the blocks which are compressed on one thread.
+     */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    // the deflate window, matches can't reach further back
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    // at most this many blocks are read ahead of the writer
+    private static final int MAX_PENDING_BLOCKS = 2 * THREADS;
+
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * Tells if the runtime can compress in parallel. The blocks are ended with a sync flush,
+     * which Deflater only supports from Java 7 on, streams are compressed on a single thread
+     * on older runtimes.
+     */
+    static final boolean SUPPORTED = isSyncFlushSupported();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory()
+    {
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "PDFBox parallel deflate");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The compressed data and the checksum of a single block.
+     */
+    private static class Block
+    {
+        private final byte[] data;
+        private final long adler;
+        private final int length;
+
+        Block(byte[] data, long adler, int length)
+        {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    private static class BlockTask implements Callable<Block>
+    {
+        private final byte[] input;
+        private final byte[] dictionary;
+        private final boolean last;
+        private final FlateCompression compression;
+
+        BlockTask(byte[] input, byte[] dictionary, boolean last, FlateCompression compression)
+        {
+            this.input = input;
+            this.dictionary = dictionary;
+            this.last = last;
+            this.compression = compression;
+        }
+
+        public Block call()
+        {
+            Adler32 adler = new Adler32();
+            adler.update(input, 0, input.length);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+            byte[] buffer = new byte[Math.min(compression.getBufferSize(), input.length + 64)];
+            Deflater deflater = FlateFilter.acquireDeflater(compression, true);
+            try
+            {
+                if (dictionary != null)
+                {
+                    int dictionaryLength = Math.min(DICTIONARY_SIZE, dictionary.length);
+                    deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+                }
+                deflater.setInput(input, 0, input.length);
+                if (last)
+                {
+                    deflater.finish();
+                    while (!deflater.finished())
+                    {
+                        int amountWritten = deflater.deflate(buffer);
+                        out.write(buffer, 0, amountWritten);
+                    }
+                }
+                else
+                {
+                    // a full output buffer means there may be more to flush
+                    int amountWritten;
+                    do
+                    {
+                        amountWritten = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        out.write(buffer, 0, amountWritten);
+                    }
+                    while (amountWritten == buffer.length);
+                }
+            }
+            finally
+            {
+                FlateFilter.releaseDeflater(compression, true, deflater);
+            }
+            return new Block(out.toByteArray(), adler.getValue(), input.length);
+        }
+    }
+
+    private static boolean isSyncFlushSupported()
+    {
+        try
+        {
+            Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    private final OutputStream result;
+    private final FlateCompression compression;
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+    private long adler = 1;
+    private byte[] previous = null;
+
+    /**
+     * Starts a zlib stream whose input is submitted block by block.
+     *
+     * @param result The stream to write the encoded data to.
+     * @param compression The compression settings.
+     *
+     * @throws IOException If there is an error writing the header.
+     */
+    private ParallelFlateEncoder(OutputStream result, FlateCompression compression) throws IOException
+    {
+        this.result = result;
+        this.compression = compression;
+        writeHeader(result, compression.getLevel());
+    }
+
+    /**
+     * Compresses the input in parallel blocks and writes a zlib stream.
+     *
+     * @param rawData The data to encode.
+     * @param result The stream to write the encoded data to.
+     * @param compression The compression settings.
+     *
+     * @throws IOException If there is an error reading or writing the data.
+     */
+    static void encode(InputStream rawData, OutputStream result, FlateCompression compression)
+    throws IOException
+    {
+        ParallelFlateEncoder encoder = new ParallelFlateEncoder(result, compression);
+        try
+        {
+            byte[] block = readBlock(rawData);
+            if (block == null)
+            {
+                block = new byte[0];
+            }
+            while (block != null)
+            {
+                byte[] next = readBlock(rawData);
+                encoder.submit(block, next == null);
+                block = next;
+            }
+            encoder.finish();
+        }
+        catch (IOException e)
+        {
+            encoder.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Submits the next block of the input. The oldest blocks are written to the result when
+     * too many are pending.
+     *
+     * @param block The block, which must not be changed afterwards.
+     * @param last true for the last block, which may be empty.
+     *
+     * @throws IOException If there is an error compressing or writing a block.
+     */
+    private void submit(byte[] block, boolean last) throws IOException
+    {
+        pending.add(EXECUTOR.submit(new BlockTask(block, previous, last, compression)));
+        previous = block;
+        if (pending.size() >= MAX_PENDING_BLOCKS)
+        {
+            writeBlock(pending.poll());
+        }
+    }
+
+    /**
+     * Writes the pending blocks and the checksum, after the last block was submitted.
+     *
+     * @throws IOException If there is an error compressing or writing a block.
+     */
+    private void finish() throws IOException
+    {
+        while (!pending.isEmpty())
+        {
+            writeBlock(pending.poll());
+        }
+        result.write((int) (adler >>> 24) & 0xff);
+        result.write((int) (adler >>> 16) & 0xff);
+        result.write((int) (adler >>> 8) & 0xff);
+        result.write((int) adler & 0xff);
+    }
+
+    private void cancel()
+    {
+        for (Future<Block> future : pending)
+        {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private void writeBlock(Future<Block> future) throws IOException
+    {
+        Block block;
+        try
+        {
+            block = future.get();
+        }
+        catch (InterruptedException e)
+        {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while compressing");
+        }
+        catch (ExecutionException e)
+        {
+            cancel();
+            IOException io = new IOException("error compressing block");
+            io.initCause(e.getCause());
+            throw io;
+        }
+        result.write(block.data);
+        adler = combineAdler(adler, block.adler, block.length);
+    }
+
+    /**
+     * A stream which compresses the data written to it like
+     * {@link FlateFilter#createEncoderStream(OutputStream, FlateCompression)}. The data is
+     * buffered uncompressed in memory until it reaches the parallel threshold of the settings,
+     * from then on every full block is compressed while the next ones are written. Shorter data
+     * stays in memory until the stream is closed, and is then compressed on a single thread.
+     * The output is the same as that of
+     * {@link FlateFilter#encode(byte[], int, int, OutputStream, FlateCompression)}.
+     */
+    static final class EncoderStream extends OutputStream
+    {
+        private final OutputStream result;
+        private final FlateCompression compression;
+        // the full blocks written before the threshold was reached
+        private final List<byte[]> blocks = new ArrayList<byte[]>();
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int blockLength = 0;
+        private long length = 0;
+        private ParallelFlateEncoder encoder = null;
+        private boolean closed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param result The stream to write the encoded data to, it is closed with this stream.
+         * @param compression The compression settings, with a parallel threshold.
+         */
+        EncoderStream(OutputStream result, FlateCompression compression)
+        {
+            this.result = result;
+            this.compression = compression;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void write(int b) throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("stream closed");
+            }
+            block[blockLength++] = (byte) b;
+            length++;
+            if (blockLength == BLOCK_SIZE)
+            {
+                nextBlock();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("stream closed");
+            }
+            while (len > 0)
+            {
+                int n = Math.min(len, BLOCK_SIZE - blockLength);
+                System.arraycopy(b, off, block, blockLength, n);
+                blockLength += n;
+                length += n;
+                off += n;
+                len -= n;
+                if (blockLength == BLOCK_SIZE)
+                {
+                    nextBlock();
+                }
+            }
+        }
+
+        private void nextBlock() throws IOException
+        {
+            blocks.add(block);
+            block = new byte[BLOCK_SIZE];
+            blockLength = 0;
+            submitBlocks();
+        }
+
+        private void submitBlocks() throws IOException
+        {
+            if (encoder == null && compression.isParallel(length))
+            {
+                encoder = new ParallelFlateEncoder(result, compression);
+            }
+            if (encoder != null)
+            {
+                try
+                {
+                    // the newest block is held back, it may turn out to be the last one
+                    while (blocks.size() > 1)
+                    {
+                        encoder.submit(blocks.remove(0), false);
+                    }
+                }
+                catch (IOException e)
+                {
+                    encoder.cancel();
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Finishes the compressed data and closes the result stream.
+         *
+         * @throws IOException If there is an error compressing or writing the data.
+         */
+        public void close() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            try
+            {
+                submitBlocks();
+                byte[] rest = new byte[blockLength];
+                System.arraycopy(block, 0, rest, 0, blockLength);
+                if (encoder != null)
+                {
+                    try
+                    {
+                        if (blockLength > 0 || blocks.isEmpty())
+                        {
+                            blocks.add(rest);
+                        }
+                        for (int i = 0; i < blocks.size(); i++)
+                        {
+                            encoder.submit(blocks.get(i), i == blocks.size() - 1);
+                        }
+                        encoder.finish();
+                    }
+                    catch (IOException e)
+                    {
+                        encoder.cancel();
+                        throw e;
+                    }
+                }
+                else
+                {
+                    // below the threshold
+                    byte[] data = new byte[(int) length];
+                    int offset = 0;
+                    for (byte[] full : blocks)
+                    {
+                        System.arraycopy(full, 0, data, offset, BLOCK_SIZE);
+                        offset += BLOCK_SIZE;
+                    }
+                    System.arraycopy(rest, 0, data, offset, rest.length);
+                    FlateFilter.encode(data, 0, data.length, result, compression);
+                }
+            }
+            finally
+            {
+                blocks.clear();
+                block = null;
+                result.close();
+            }
+        }
+    }
+
+    private static void writeHeader(OutputStream result, int level) throws IOException
+    {
+        // the same header zlib writes: 32K window and the level as compression hint
+        int levelFlags;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6)
+        {
+            levelFlags = 2;
+        }
+        else if (level < 2)
+        {
+            levelFlags = 0;
+        }
+        else if (level < 6)
+        {
+            levelFlags = 1;
+        }
+        else
+        {
+            levelFlags = 3;
+        }
+        int header = (0x78 << 8) | (levelFlags << 6);
+        header += 31 - header % 31;
+        result.write(header >> 8);
+        result.write(header & 0xff);
+    }
+
+    /**
+     * Reads the next block, which is shorter than {@link #BLOCK_SIZE} only at the end of the
+     * input.
+     *
+     * @return the block or null if there is no more input
+     */
+    private static byte[] readBlock(InputStream in) throws IOException
+    {
+        byte[] block = new byte[BLOCK_SIZE];
+        int length = 0;
+        int amountRead;
+        while (length < BLOCK_SIZE && (amountRead = in.read(block, length, BLOCK_SIZE - length)) != -1)
+        {
+            length += amountRead;
+        }
+        if (length == 0)
+        {
+            return null;
+        }
+        if (length < BLOCK_SIZE)
+        {
+            byte[] shortBlock = new byte[length];
+            System.arraycopy(block, 0, shortBlock, 0, length);
+            return shortBlock;
+        }
+        return block;
+    }
+
+    /**
+     * Computes the Adler-32 checksum of two concatenated pieces of data from their single
+     * checksums, like adler32_combine of zlib.
+     *
+     * @param adler1 The checksum of the first piece.
+     * @param adler2 The checksum of the second piece.
+     * @param length2 The length of the second piece.
+     * @return The checksum of both pieces.
+     */
+    static long combineAdler(long adler1, long adler2, long length2)
+    {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE)
+        {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE)
+        {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2 * ADLER_BASE)
+        {
+            sum2 -= 2 * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE)
+        {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
@@ -19,9 +19,8 @@ package org.apache.pdfbox.filter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.cos.COSDictionary;
 
 /**
@@ -48,13 +47,13 @@ import org.apache.pdfbox.cos.COSDictionary;
  */
 public class RunLengthDecodeFilter implements Filter
 {
-    /**
-     * Log instance.
-     */
-    private static final Log log = LogFactory.getLog(RunLengthDecodeFilter.class);
-
     private static final int RUN_LENGTH_EOD = 128;
 
+    // the longest run or literal sequence of one length byte
+    private static final int MAX_RUN = 128;
+
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * Constructor.
      */
@@ -70,7 +69,7 @@ public class RunLengthDecodeFilter implements Filter
         throws IOException
     {
         int dupAmount = -1;
-        byte[] buffer = new byte[128];
+        byte[] buffer = new byte[MAX_RUN];
         while( (dupAmount = compressedData.read()) != -1 && dupAmount != RUN_LENGTH_EOD )
         {
             if( dupAmount <= 127 )
@@ -80,6 +79,10 @@ public class RunLengthDecodeFilter implements Filter
                 while( amountToCopy > 0 )
                 {
                     compressedRead = compressedData.read( buffer, 0, amountToCopy );
+                    if( compressedRead == -1 )
+                    {
+                        return;
+                    }
                     result.write( buffer, 0, compressedRead );
                     amountToCopy -= compressedRead;
                 }
@@ -87,20 +90,105 @@ public class RunLengthDecodeFilter implements Filter
             else
             {
                 int dupByte = compressedData.read();
-                for( int i=0; i<257-dupAmount; i++ )
+                if( dupByte == -1 )
                 {
-                    result.write( dupByte );
+                    return;
                 }
+                Arrays.fill( buffer, 0, 257-dupAmount, (byte)dupByte );
+                result.write( buffer, 0, 257-dupAmount );
             }
         }
     }
 
-     /**
+    /**
      * {@inheritDoc}
+     *
+     * Runs of three or more equal bytes are replaced by a repeat, a run of two only when it
+     * doesn't interrupt a literal sequence, as that would cost one more length byte than it saves.
      */
     public void encode( InputStream rawData, OutputStream result, COSDictionary options, int filterIndex ) 
         throws IOException
     {
-        log.warn( "RunLengthDecodeFilter.encode is not implemented yet, skipping this stream." );
+        byte[] in = new byte[BUFFER_SIZE];
+        // room for a repeat and a full literal sequence after the flush threshold
+        byte[] out = new byte[BUFFER_SIZE + 2 * (MAX_RUN + 1)];
+        int outPos = 0;
+        // the literal sequence is collected in the output buffer after its length byte
+        int literalStart = -1;
+        int runByte = 0;
+        int runLength = 0;
+
+        int amountRead;
+        while( (amountRead = rawData.read( in, 0, BUFFER_SIZE )) != -1 )
+        {
+            for( int i=0; i<amountRead; i++ )
+            {
+                int b = in[i] & 0xff;
+                if( runLength > 0 && b == runByte && runLength < MAX_RUN )
+                {
+                    runLength++;
+                    continue;
+                }
+                if( runLength >= 3 || (runLength == 2 && literalStart < 0) )
+                {
+                    literalStart = -1;
+                    out[outPos++] = (byte)(257 - runLength);
+                    out[outPos++] = (byte)runByte;
+                }
+                else
+                {
+                    for( int j=0; j<runLength; j++ )
+                    {
+                        if( literalStart < 0 )
+                        {
+                            literalStart = outPos++;
+                        }
+                        out[outPos++] = (byte)runByte;
+                        int literalLength = outPos - literalStart - 1;
+                        out[literalStart] = (byte)(literalLength - 1);
+                        if( literalLength == MAX_RUN )
+                        {
+                            literalStart = -1;
+                        }
+                    }
+                }
+                if( outPos >= BUFFER_SIZE )
+                {
+                    if( literalStart < 0 )
+                    {
+                        result.write( out, 0, outPos );
+                        outPos = 0;
+                    }
+                    else
+                    {
+                        // an open literal sequence moves to the front, its length may still change
+                        result.write( out, 0, literalStart );
+                        System.arraycopy( out, literalStart, out, 0, outPos - literalStart );
+                        outPos -= literalStart;
+                        literalStart = 0;
+                    }
+                }
+                runByte = b;
+                runLength = 1;
+            }
+        }
+
+        if( runLength >= 2 )
+        {
+            out[outPos++] = (byte)(257 - runLength);
+            out[outPos++] = (byte)runByte;
+        }
+        else if( runLength == 1 )
+        {
+            if( literalStart < 0 )
+            {
+                literalStart = outPos++;
+            }
+            out[outPos++] = (byte)runByte;
+            out[literalStart] = (byte)(outPos - literalStart - 2);
+        }
+        out[outPos++] = (byte)RUN_LENGTH_EOD;
+        result.write( out, 0, outPos );
+        result.flush();
     }
 }
@@ -20,6 +20,7 @@
 package org.apache.pdfbox.io;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -73,6 +74,54 @@ public class IOUtils
         return count;
     }
 
+    /**
+     * Copies a range of a random access storage to the given output stream in as large blocks
+     * as the storage allows. Chunks of in-memory storage are written directly, a file is
+     * transferred by the operating system if the output is a file too.
+     * @param source the storage to copy from
+     * @param position the offset of the first byte to copy
+     * @param length the number of bytes to copy
+     * @param output the output stream
+     * @return the number of bytes that have been copied, less than length if the storage ends
+     * before
+     * @throws IOException if an I/O error occurs
+     */
+    public static long copy(RandomAccess source, long position, long length, OutputStream output)
+        throws IOException
+    {
+        if (source instanceof RandomAccessBuffer)
+        {
+            return ((RandomAccessBuffer)source).writeTo(position, length, output);
+        }
+        if (source instanceof RandomAccessSpillBuffer)
+        {
+            return ((RandomAccessSpillBuffer)source).writeTo(position, length, output);
+        }
+        if (source instanceof RandomAccessFile && output instanceof FileOutputStream)
+        {
+            return ((RandomAccessFile)source).transferTo(position, length,
+                    ((FileOutputStream)output).getChannel());
+        }
+        byte[] buffer = new byte[(int)Math.min(length, 65536)];
+        long count = 0;
+        while (count < length)
+        {
+            int n;
+            synchronized (source)
+            {
+                source.seek(position + count);
+                n = source.read(buffer, 0, (int)Math.min(length - count, buffer.length));
+            }
+            if (n <= 0)
+            {
+                break;
+            }
+            output.write(buffer, 0, n);
+            count += n;
+        }
+        return count;
+    }
+
     /**
      * Populates the given buffer with data read from the input stream. If the data doesn't
      * fit the buffer, only the data that fits in the buffer is read. If the data is less than
@@ -17,6 +17,7 @@
 package org.apache.pdfbox.io;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 
 /**
@@ -278,6 +279,31 @@ public class RandomAccessBuffer implements RandomAccess
         }
     }
 
+    /**
+     * Writes a range of the buffer to the given stream chunk by chunk, without an intermediate
+     * copy. The current position isn't changed.
+     *
+     * @param position The offset of the first byte to write.
+     * @param length The number of bytes to write.
+     * @param out The stream to write to.
+     * @return The number of bytes written, less than length if the buffer ends before.
+     * @throws IOException If there is an error while writing the data.
+     */
+    public long writeTo(long position, long length, OutputStream out) throws IOException
+    {
+        checkClosed();
+        long end = Math.min(size, position + length);
+        long current = position;
+        while (current < end)
+        {
+            int chunkOffset = (int)(current % BUFFER_SIZE);
+            int amount = (int)Math.min(end - current, BUFFER_SIZE - chunkOffset);
+            out.write(bufferList.get((int)(current / BUFFER_SIZE)), chunkOffset, amount);
+            current += amount;
+        }
+        return Math.max(0, current - position);
+    }
+
     /**
      * create a new buffer chunk and adjust all pointers and indices.
      */
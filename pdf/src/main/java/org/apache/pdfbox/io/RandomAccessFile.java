@@ -19,6 +19,8 @@ package org.apache.pdfbox.io;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * An interface to allow temp PDF data to be stored in a scratch
@@ -98,6 +100,32 @@ public class RandomAccessFile implements RandomAccess
         ras.write(b, offset, length);
     }
 
+    /**
+     * Transfers a range of the file to the given channel without copying it through the heap.
+     * The file pointer isn't changed.
+     *
+     * @param position The offset of the first byte to transfer.
+     * @param length The number of bytes to transfer.
+     * @param target The channel to write to.
+     * @return The number of bytes transferred, less than length if the file ends before.
+     * @throws IOException If there is an error while transferring the data.
+     */
+    public long transferTo(long position, long length, WritableByteChannel target) throws IOException
+    {
+        FileChannel channel = ras.getChannel();
+        long transferred = 0;
+        while (transferred < length)
+        {
+            long amount = channel.transferTo(position + transferred, length - transferred, target);
+            if (amount <= 0)
+            {
+                break;
+            }
+            transferred += amount;
+        }
+        return transferred;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.apache.pdfbox.io.SpillStore.Chunk;
+
+/**
+ * An implementation of the RandomAccess interface which keeps the data in memory up to a
+ * budget and spills the rest to a memory mapped scratch file.
+ *
+ * The data is stored in 16kb chunks like in {@link RandomAccessBuffer}. The chunks of a
+ * buffer and all of its clones share one memory budget, the least recently used chunks are
+ * moved to the scratch file when it is exceeded. Clones are copy-on-write, they share their
+ * chunks with the original until one of them writes to a chunk.
+ *
+ * Closing the buffer which was created with a constructor deletes the scratch file, clones
+ * can't be used afterwards. Clones should be closed when they aren't used anymore so their
+ * chunks can be reused. All buffers of a store may be used by different threads.
+ */
+public class RandomAccessSpillBuffer implements RandomAccess
+{
+    /**
+     * The memory budget used by the default constructor.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = SpillStore.CHUNK_SIZE;
+
+    private final SpillStore store;
+    // true for the buffer which created the store
+    private final boolean owner;
+    private final ArrayList<Chunk> chunks;
+    private long pointer;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Constructor for a buffer which keeps up to {@link #DEFAULT_MEMORY_BUDGET} bytes on the
+     * heap and uses the default temp directory.
+     */
+    public RandomAccessSpillBuffer()
+    {
+        this(DEFAULT_MEMORY_BUDGET, false, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param memoryBudget The number of bytes this buffer and its clones may keep in memory.
+     * @param offHeap true to keep the data in direct buffers instead of the Java heap.
+     * @param scratchDir The directory of the scratch file or null for the system default.
+     */
+    public RandomAccessSpillBuffer(long memoryBudget, boolean offHeap, File scratchDir)
+    {
+        if (memoryBudget < 0)
+        {
+            throw new IllegalArgumentException("invalid memory budget " + memoryBudget);
+        }
+        store = new SpillStore(memoryBudget, offHeap, scratchDir);
+        owner = true;
+        chunks = new ArrayList<Chunk>();
+    }
+
+    private RandomAccessSpillBuffer(RandomAccessSpillBuffer original)
+    {
+        store = original.store;
+        owner = false;
+        chunks = new ArrayList<Chunk>(original.chunks);
+        for (Chunk chunk : chunks)
+        {
+            store.share(chunk);
+        }
+        pointer = original.pointer;
+        size = original.size;
+    }
+
+    /**
+     * Creates a copy of this buffer without copying the data.
+     *
+     * @return the copy, which uses the same memory budget and scratch file
+     */
+    @Override
+    public RandomAccessSpillBuffer clone()
+    {
+        synchronized (store)
+        {
+            return new RandomAccessSpillBuffer(this);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws IOException
+    {
+        synchronized (store)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            for (Chunk chunk : chunks)
+            {
+                store.release(chunk);
+            }
+            chunks.clear();
+            pointer = 0;
+            size = 0;
+            if (owner)
+            {
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void seek(long position) throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            if (position < 0)
+            {
+                throw new IOException("Invalid position " + position);
+            }
+            pointer = position;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getPosition() throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            return pointer;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long length() throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            return size;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read() throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            if (pointer >= size)
+            {
+                return -1;
+            }
+            ByteBuffer data = store.data(chunks.get((int) (pointer / CHUNK_SIZE)));
+            return data.get((int) (pointer++ % CHUNK_SIZE)) & 0xff;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int offset, int length) throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            if (pointer >= size)
+            {
+                return -1;
+            }
+            int remaining = (int) Math.min(length, size - pointer);
+            int amountRead = 0;
+            while (remaining > 0)
+            {
+                int chunkOffset = (int) (pointer % CHUNK_SIZE);
+                int amount = Math.min(remaining, CHUNK_SIZE - chunkOffset);
+                ByteBuffer data = store.data(chunks.get((int) (pointer / CHUNK_SIZE)));
+                data.position(chunkOffset);
+                data.get(b, offset + amountRead, amount);
+                pointer += amount;
+                amountRead += amount;
+                remaining -= amount;
+            }
+            return amountRead;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(int b) throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            ensureCapacity(pointer + 1);
+            ByteBuffer data = store.data(writableChunk((int) (pointer / CHUNK_SIZE)));
+            data.put((int) (pointer++ % CHUNK_SIZE), (byte) b);
+            if (pointer > size)
+            {
+                size = pointer;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(byte[] b, int offset, int length) throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            ensureCapacity(pointer + length);
+            int written = 0;
+            while (written < length)
+            {
+                int chunkOffset = (int) (pointer % CHUNK_SIZE);
+                int amount = Math.min(length - written, CHUNK_SIZE - chunkOffset);
+                ByteBuffer data = store.data(writableChunk((int) (pointer / CHUNK_SIZE)));
+                data.position(chunkOffset);
+                data.put(b, offset + written, amount);
+                pointer += amount;
+                written += amount;
+            }
+            if (pointer > size)
+            {
+                size = pointer;
+            }
+        }
+    }
+
+    /**
+     * Writes a range of the buffer to the given stream chunk by chunk. Chunks on the heap are
+     * written without an intermediate copy. The current position isn't changed.
+     *
+     * @param position The offset of the first byte to write.
+     * @param length The number of bytes to write.
+     * @param out The stream to write to.
+     * @return The number of bytes written, less than length if the buffer ends before.
+     * @throws IOException If there is an error while writing the data.
+     */
+    public long writeTo(long position, long length, OutputStream out) throws IOException
+    {
+        synchronized (store)
+        {
+            checkClosed();
+            long end = Math.min(size, position + length);
+            long current = position;
+            byte[] copy = null;
+            while (current < end)
+            {
+                int chunkOffset = (int) (current % CHUNK_SIZE);
+                int amount = (int) Math.min(end - current, CHUNK_SIZE - chunkOffset);
+                ByteBuffer data = store.data(chunks.get((int) (current / CHUNK_SIZE)));
+                if (data.hasArray())
+                {
+                    out.write(data.array(), data.arrayOffset() + chunkOffset, amount);
+                }
+                else
+                {
+                    if (copy == null)
+                    {
+                        copy = new byte[CHUNK_SIZE];
+                    }
+                    data.position(chunkOffset);
+                    data.get(copy, 0, amount);
+                    out.write(copy, 0, amount);
+                }
+                current += amount;
+            }
+            return Math.max(0, current - position);
+        }
+    }
+
+    /**
+     * @return the number of bytes of this buffer and its clones which are held in memory
+     */
+    public long getMemoryUsage()
+    {
+        synchronized (store)
+        {
+            return store.getResidentBytes();
+        }
+    }
+
+    /**
+     * @return the number of bytes of this buffer and its clones which are stored in the
+     * scratch file
+     */
+    public long getSpilledBytes()
+    {
+        synchronized (store)
+        {
+            return (long) store.getSpilledChunks() * CHUNK_SIZE;
+        }
+    }
+
+    private void ensureCapacity(long newSize) throws IOException
+    {
+        if (newSize / CHUNK_SIZE >= Integer.MAX_VALUE)
+        {
+            throw new IOException("RandomAccessSpillBuffer overflow");
+        }
+        int chunkCount = (int) ((newSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        while (chunks.size() < chunkCount)
+        {
+            chunks.add(store.allocate());
+        }
+    }
+
+    private Chunk writableChunk(int index) throws IOException
+    {
+        Chunk chunk = chunks.get(index);
+        Chunk writable = store.writable(chunk);
+        if (writable != chunk)
+        {
+            chunks.set(index, writable);
+        }
+        return writable;
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("RandomAccessSpillBuffer already closed");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The chunks of a {@link RandomAccessSpillBuffer} and all of its clones.
+ *
+ * Chunks are kept in memory in least recently used order. When the memory budget is exceeded
+ * the coldest chunks are moved to slots of a temporary file, which is mapped into memory in
+ * segments, and are accessed through the mapping from then on. Free slots are reused.
+ *
+ * The store is not thread safe, the buffers synchronize on it.
+ */
+final class SpillStore
+{
+    /**
+     * The size of a chunk.
+     */
+    static final int CHUNK_SIZE = 16384;
+
+    // the temp file is mapped in segments of 4MB
+    private static final int CHUNKS_PER_SEGMENT = 256;
+    private static final long SEGMENT_SIZE = (long) CHUNKS_PER_SEGMENT * CHUNK_SIZE;
+
+    /**
+     * A chunk of data, shared by all buffers which haven't written to it since they were cloned.
+     */
+    static final class Chunk
+    {
+        // a heap or direct buffer while in memory, a slice of a mapped segment after spilling
+        private ByteBuffer data;
+        // the slot in the temp file or -1 while in memory
+        private int slot = -1;
+        // the number of buffers using this chunk
+        private int references = 1;
+    }
+
+    private final long memoryBudget;
+    private final boolean direct;
+    private final File scratchDir;
+
+    // the chunks in memory, the least recently used first
+    private final LinkedHashMap<Chunk, Chunk> resident = new LinkedHashMap<Chunk, Chunk>(16, 0.75f, true);
+    private long residentBytes;
+
+    private File file;
+    private java.io.RandomAccessFile raf;
+    private FileChannel channel;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param memoryBudget the number of bytes which may be kept in memory
+     * @param direct true to keep the chunks outside of the Java heap
+     * @param scratchDir the directory of the temp file or null for the system default
+     */
+    SpillStore(long memoryBudget, boolean direct, File scratchDir)
+    {
+        this.memoryBudget = memoryBudget;
+        this.direct = direct;
+        this.scratchDir = scratchDir;
+    }
+
+    /**
+     * Creates an empty chunk, which may push older chunks out of memory.
+     *
+     * @return the new chunk with a single reference
+     * @throws IOException if the temp file can't be written
+     */
+    Chunk allocate() throws IOException
+    {
+        checkClosed();
+        Chunk chunk = new Chunk();
+        chunk.data = direct ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE);
+        resident.put(chunk, chunk);
+        residentBytes += CHUNK_SIZE;
+        while (residentBytes > memoryBudget && !resident.isEmpty())
+        {
+            spill(resident.keySet().iterator().next());
+        }
+        return chunk;
+    }
+
+    /**
+     * Adds a reference to a chunk, used when a buffer is cloned.
+     *
+     * @param chunk the chunk
+     */
+    void share(Chunk chunk)
+    {
+        chunk.references++;
+    }
+
+    /**
+     * Gets a chunk which may be written by a buffer, copying it if other buffers use it too.
+     *
+     * @param chunk a chunk referenced by the buffer
+     * @return the chunk itself or a copy which replaces it in the buffer
+     * @throws IOException if the temp file can't be written
+     */
+    Chunk writable(Chunk chunk) throws IOException
+    {
+        if (chunk.references == 1)
+        {
+            return chunk;
+        }
+        Chunk copy = allocate();
+        // the chunks may have been spilled while allocating
+        ByteBuffer source = chunk.data;
+        source.clear();
+        ByteBuffer target = copy.data;
+        target.clear();
+        target.put(source);
+        chunk.references--;
+        return copy;
+    }
+
+    /**
+     * Drops a reference to a chunk and frees it if it isn't used anymore.
+     *
+     * @param chunk the chunk
+     */
+    void release(Chunk chunk)
+    {
+        if (--chunk.references > 0 || closed)
+        {
+            return;
+        }
+        if (chunk.slot < 0)
+        {
+            resident.remove(chunk);
+            residentBytes -= CHUNK_SIZE;
+        }
+        else
+        {
+            if (freeSlotCount == freeSlots.length)
+            {
+                int[] newSlots = new int[freeSlots.length * 2];
+                System.arraycopy(freeSlots, 0, newSlots, 0, freeSlotCount);
+                freeSlots = newSlots;
+            }
+            freeSlots[freeSlotCount++] = chunk.slot;
+        }
+        chunk.data = null;
+    }
+
+    /**
+     * Gets the data of a chunk and marks it as recently used. The position of the returned
+     * buffer may be changed while the caller holds the lock of the store.
+     *
+     * @param chunk the chunk
+     * @return the data of the chunk
+     * @throws IOException if the store is closed
+     */
+    ByteBuffer data(Chunk chunk) throws IOException
+    {
+        checkClosed();
+        if (chunk.slot < 0)
+        {
+            resident.get(chunk);
+        }
+        return chunk.data;
+    }
+
+    private void spill(Chunk chunk) throws IOException
+    {
+        int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : slotCount++;
+        ByteBuffer target = slot(slot);
+        ByteBuffer source = chunk.data;
+        source.clear();
+        target.put(source);
+        target.clear();
+        chunk.data = target;
+        chunk.slot = slot;
+        resident.remove(chunk);
+        residentBytes -= CHUNK_SIZE;
+    }
+
+    private ByteBuffer slot(int slot) throws IOException
+    {
+        int segment = slot / CHUNKS_PER_SEGMENT;
+        if (channel == null)
+        {
+            file = File.createTempFile("pdfbox-", ".tmp", scratchDir);
+            raf = new java.io.RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+        }
+        while (segments.size() <= segment)
+        {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_SIZE,
+                    SEGMENT_SIZE));
+        }
+        ByteBuffer view = segments.get(segment).duplicate();
+        int offset = (slot % CHUNKS_PER_SEGMENT) * CHUNK_SIZE;
+        view.position(offset);
+        view.limit(offset + CHUNK_SIZE);
+        return view.slice();
+    }
+
+    /**
+     * @return the number of bytes held in memory
+     */
+    long getResidentBytes()
+    {
+        return residentBytes;
+    }
+
+    /**
+     * @return the number of chunks which have been spilled to the temp file and not freed
+     */
+    int getSpilledChunks()
+    {
+        return slotCount - freeSlotCount;
+    }
+
+    /**
+     * Frees all chunks and deletes the temp file.
+     *
+     * @throws IOException if the temp file can't be closed
+     */
+    void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        Iterator<Chunk> chunks = resident.keySet().iterator();
+        while (chunks.hasNext())
+        {
+            chunks.next().data = null;
+        }
+        resident.clear();
+        residentBytes = 0;
+        segments.clear();
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+                raf.close();
+            }
+            finally
+            {
+                // mapped files can't be deleted on some platforms until the mapping is collected
+                if (!file.delete())
+                {
+                    file.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private void checkClosed() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("RandomAccessSpillBuffer already closed");
+        }
+    }
+}
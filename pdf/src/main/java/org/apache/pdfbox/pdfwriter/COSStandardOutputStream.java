@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.util.StringUtil;
 
 /**
@@ -159,6 +160,25 @@ public class COSStandardOutputStream extends FilterOutputStream
         pos++;
     }
     
+    /**
+     * This will write the encoded data of a stream. The data goes to the underlying stream
+     * without buffering, a file based scratch storage is transferred directly if this stream
+     * writes to a file.
+     *
+     * @param stream The stream to write the data of.
+     * @return The number of bytes written.
+     *
+     * @throws IOException If there is an error reading or writing the data.
+     */
+    public long write(COSStream stream) throws IOException
+    {
+        checkPos();
+        setOnNewLine(false);
+        long written = stream.writeFilteredStream(out);
+        pos += written;
+        return written;
+    }
+
     /**
      * This will write a CRLF to the stream.
      *
@@ -20,19 +20,17 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -53,7 +51,11 @@ import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.cos.ICOSVisitor;
 import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.filter.FlateFilter;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDObjectStream;
 import org.apache.pdfbox.persistence.util.COSObjectKey;
 import org.apache.pdfbox.util.StringUtil;
 
@@ -150,6 +152,11 @@ public class COSWriter implements ICOSVisitor
      */
     public static final byte[] ENDSTREAM = StringUtil.getBytes("endstream");
 
+    /**
+     * The maximum number of objects packed into one object stream.
+     */
+    private static final int OBJECT_STREAM_SIZE = 100;
+
     private NumberFormat formatXrefOffset = new DecimalFormat("0000000000");
     /**
      * The decimal format for the xref object generation number data.
@@ -170,29 +177,31 @@ public class COSWriter implements ICOSVisitor
     // the current object number
     private long number = 0;
 
-    // maps the object to the keys generated in the writer
+    // maps the objects to the numbers generated in the writer
     // these are used for indirect references in other objects
-    //A hashtable is used on purpose over a hashmap
-    //so that null entries will not get added.
-    private Map<COSBase,COSObjectKey> objectKeys = new Hashtable<COSBase,COSObjectKey>();
-    private Map<COSObjectKey,COSBase> keyObject = new Hashtable<COSObjectKey,COSBase>();
+    // all bookkeeping compares objects by identity, hashing a
+    // dictionary or a string by value can be expensive
+    private ObjectNumberMap objectKeys = new ObjectNumberMap();
+
+    // the objects of the previous revision in an incremental update
+    private Set<COSBase> previousObjects = newIdentitySet();
 
     // the list of x ref entries to be made so far
     private List<COSWriterXRefEntry> xRefEntries = new ArrayList<COSWriterXRefEntry>();
-    private HashSet<COSBase> objectsToWriteSet = new HashSet<COSBase>();
+    private Set<COSBase> objectsToWriteSet = newIdentitySet();
 
-    //A list of objects to write.
-    private LinkedList<COSBase> objectsToWrite = new LinkedList<COSBase>();
+    //A queue of objects to write.
+    private ArrayDeque<COSBase> objectsToWrite = new ArrayDeque<COSBase>();
 
     //a list of objects already written
-    private Set<COSBase> writtenObjects = new HashSet<COSBase>();
+    private Set<COSBase> writtenObjects = newIdentitySet();
     //An 'actual' is any COSBase that is not a COSObject.
     //need to keep a list of the actuals that are added
     //as well as the objects because there is a problem
     //when adding a COSObject and then later adding
     //the actual for that object, so we will track
     //actuals separately.
-    private Set<COSBase> actualsAdded = new HashSet<COSBase>();
+    private Set<COSBase> actualsAdded = newIdentitySet();
 
     private COSObjectKey currentObjectKey = null;
 
@@ -210,6 +219,33 @@ public class COSWriter implements ICOSVisitor
     
     private FileInputStream in;
 
+    // true between startDocument and finishDocument
+    private boolean streaming = false;
+
+    private boolean headerWritten = false;
+
+    // the page that is currently written in streaming mode
+    private COSDictionary streamingPage = null;
+
+    // objects reached from a streamed page which have to wait for the end of the document
+    private List<COSBase> deferredObjects = new ArrayList<COSBase>();
+
+    // the streams written with the current page, their data is released afterwards
+    private List<COSStream> releasableStreams = new ArrayList<COSStream>();
+
+    // PDF 1.5 output, the xref table is written as a stream
+    private boolean xrefStream = false;
+
+    // PDF 1.5 output, small objects are packed into object streams
+    private boolean objectStreams = false;
+
+    // the object stream that is currently filled
+    private long objectStreamNumber = -1;
+    private int objectStreamCount = 0;
+    private StringBuilder objectStreamHeader;
+    private ByteArrayOutputStream objectStreamData;
+    private COSStandardOutputStream objectStreamOutput;
+
     /**
      * COSWriter constructor comment.
      *
@@ -253,8 +289,8 @@ public class COSWriter implements ICOSVisitor
             COSBase object = cosDoc.getObjectFromPool(cosObjectKey).getObject();
             if (object != null && cosObjectKey!= null && !(object instanceof COSNumber))
             {
-            objectKeys.put(object, cosObjectKey);
-            keyObject.put(cosObjectKey,object);
+            objectKeys.put(object, cosObjectKey.getNumber(), (int)cosObjectKey.getGeneration());
+            previousObjects.add(object);
             }
             
             long num = cosObjectKey.getNumber();
@@ -274,6 +310,11 @@ public class COSWriter implements ICOSVisitor
       }
     }
     
+    private static Set<COSBase> newIdentitySet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+    }
+
     /**
      * add an entry in the x ref table for later dump.
      *
@@ -314,11 +355,20 @@ public class COSWriter implements ICOSVisitor
     /**
      * This will get all available object keys.
      *
-     * @return A map of all object keys.
+     * @return A copy of the map of all object keys, the objects are compared by identity.
      */
     public Map<COSBase,COSObjectKey> getObjectKeys()
     {
-        return objectKeys;
+        Map<COSBase,COSObjectKey> keys = new IdentityHashMap<COSBase,COSObjectKey>(objectKeys.size());
+        for (int i = 0; i < objectKeys.capacity(); i++)
+        {
+            COSBase object = (COSBase)objectKeys.keyAt(i);
+            if (object != null)
+            {
+                keys.put(object, new COSObjectKey(objectKeys.numberAt(i), objectKeys.generationAt(i)));
+            }
+        }
+        return keys;
     }
 
     /**
@@ -431,6 +481,13 @@ public class COSWriter implements ICOSVisitor
         }
 
 
+        if (objectStreamData != null)
+        {
+            doWriteObjectStream();
+        }
+        // the encryption dictionary must not be compressed
+        objectStreams = false;
+
         willEncrypt = false;
 
         if( encrypt != null )
@@ -458,19 +515,9 @@ public class COSWriter implements ICOSVisitor
             !objectsToWriteSet.contains( object ) &&
             !actualsAdded.contains( actual ) )
         {
-            COSBase cosBase=null;
-            COSObjectKey cosObjectKey = null;
-            if(actual != null)
-            {
-                cosObjectKey= objectKeys.get(actual);
-            }
-            if(cosObjectKey!=null)
-            {
-                cosBase = keyObject.get(cosObjectKey);
-            }
-            if(actual != null && objectKeys.containsKey(actual) &&
-                    !object.isNeedToBeUpdate() && (cosBase!= null &&
-                    !cosBase.isNeedToBeUpdate()))
+            // unchanged objects of the previous revision are not written again
+            if(actual != null && previousObjects.contains(actual) &&
+                    !object.isNeedToBeUpdate() && !actual.isNeedToBeUpdate())
             {
                 return;
             }
@@ -508,6 +555,11 @@ public class COSWriter implements ICOSVisitor
             
             // find the physical reference
             currentObjectKey = getObjectKey( obj );
+            if (objectStreams && isCompressible(obj))
+            {
+                doWriteCompressedObject(obj);
+                return;
+            }
             // add a x ref entry
             addXRefEntry( new COSWriterXRefEntry(getStandardOutput().getPos(), obj, currentObjectKey));
             // write the object
@@ -528,6 +580,95 @@ public class COSWriter implements ICOSVisitor
         }
     }
 
+    private boolean isCompressible(COSBase obj)
+    {
+        COSBase actual = obj;
+        if( actual instanceof COSObject )
+        {
+            actual = ((COSObject)actual).getObject();
+        }
+        // the position of a signature has to be known in the file
+        return !(actual instanceof COSStream) && currentObjectKey.getGeneration() == 0
+                && !reachedSignature;
+    }
+
+    /**
+     * This will write an object into the current object stream, a new one is started if
+     * there is none.
+     *
+     * @param obj The object to write.
+     *
+     * @throws IOException If there is an error writing the data.
+     * @throws COSVisitorException If there is an error generating the data.
+     */
+    private void doWriteCompressedObject( COSBase obj ) throws IOException, COSVisitorException
+    {
+        if (objectStreamData == null)
+        {
+            setNumber(getNumber()+1);
+            objectStreamNumber = getNumber();
+            objectStreamCount = 0;
+            objectStreamHeader = new StringBuilder();
+            objectStreamData = new ByteArrayOutputStream();
+            objectStreamOutput = new COSStandardOutputStream(objectStreamData);
+        }
+        COSWriterXRefEntry entry = new COSWriterXRefEntry(0, obj, currentObjectKey);
+        entry.setObjectStream(objectStreamNumber, objectStreamCount);
+        addXRefEntry(entry);
+        objectStreamHeader.append(currentObjectKey.getNumber()).append(' ');
+        objectStreamHeader.append(objectStreamOutput.getPos()).append(' ');
+
+        COSStandardOutputStream standardOutput = getStandardOutput();
+        setStandardOutput(objectStreamOutput);
+        try
+        {
+            obj.accept( this );
+            getStandardOutput().writeEOL();
+        }
+        finally
+        {
+            setStandardOutput(standardOutput);
+        }
+        if (++objectStreamCount == OBJECT_STREAM_SIZE)
+        {
+            doWriteObjectStream();
+        }
+    }
+
+    /**
+     * This will write the current object stream, compressed with the FlateDecode filter.
+     *
+     * @throws IOException If there is an error writing the data.
+     * @throws COSVisitorException If there is an error generating the data.
+     */
+    private void doWriteObjectStream() throws IOException, COSVisitorException
+    {
+        byte[] header = objectStreamHeader.toString().getBytes("ISO-8859-1");
+        ByteArrayOutputStream content = new ByteArrayOutputStream(header.length + objectStreamData.size());
+        content.write(header);
+        objectStreamData.writeTo(content);
+        byte[] data = content.toByteArray();
+
+        PDObjectStream objectStream = PDObjectStream.createStream(document);
+        objectStream.setNumberOfObjects(objectStreamCount);
+        objectStream.setFirstByteOffset(header.length);
+        COSStream stream = objectStream.getStream();
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        OutputStream filtered = stream.createFilteredStream();
+        FlateFilter.encode(data, 0, data.length, filtered, getCompression());
+        filtered.close();
+
+        long number = objectStreamNumber;
+        objectStreamNumber = -1;
+        objectStreamHeader = null;
+        objectStreamData = null;
+        objectStreamOutput = null;
+
+        objectKeys.put(stream, number, 0);
+        doWriteObject(stream);
+        stream.releaseData();
+    }
+
     /**
      * This will write the header to the PDF document.
      *
@@ -584,37 +725,13 @@ public class COSWriter implements ICOSVisitor
      * @param doc The document to write the xref from.
      *
      * @throws IOException If there is an error writing the data to the stream.
+     * @throws COSVisitorException If there is an error generating the xref stream.
      */
-    protected void doWriteXRef(COSDocument doc) throws IOException
+    protected void doWriteXRef(COSDocument doc) throws IOException, COSVisitorException
     {
-        if (doc.isXRefStream())
+        if (xrefStream)
         {
-            // sort xref, needed only if object keys not regenerated
-            Collections.sort(getXRefEntries());
-            COSWriterXRefEntry lastEntry = getXRefEntries().get( getXRefEntries().size()-1 );
-    
-            // remember the position where x ref is written
-            setStartxref(getStandardOutput().getPos());
-            //
-            getStandardOutput().write(XREF);
-            getStandardOutput().writeEOL();
-            // write start object number and object count for this x ref section
-            // we assume starting from scratch
-            writeXrefRange(0, lastEntry.getKey().getNumber() + 1);
-            // write initial start object with ref to first deleted object and magic generation number
-            writeXrefEntry(COSWriterXRefEntry.getNullEntry());
-            // write entry for every object
-            long lastObjectNumber = 0;
-            for (Iterator<COSWriterXRefEntry> i = getXRefEntries().iterator(); i.hasNext();)
-            {
-                COSWriterXRefEntry entry = i.next();
-                while( lastObjectNumber<entry.getKey().getNumber()-1 )
-                {
-                  writeXrefEntry(COSWriterXRefEntry.getNullEntry());
-                }
-                lastObjectNumber = entry.getKey().getNumber();
-                writeXrefEntry(entry);
-            }
+            doWriteXRefStream(doc);
         }
         else
         {
@@ -651,6 +768,91 @@ public class COSWriter implements ICOSVisitor
         }
     }
 
+    /**
+     * This will write the xref section as a cross reference stream. The stream takes over the
+     * entries of the trailer dictionary and describes itself as the last object.
+     *
+     * @param doc The document to write the xref from.
+     *
+     * @throws IOException If there is an error writing the data to the stream.
+     * @throws COSVisitorException If there is an error generating the data.
+     */
+    private void doWriteXRefStream(COSDocument doc) throws IOException, COSVisitorException
+    {
+        setNumber(getNumber()+1);
+        long position = getStandardOutput().getPos();
+        COSObjectKey key = new COSObjectKey(getNumber(), 0);
+        List<COSWriterXRefEntry> entries = getXRefEntries();
+        entries.add(new COSWriterXRefEntry(position, null, key));
+        Collections.sort(entries);
+
+        // type, offset or object stream number, generation or index
+        int size = (int)getNumber() + 1;
+        int offsetLength = 1;
+        while (offsetLength < 8 && (Math.max(position, size) >>> (offsetLength * 8)) != 0)
+        {
+            offsetLength++;
+        }
+        int entryLength = 1 + offsetLength + 2;
+        byte[] data = new byte[size * entryLength];
+        // entries which are missing are free, like the head of the free list
+        data[1 + offsetLength] = (byte)0xff;
+        data[2 + offsetLength] = (byte)0xff;
+        for (COSWriterXRefEntry entry : entries)
+        {
+            int offset = (int)entry.getKey().getNumber() * entryLength;
+            if (entry.isCompressed())
+            {
+                data[offset] = 2;
+                writeXRefStreamField(data, offset + 1, offsetLength, entry.getObjectStreamNumber());
+                writeXRefStreamField(data, offset + 1 + offsetLength, 2, entry.getObjectStreamIndex());
+            }
+            else
+            {
+                data[offset] = 1;
+                writeXRefStreamField(data, offset + 1, offsetLength, entry.getOffset());
+                writeXRefStreamField(data, offset + 1 + offsetLength, 2, entry.getKey().getGeneration());
+            }
+        }
+
+        COSStream stream = doc.createCOSStream();
+        COSDictionary trailer = doc.getTrailer();
+        for (COSName name : new COSName[] { COSName.ROOT, COSName.INFO, COSName.ENCRYPT, COSName.ID })
+        {
+            COSBase value = trailer.getItem(name);
+            if (value != null)
+            {
+                stream.setItem(name, value);
+            }
+        }
+        stream.setItem(COSName.TYPE, COSName.XREF);
+        stream.setInt(COSName.SIZE, size);
+        COSArray widths = new COSArray();
+        widths.add(COSInteger.ONE);
+        widths.add(COSInteger.get(offsetLength));
+        widths.add(COSInteger.TWO);
+        widths.setDirect(true);
+        stream.setItem(COSName.W, widths);
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        OutputStream filtered = stream.createFilteredStream();
+        FlateFilter.encode(data, 0, data.length, filtered, getCompression());
+        filtered.close();
+
+        setStartxref(position);
+        objectKeys.put(stream, key.getNumber(), 0);
+        doWriteObject(stream);
+        stream.releaseData();
+    }
+
+    private static void writeXRefStreamField(byte[] data, int offset, int length, long value)
+    {
+        for (int i = length - 1; i >= 0; i--)
+        {
+            data[offset + i] = (byte)value;
+            value >>>= 8;
+        }
+    }
+
     private void doWriteXRefInc(COSDocument doc, long hybridPrev) throws IOException, COSVisitorException
     {
         if (!doc.isXRefStream() || hybridPrev != -1)
@@ -775,32 +977,41 @@ public class COSWriter implements ICOSVisitor
      * @return The object key for the object.
      */
     private COSObjectKey getObjectKey( COSBase obj )
+    {
+        int index = getObjectKeyIndex(obj);
+        return new COSObjectKey(objectKeys.numberAt(index), objectKeys.generationAt(index));
+    }
+
+    /**
+     * This will get the slot of the object key in the object map, a new key is created
+     * if the object has none yet.
+     */
+    private int getObjectKeyIndex( COSBase obj )
     {
         COSBase actual = obj;
         if( actual instanceof COSObject )
         {
             actual = ((COSObject)obj).getObject();
         }
-        COSObjectKey key = null;
+        int index = -1;
         if( actual != null )
         {
-            key = objectKeys.get(actual);
+            index = objectKeys.indexOf(actual);
         }
-        if( key == null )
+        if( index < 0 )
         {
-            key = objectKeys.get(obj);
+            index = objectKeys.indexOf(obj);
         }
-        if (key == null)
+        if (index < 0)
         {
             setNumber(getNumber()+1);
-            key = new COSObjectKey(getNumber(),0);
-            objectKeys.put(obj, key);
-            if( actual != null )
+            if( actual != null && actual != obj )
             {
-                objectKeys.put(actual, key);
+                objectKeys.put(actual, getNumber(), 0);
             }
+            index = objectKeys.put(obj, getNumber(), 0);
         }
-        return key;
+        return index;
     }
 
     /**
@@ -1027,7 +1238,7 @@ public class COSWriter implements ICOSVisitor
     {
         try
         {
-            if(!incrementalUpdate)
+            if(!incrementalUpdate && !headerWritten)
             {
                 doWriteHeader(doc);
             }
@@ -1052,7 +1263,7 @@ public class COSWriter implements ICOSVisitor
             }
             
             // the trailer section should only be used for xref tables not for xref streams
-            if (!incrementalUpdate || !doc.isXRefStream() || hybridPrev != -1)
+            if (incrementalUpdate ? !doc.isXRefStream() || hybridPrev != -1 : !xrefStream)
             {
                 doWriteTrailer(doc);
             }
@@ -1174,10 +1385,10 @@ public class COSWriter implements ICOSVisitor
     {
         try
         {
-            COSObjectKey  key = getObjectKey(obj);
-            getStandardOutput().write(String.valueOf(key.getNumber()).getBytes("ISO-8859-1"));
+            int index = getObjectKeyIndex(obj);
+            getStandardOutput().write(String.valueOf(objectKeys.numberAt(index)).getBytes("ISO-8859-1"));
             getStandardOutput().write(SPACE);
-            getStandardOutput().write(String.valueOf(key.getGeneration()).getBytes("ISO-8859-1"));
+            getStandardOutput().write(String.valueOf(objectKeys.generationAt(index)).getBytes("ISO-8859-1"));
             getStandardOutput().write(SPACE);
             getStandardOutput().write(REFERENCE);
         }
@@ -1198,16 +1409,21 @@ public class COSWriter implements ICOSVisitor
      */
     public Object visitFromStream(COSStream obj) throws COSVisitorException
     {
-        InputStream input = null;
+        // a stream without settings of its own is encoded with those of the document
+        boolean inheritCompression = obj.getCompression() == null;
         try
         {
+            if (inheritCompression)
+            {
+                obj.setCompression(getCompression());
+            }
 
             COSObject lengthObject = null;
             // check if the length object is required to be direct, like in
             // a cross reference stream dictionary
             COSBase lengthEntry = obj.getDictionaryObject(COSName.LENGTH);
             String type = obj.getNameAsString(COSName.TYPE);
-            if (lengthEntry != null && lengthEntry.isDirect() || "XRef".equals(type))
+            if (lengthEntry != null && lengthEntry.isDirect() || "XRef".equals(type) || objectStreams)
             {
                 // the length might be the non encoded length,
                 // set the real one as direct object
@@ -1224,20 +1440,12 @@ public class COSWriter implements ICOSVisitor
 
                 obj.setItem(COSName.LENGTH, lengthObject);
             }
-            input = obj.getFilteredStream();
             //obj.accept(this);
-            // write the stream content
+            // write the stream content, straight from the scratch storage
             visitFromDictionary(obj);
             getStandardOutput().write(STREAM);
             getStandardOutput().writeCRLF();
-            byte[] buffer = new byte[1024];
-            int amountRead = 0;
-            int totalAmountWritten = 0;
-            while ((amountRead = input.read(buffer, 0, 1024)) != -1)
-            {
-                getStandardOutput().write(buffer, 0, amountRead);
-                totalAmountWritten += amountRead;
-            }
+            long totalAmountWritten = getStandardOutput().write(obj);
             // set the length as an indirect object
             if (lengthObject != null)
             {
@@ -1246,6 +1454,10 @@ public class COSWriter implements ICOSVisitor
             getStandardOutput().writeCRLF();
             getStandardOutput().write(ENDSTREAM);
             getStandardOutput().writeEOL();
+            if (streamingPage != null)
+            {
+                releasableStreams.add(obj);
+            }
             return null;
         }
         catch (Exception e)
@@ -1254,16 +1466,9 @@ public class COSWriter implements ICOSVisitor
         }
         finally
         {
-            if (input != null)
+            if (inheritCompression)
             {
-                try
-                {
-                    input.close();
-                }
-                catch (IOException e)
-                {
-                    throw new COSVisitorException(e);
-                }
+                obj.setCompression(null);
             }
         }
     }
@@ -1298,18 +1503,194 @@ public class COSWriter implements ICOSVisitor
      * @throws COSVisitorException If an error occurs while generating the data.
      */
     public void write(PDDocument doc) throws COSVisitorException
-	{
-        Long idTime = doc.getDocumentId() == null ? System.currentTimeMillis() : 
-                                                    doc.getDocumentId();
-        
+    {
         document = doc;
         if(incrementalUpdate)
         {
             prepareIncrement(doc);
         }
+        prepareCompression(doc.getDocument());
+        subsetFonts(doc);
+        addDocumentId(doc);
+        document.getDocument().accept(this);
+    }
+
+    /**
+     * This will start writing the document page by page. The header is written right away,
+     * every finished page is written with {@link #writePage(PDPage)} and
+     * {@link #finishDocument()} writes the remaining objects, the xref table and the trailer.
+     * Only one page has to be kept in memory this way, the data of the streams of a written
+     * page is released and the page must not be changed anymore.
+     *
+     * @param doc The document to write.
+     *
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public void startDocument(PDDocument doc) throws COSVisitorException
+    {
+        if (incrementalUpdate)
+        {
+            throw new IllegalStateException("Incremental updates can't be written page by page");
+        }
+        document = doc;
+        streaming = true;
+        prepareCompression(doc.getDocument());
+        try
+        {
+            doWriteHeader(doc.getDocument());
+            headerWritten = true;
+        }
+        catch (IOException e)
+        {
+            throw new COSVisitorException(e);
+        }
+    }
+
+    /**
+     * This will write a finished page together with its contents and resources. Objects
+     * shared with other pages, like fonts and the page tree, are only numbered here and
+     * written by {@link #finishDocument()}.
+     *
+     * @param page The page to write, it must be part of the document.
+     *
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public void writePage(PDPage page) throws COSVisitorException
+    {
+        if (!streaming)
+        {
+            throw new IllegalStateException("startDocument has to be called first");
+        }
+        COSDictionary dict = page.getCOSDictionary();
+        if (writtenObjects.contains(dict))
+        {
+            return;
+        }
+        streamingPage = dict;
+        try
+        {
+            // the page may have been reached from an earlier page, e.g. by a link
+            boolean deferred = false;
+            for (Iterator<COSBase> i = deferredObjects.iterator(); i.hasNext();)
+            {
+                COSBase object = i.next();
+                if (object == dict || (object instanceof COSObject && ((COSObject)object).getObject() == dict))
+                {
+                    i.remove();
+                    objectsToWrite.add(object);
+                    deferred = true;
+                }
+            }
+            if (!deferred)
+            {
+                addObjectToWrite(dict);
+            }
+            while( objectsToWrite.size() > 0 )
+            {
+                COSBase nextObject = objectsToWrite.removeFirst();
+                if (isShared(nextObject))
+                {
+                    // keeps its place in objectsToWriteSet, so it is queued only once
+                    deferredObjects.add(nextObject);
+                }
+                else
+                {
+                    objectsToWriteSet.remove(nextObject);
+                    doWriteObject( nextObject );
+                }
+            }
+            for (COSStream stream : releasableStreams)
+            {
+                stream.releaseData();
+            }
+        }
+        finally
+        {
+            releasableStreams.clear();
+            streamingPage = null;
+        }
+    }
 
-        COSDocument cosDoc = document.getDocument();
-        COSDictionary trailer = cosDoc.getTrailer();
+    /**
+     * This will write everything not written by {@link #writePage(PDPage)} and finish the
+     * document started with {@link #startDocument(PDDocument)}.
+     *
+     * @throws COSVisitorException If an error occurs while generating the data.
+     */
+    public void finishDocument() throws COSVisitorException
+    {
+        if (!streaming)
+        {
+            throw new IllegalStateException("startDocument has to be called first");
+        }
+        streaming = false;
+        objectsToWrite.addAll(deferredObjects);
+        deferredObjects.clear();
+        // update the count in case any pages have been added behind the scenes.
+        document.getDocumentCatalog().getPages().updateCount();
+        // fonts are shared, so they haven't been written with the pages
+        subsetFonts(document);
+        addDocumentId(document);
+        document.getDocument().accept(this);
+    }
+
+    private FlateCompression getCompression()
+    {
+        return document != null ? document.getCompression() : FlateCompression.DEFAULT;
+    }
+
+    /**
+     * A document which asks for a cross reference stream is written in the compressed
+     * PDF 1.5 format, with object streams and an xref stream.
+     */
+    private void prepareCompression(COSDocument doc)
+    {
+        xrefStream = !incrementalUpdate && doc.isXRefStream();
+        objectStreams = xrefStream;
+        if (xrefStream && doc.getVersion() < 1.5f)
+        {
+            doc.setVersion(1.5f);
+        }
+    }
+
+    /**
+     * Objects which may be used by pages that aren't written yet. Fonts are kept until the end
+     * as well, so they can still be completed by later pages.
+     */
+    private boolean isShared(COSBase object)
+    {
+        COSBase actual = object;
+        if( actual instanceof COSObject )
+        {
+            actual = ((COSObject)actual).getObject();
+        }
+        if (actual == streamingPage || !(actual instanceof COSDictionary))
+        {
+            return false;
+        }
+        COSBase type = ((COSDictionary)actual).getDictionaryObject(COSName.TYPE);
+        return COSName.CATALOG.equals(type) || COSName.PAGES.equals(type)
+                || COSName.PAGE.equals(type) || COSName.FONT.equals(type);
+    }
+
+    private void subsetFonts(PDDocument doc) throws COSVisitorException
+    {
+        try
+        {
+            doc.subsetFonts();
+        }
+        catch (IOException e)
+        {
+            throw new COSVisitorException(e);
+        }
+    }
+
+    private void addDocumentId(PDDocument doc) throws COSVisitorException
+    {
+        Long idTime = doc.getDocumentId() == null ? System.currentTimeMillis() : 
+                                                    doc.getDocumentId();
+        
+        COSDictionary trailer = doc.getDocument().getTrailer();
         COSArray idArray = (COSArray)trailer.getDictionaryObject( COSName.ID );
         if( idArray == null || incrementalUpdate)
         {
@@ -1344,7 +1725,5 @@ public class COSWriter implements ICOSVisitor
                 throw new COSVisitorException( e );
             }
         }
-        cosDoc.accept(this);
     }
 }
-
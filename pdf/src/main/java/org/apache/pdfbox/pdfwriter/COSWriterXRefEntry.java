@@ -33,6 +33,8 @@ public class COSWriterXRefEntry implements Comparable<COSWriterXRefEntry>
     private COSBase object;
     private COSObjectKey key;
     private boolean free = false;
+    private long objectStreamNumber = -1;
+    private int objectStreamIndex;
     private static COSWriterXRefEntry nullEntry;
 
 
@@ -106,6 +108,48 @@ public class COSWriterXRefEntry implements Comparable<COSWriterXRefEntry>
         free = newFree;
     }
 
+    /**
+     * Tells if the object is stored in an object stream instead of at an offset of the file.
+     *
+     * @return true if the object is compressed
+     */
+    public boolean isCompressed()
+    {
+        return objectStreamNumber >= 0;
+    }
+
+    /**
+     * This will get the object number of the object stream containing the object.
+     *
+     * @return The object stream number or -1 if the object isn't compressed.
+     */
+    public long getObjectStreamNumber()
+    {
+        return objectStreamNumber;
+    }
+
+    /**
+     * This will get the index of the object within its object stream.
+     *
+     * @return The index within the object stream.
+     */
+    public int getObjectStreamIndex()
+    {
+        return objectStreamIndex;
+    }
+
+    /**
+     * This will mark the object as stored in an object stream.
+     *
+     * @param number The object number of the object stream.
+     * @param index The index of the object within the object stream.
+     */
+    public void setObjectStream(long number, int index)
+    {
+        objectStreamNumber = number;
+        objectStreamIndex = index;
+    }
+
     /**
      * This will set the object key.
      *
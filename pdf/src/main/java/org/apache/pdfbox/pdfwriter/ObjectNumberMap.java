@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdfwriter;
+
+/**
+ * An unsynchronized map from objects to their object number and generation in the written
+ * file. Keys are compared by identity, so neither hashCode nor equals of the COS objects is
+ * ever called. Linear probing over plain arrays keeps the numbers unboxed.
+ *
+ * Entries are addressed by their slot index, which stays valid until the next call to
+ * {@link #put(Object, long, int)}.
+ */
+final class ObjectNumberMap
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private Object[] keys;
+    private long[] numbers;
+    private int[] generations;
+    private int mask;
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    ObjectNumberMap()
+    {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new Object[capacity];
+        numbers = new long[capacity];
+        generations = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(Object key)
+    {
+        // spread the identity hash, the low bits are used as index
+        int h = System.identityHashCode(key) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Finds the slot of the given object.
+     *
+     * @param key the object to look up
+     * @return the slot index or -1 if the object has no number yet
+     */
+    int indexOf(Object key)
+    {
+        int i = slot(key);
+        Object current;
+        while ((current = keys[i]) != null)
+        {
+            if (current == key)
+            {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Assigns a number to the given object, replacing an existing one.
+     *
+     * @param key the object, must not be null
+     * @param number the object number
+     * @param generation the generation number
+     * @return the slot index of the entry
+     */
+    int put(Object key, long number, int generation)
+    {
+        int i = slot(key);
+        Object current;
+        while ((current = keys[i]) != null && current != key)
+        {
+            i = (i + 1) & mask;
+        }
+        if (current == null)
+        {
+            if (++size > (keys.length >> 1))
+            {
+                grow();
+                i = slot(key);
+                while (keys[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+            }
+            keys[i] = key;
+        }
+        numbers[i] = number;
+        generations[i] = generation;
+        return i;
+    }
+
+    private void grow()
+    {
+        Object[] oldKeys = keys;
+        long[] oldNumbers = numbers;
+        int[] oldGenerations = generations;
+        allocate(oldKeys.length << 1);
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            Object key = oldKeys[j];
+            if (key != null)
+            {
+                int i = slot(key);
+                while (keys[i] != null)
+                {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                numbers[i] = oldNumbers[j];
+                generations[i] = oldGenerations[j];
+            }
+        }
+    }
+
+    /**
+     * @return the number of objects in the map
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, valid slot indexes are below this value
+     */
+    int capacity()
+    {
+        return keys.length;
+    }
+
+    /**
+     * @param index a slot index
+     * @return the object in the slot or null if the slot is empty
+     */
+    Object keyAt(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * @param index a slot index returned by this map
+     * @return the object number in the slot
+     */
+    long numberAt(int index)
+    {
+        return numbers[index];
+    }
+
+    /**
+     * @param index a slot index returned by this map
+     * @return the generation number in the slot
+     */
+    int generationAt(int index)
+    {
+        return generations[index];
+    }
+}
@@ -27,9 +27,11 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
@@ -43,10 +45,13 @@ import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.exceptions.CryptographyException;
 import org.apache.pdfbox.exceptions.InvalidPasswordException;
 import org.apache.pdfbox.exceptions.SignatureException;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.io.RandomAccess;
 import org.apache.pdfbox.pdfwriter.COSWriter;
 import org.apache.pdfbox.pdmodel.common.COSArrayList;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
 
 /**
  * This is the in-memory representation of the PDF document. You need to call close() on this object when you are done
@@ -77,6 +82,9 @@ public class PDDocument implements Closeable
      */
     private Long documentId;
 
+    // fonts whose embedded programs are replaced by subsets before the document is written
+    private final Set<PDTrueTypeFont> fontsToSubset = new LinkedHashSet<PDTrueTypeFont>();
+
     /**
      * Constructor, creates a new PDF Document with no pages. You need to add at least one page for the document to be
      * valid.
@@ -85,7 +93,25 @@ public class PDDocument implements Closeable
      */
     public PDDocument() throws IOException
     {
-        document = new COSDocument();
+        this(new COSDocument());
+    }
+
+    /**
+     * Constructor, creates a new PDF Document with no pages which stores its streams in the
+     * given scratch storage, e.g. a {@link org.apache.pdfbox.io.RandomAccessSpillBuffer} to
+     * limit the memory used by large documents. The storage is closed with the document.
+     * 
+     * @param scratchFile The storage for the streams of the document.
+     * @throws IOException If there is an error creating this document.
+     */
+    public PDDocument(RandomAccess scratchFile) throws IOException
+    {
+        this(new COSDocument(scratchFile));
+    }
+
+    private PDDocument(COSDocument doc)
+    {
+        document = doc;
 
         // First we need a trailer
         COSDictionary trailer = new COSDictionary();
@@ -320,6 +346,31 @@ public class PDDocument implements Closeable
         return document;
     }
 
+    /**
+     * Registers a font which embeds only the glyphs of the characters shown with it.
+     * 
+     * @param font The font loaded for subsetting.
+     */
+    public void addFontToSubset(PDTrueTypeFont font)
+    {
+        fontsToSubset.add(font);
+    }
+
+    /**
+     * This will replace the embedded programs of all fonts loaded for subsetting with subsets
+     * of the characters shown so far. It is called by the COSWriter before the document is
+     * written.
+     * 
+     * @throws IOException If there is an error creating a subset.
+     */
+    public void subsetFonts() throws IOException
+    {
+        for (PDTrueTypeFont font : fontsToSubset)
+        {
+            font.subset();
+        }
+    }
+
     /**
      * This will get the document info dictionary. This is guaranteed to not return null.
      * 
@@ -507,6 +558,28 @@ public class PDDocument implements Closeable
     	}
     }
 
+    /**
+     * This will get the settings used to flate encode the streams of this document.
+     *
+     * @return The compression settings.
+     */
+    public FlateCompression getCompression()
+    {
+        return document.getCompression();
+    }
+
+    /**
+     * This will set the settings used to flate encode the streams of this document, e.g.
+     * {@link FlateCompression#FAST} for previews or {@link FlateCompression#MAX} for archival
+     * output. Streams with settings of their own keep them.
+     *
+     * @param compression The compression settings.
+     */
+    public void setCompression(FlateCompression compression)
+    {
+        document.setCompression(compression);
+    }
+
     public Long getDocumentId()
     {
         return documentId;
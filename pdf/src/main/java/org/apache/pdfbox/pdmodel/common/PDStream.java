@@ -35,6 +35,7 @@ import org.apache.pdfbox.cos.COSStream;
 
 import org.apache.pdfbox.filter.Filter;
 import org.apache.pdfbox.filter.FilterManager;
+import org.apache.pdfbox.filter.FlateCompression;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 
@@ -279,6 +280,26 @@ public class PDStream implements COSObjectable
         return stream;
     }
 
+    /**
+     * This will get the settings used to flate encode this stream.
+     *
+     * @return The compression settings or null if the settings of the document are used.
+     */
+    public FlateCompression getCompression()
+    {
+        return stream.getCompression();
+    }
+
+    /**
+     * This will set the settings used to flate encode this stream.
+     *
+     * @param compression The compression settings or null to use the settings of the document.
+     */
+    public void setCompression(FlateCompression compression)
+    {
+        stream.setCompression(compression);
+    }
+
     /**
      * This will get the length of the filtered/compressed stream. This is
      * readonly in the PD Model and will be managed by this class.
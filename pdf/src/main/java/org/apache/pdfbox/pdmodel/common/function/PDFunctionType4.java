@@ -16,11 +16,15 @@
  */
 package org.apache.pdfbox.pdmodel.common.function;
 
+import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.common.PDRange;
+import org.apache.pdfbox.pdmodel.common.function.type4.CompiledProgram;
 import org.apache.pdfbox.pdmodel.common.function.type4.ExecutionContext;
 import org.apache.pdfbox.pdmodel.common.function.type4.InstructionSequence;
 import org.apache.pdfbox.pdmodel.common.function.type4.InstructionSequenceBuilder;
+import org.apache.pdfbox.pdmodel.common.function.type4.OperandStack;
 import org.apache.pdfbox.pdmodel.common.function.type4.Operators;
 
 import java.io.IOException;
@@ -37,7 +41,22 @@ public class PDFunctionType4 extends PDFunction
 
     private static final Operators OPERATORS = new Operators();
 
+    // every thread evaluates its functions on its own stack
+    private static final ThreadLocal<OperandStack> STACK = new ThreadLocal<OperandStack>()
+    {
+        protected OperandStack initialValue()
+        {
+            return new OperandStack();
+        }
+    };
+
     private final InstructionSequence instructions;
+    // null if the function has to be interpreted
+    private final CompiledProgram program;
+
+    // the domain and range as min/max pairs
+    private float[] domainValues;
+    private float[] rangeValues;
 
     /**
      * Constructor.
@@ -50,6 +69,11 @@ public class PDFunctionType4 extends PDFunction
         super( functionStream );
         this.instructions = InstructionSequenceBuilder.parse(
                 getPDStream().getInputStreamAsString());
+        this.program = CompiledProgram.compile(instructions);
+        COSArray domain = (COSArray)getDictionary().getDictionaryObject(COSName.DOMAIN);
+        domainValues = domain != null ? domain.toFloatArray() : null;
+        COSArray range = getRangeValues();
+        rangeValues = range != null ? range.toFloatArray() : null;
     }
 
 
@@ -61,10 +85,75 @@ public class PDFunctionType4 extends PDFunction
         return 4;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setDomainValues(COSArray domainValues)
+    {
+        super.setDomainValues(domainValues);
+        this.domainValues = domainValues != null ? domainValues.toFloatArray() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRangeValues(COSArray rangeValues)
+    {
+        super.setRangeValues(rangeValues);
+        this.rangeValues = rangeValues != null ? rangeValues.toFloatArray() : null;
+    }
+
     /**
     * {@inheritDoc}
     */
     public float[] eval(float[] input) throws IOException
+    {
+        float[] outputValues = new float[getNumberOfOutputParameters()];
+        eval(input, outputValues);
+        return outputValues;
+    }
+
+    /**
+     * Evaluates the function at the given input, like {@link #eval(float[])}, but writes the
+     * output values to the given array. Unless the function uses procedures in a way which
+     * can't be compiled, this doesn't allocate.
+     *
+     * @param input The input values.
+     * @param output The array receiving the output values, its length is the number of
+     * output parameters.
+     * @throws IOException if something went wrong processing the function.
+     */
+    public void eval(float[] input, float[] output) throws IOException
+    {
+        if (program == null)
+        {
+            interpret(input, output);
+            return;
+        }
+
+        //Setup the input values
+        final float[] domain = domainValues;
+        OperandStack stack = STACK.get();
+        stack.clear();
+        for (int i = input.length - 1; i >= 0; i--)
+        {
+            stack.pushReal(clipToRange(input[i], domain[2 * i], domain[2 * i + 1]));
+        }
+
+        //Execute the type 4 function.
+        program.execute(stack);
+
+        //Extract the output values
+        final float[] range = rangeValues;
+        checkOutputCount(stack.size(), output.length);
+        for (int i = output.length - 1; i >= 0; i--)
+        {
+            output[i] = clipToRange(stack.popReal(), range[2 * i], range[2 * i + 1]);
+        }
+    }
+
+    // evaluates the function with the interpreter, for programs which couldn't be compiled
+    private void interpret(float[] input, float[] output)
     {
         //Setup the input values
         int numberOfInputValues = input.length;
@@ -80,8 +169,17 @@ public class PDFunctionType4 extends PDFunction
         instructions.execute(context);
 
         //Extract the output values
-        int numberOfOutputValues = getNumberOfOutputParameters();
-        int numberOfActualOutputValues = context.getStack().size();
+        checkOutputCount(context.getStack().size(), output.length);
+        for (int i = output.length - 1; i >= 0; i--)
+        {
+            PDRange range = getRangeForOutput(i);
+            output[i] = context.popReal();
+            output[i] = clipToRange(output[i], range.getMin(), range.getMax());
+        }
+    }
+
+    private static void checkOutputCount(int numberOfActualOutputValues, int numberOfOutputValues)
+    {
         if (numberOfActualOutputValues < numberOfOutputValues)
         {
             throw new IllegalStateException("The type 4 function returned "
@@ -89,15 +187,5 @@ public class PDFunctionType4 extends PDFunction
                     + " values but the Range entry indicates that "
                     + numberOfOutputValues + " values be returned.");
         }
-        float[] outputValues = new float[numberOfOutputValues];
-        for (int i = numberOfOutputValues - 1; i >= 0; i--)
-        {
-            PDRange range = getRangeForOutput(i);
-            outputValues[i] = context.popReal();
-            outputValues[i] = clipToRange(outputValues[i], range.getMin(), range.getMax());
-        }
-
-        //Return the resulting array
-        return outputValues;
     }
 }
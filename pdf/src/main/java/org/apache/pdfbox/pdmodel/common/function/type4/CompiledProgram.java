@@ -0,0 +1,733 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.common.function.type4;
+
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Type 4 function compiled from an {@link InstructionSequence} into an array of opcodes.
+ * Operators are resolved when the program is compiled, and the procedures of if and ifelse
+ * become conditional jumps, so executing the program is a loop over an int array which works
+ * on the primitive entries of an {@link OperandStack} and doesn't allocate. The results are
+ * the same as those of {@link InstructionSequence#execute(ExecutionContext)}.
+ * @version $Revision$
+ */
+public final class CompiledProgram
+{
+
+    private static final int PUSH_INT = 0;
+    private static final int PUSH_REAL = 1;
+    private static final int PUSH_BOOL = 2;
+    private static final int JUMP = 3;
+    private static final int JUMP_IF_FALSE = 4;
+
+    //Arithmetic operators
+    private static final int ABS = 10;
+    private static final int ADD = 11;
+    private static final int ATAN = 12;
+    private static final int CEILING = 13;
+    private static final int COS = 14;
+    private static final int CVI = 15;
+    private static final int CVR = 16;
+    private static final int DIV = 17;
+    private static final int EXP = 18;
+    private static final int FLOOR = 19;
+    private static final int IDIV = 20;
+    private static final int LN = 21;
+    private static final int LOG = 22;
+    private static final int MOD = 23;
+    private static final int MUL = 24;
+    private static final int NEG = 25;
+    private static final int ROUND = 26;
+    private static final int SIN = 27;
+    private static final int SQRT = 28;
+    private static final int SUB = 29;
+    private static final int TRUNCATE = 30;
+
+    //Relational, boolean and bitwise operators
+    private static final int AND = 40;
+    private static final int BITSHIFT = 41;
+    private static final int EQ = 42;
+    private static final int GE = 43;
+    private static final int GT = 44;
+    private static final int LE = 45;
+    private static final int LT = 46;
+    private static final int NE = 47;
+    private static final int NOT = 48;
+    private static final int OR = 49;
+    private static final int XOR = 50;
+
+    //Stack operators
+    private static final int COPY = 60;
+    private static final int DUP = 61;
+    private static final int EXCH = 62;
+    private static final int INDEX = 63;
+    private static final int POP = 64;
+    private static final int ROLL = 65;
+
+    private static final Map<String, Integer> OPCODES = new java.util.HashMap<String, Integer>();
+
+    static
+    {
+        OPCODES.put("abs", ABS);
+        OPCODES.put("add", ADD);
+        OPCODES.put("atan", ATAN);
+        OPCODES.put("ceiling", CEILING);
+        OPCODES.put("cos", COS);
+        OPCODES.put("cvi", CVI);
+        OPCODES.put("cvr", CVR);
+        OPCODES.put("div", DIV);
+        OPCODES.put("exp", EXP);
+        OPCODES.put("floor", FLOOR);
+        OPCODES.put("idiv", IDIV);
+        OPCODES.put("ln", LN);
+        OPCODES.put("log", LOG);
+        OPCODES.put("mod", MOD);
+        OPCODES.put("mul", MUL);
+        OPCODES.put("neg", NEG);
+        OPCODES.put("round", ROUND);
+        OPCODES.put("sin", SIN);
+        OPCODES.put("sqrt", SQRT);
+        OPCODES.put("sub", SUB);
+        OPCODES.put("truncate", TRUNCATE);
+        OPCODES.put("and", AND);
+        OPCODES.put("bitshift", BITSHIFT);
+        OPCODES.put("eq", EQ);
+        OPCODES.put("ge", GE);
+        OPCODES.put("gt", GT);
+        OPCODES.put("le", LE);
+        OPCODES.put("lt", LT);
+        OPCODES.put("ne", NE);
+        OPCODES.put("not", NOT);
+        OPCODES.put("or", OR);
+        OPCODES.put("xor", XOR);
+        OPCODES.put("copy", COPY);
+        OPCODES.put("dup", DUP);
+        OPCODES.put("exch", EXCH);
+        OPCODES.put("index", INDEX);
+        OPCODES.put("pop", POP);
+        OPCODES.put("roll", ROLL);
+    }
+
+    private final int[] code;
+    // the number of entries the program can push, copy aside
+    private final int maxGrowth;
+
+    private CompiledProgram(int[] code, int maxGrowth)
+    {
+        this.code = code;
+        this.maxGrowth = maxGrowth;
+    }
+
+    /**
+     * Compiles an instruction sequence. Procedures are supported as the operands of if and
+     * ifelse, and as the last element of a sequence, where they are executed like
+     * {@link InstructionSequence#execute(ExecutionContext)} does.
+     * @param sequence the instruction sequence
+     * @return the compiled program, or null if the sequence uses procedures in another way or
+     * names an unknown operator, it has to be interpreted then
+     */
+    public static CompiledProgram compile(InstructionSequence sequence)
+    {
+        Compiler compiler = new Compiler();
+        List<Object> instructions = sequence.getInstructions();
+        if (!compiler.compile(instructions, 0, instructions.size()))
+        {
+            return null;
+        }
+        return compiler.createProgram();
+    }
+
+    private static final class Compiler
+    {
+        private int[] code = new int[64];
+        private int length = 0;
+        private int maxGrowth = 0;
+
+        private void emit(int value)
+        {
+            if (length == code.length)
+            {
+                int[] newCode = new int[length * 2];
+                System.arraycopy(code, 0, newCode, 0, length);
+                code = newCode;
+            }
+            code[length++] = value;
+        }
+
+        private boolean compile(List<Object> instructions, int start, int end)
+        {
+            for (int i = start; i < end; i++)
+            {
+                Object o = instructions.get(i);
+                if (o instanceof Integer)
+                {
+                    emit(PUSH_INT);
+                    emit(((Integer)o).intValue());
+                    maxGrowth++;
+                }
+                else if (o instanceof Float)
+                {
+                    emit(PUSH_REAL);
+                    emit(Float.floatToIntBits(((Float)o).floatValue()));
+                    maxGrowth++;
+                }
+                else if (o instanceof Boolean)
+                {
+                    emit(PUSH_BOOL);
+                    emit(((Boolean)o).booleanValue() ? 1 : 0);
+                    maxGrowth++;
+                }
+                else if (o instanceof InstructionSequence)
+                {
+                    List<Object> proc = ((InstructionSequence)o).getInstructions();
+                    Object next = i + 1 < end ? instructions.get(i + 1) : null;
+                    Object afterNext = i + 2 < end ? instructions.get(i + 2) : null;
+                    if ("if".equals(next))
+                    {
+                        emit(JUMP_IF_FALSE);
+                        int jump = length;
+                        emit(0);
+                        if (!compile(proc, 0, proc.size()))
+                        {
+                            return false;
+                        }
+                        code[jump] = length;
+                        i++;
+                    }
+                    else if (next instanceof InstructionSequence && "ifelse".equals(afterNext))
+                    {
+                        emit(JUMP_IF_FALSE);
+                        int elseJump = length;
+                        emit(0);
+                        if (!compile(proc, 0, proc.size()))
+                        {
+                            return false;
+                        }
+                        emit(JUMP);
+                        int endJump = length;
+                        emit(0);
+                        code[elseJump] = length;
+                        List<Object> elseProc = ((InstructionSequence)next).getInstructions();
+                        if (!compile(elseProc, 0, elseProc.size()))
+                        {
+                            return false;
+                        }
+                        code[endJump] = length;
+                        i += 2;
+                    }
+                    else if (i == end - 1)
+                    {
+                        // a procedure ending a sequence is executed when the sequence ends
+                        if (!compile(proc, 0, proc.size()))
+                        {
+                            return false;
+                        }
+                    }
+                    else
+                    {
+                        // a procedure used as data
+                        return false;
+                    }
+                }
+                else
+                {
+                    String name = (String)o;
+                    if ("true".equals(name) || "false".equals(name))
+                    {
+                        emit(PUSH_BOOL);
+                        emit("true".equals(name) ? 1 : 0);
+                        maxGrowth++;
+                        continue;
+                    }
+                    Integer opcode = OPCODES.get(name);
+                    if (opcode == null)
+                    {
+                        return false;
+                    }
+                    emit(opcode.intValue());
+                    if (opcode.intValue() == DUP || opcode.intValue() == INDEX)
+                    {
+                        maxGrowth++;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private CompiledProgram createProgram()
+        {
+            int[] finalCode = new int[length];
+            System.arraycopy(code, 0, finalCode, 0, length);
+            return new CompiledProgram(finalCode, maxGrowth);
+        }
+    }
+
+    /**
+     * Executes the program on the given stack.
+     * @param stack the operand stack, holding the input values
+     */
+    public void execute(OperandStack stack)
+    {
+        // one more entry for exch
+        stack.ensureCapacity(stack.size + maxGrowth + 1);
+        final int[] code = this.code;
+        byte[] types = stack.types;
+        int[] ints = stack.ints;
+        float[] reals = stack.reals;
+        int sp = stack.size;
+        int pc = 0;
+        try
+        {
+            while (pc < code.length)
+            {
+                switch (code[pc++])
+                {
+                    case PUSH_INT:
+                        types[sp] = OperandStack.INT;
+                        ints[sp++] = code[pc++];
+                        break;
+                    case PUSH_REAL:
+                        types[sp] = OperandStack.REAL;
+                        reals[sp++] = Float.intBitsToFloat(code[pc++]);
+                        break;
+                    case PUSH_BOOL:
+                        types[sp] = OperandStack.BOOL;
+                        ints[sp++] = code[pc++];
+                        break;
+                    case JUMP:
+                        pc = code[pc];
+                        break;
+                    case JUMP_IF_FALSE:
+                        sp--;
+                        if (types[sp] != OperandStack.BOOL)
+                        {
+                            throw new ClassCastException("bool expected");
+                        }
+                        pc = ints[sp] != 0 ? pc + 1 : code[pc];
+                        break;
+
+                    case ABS:
+                        if (types[sp - 1] == OperandStack.INT)
+                        {
+                            ints[sp - 1] = Math.abs(ints[sp - 1]);
+                        }
+                        else
+                        {
+                            setReal(types, reals, sp - 1, Math.abs(real(types, ints, reals, sp - 1)));
+                        }
+                        break;
+                    case ADD:
+                    case SUB:
+                    {
+                        sp--;
+                        if (types[sp - 1] == OperandStack.INT && types[sp] == OperandStack.INT)
+                        {
+                            long result = code[pc - 1] == ADD
+                                    ? (long)ints[sp - 1] + ints[sp] : (long)ints[sp - 1] - ints[sp];
+                            setNumber(types, ints, reals, sp - 1, result);
+                        }
+                        else
+                        {
+                            float num1 = real(types, ints, reals, sp - 1);
+                            float num2 = real(types, ints, reals, sp);
+                            setReal(types, reals, sp - 1, code[pc - 1] == ADD ? num1 + num2 : num1 - num2);
+                        }
+                        break;
+                    }
+                    case ATAN:
+                    {
+                        sp--;
+                        float den = real(types, ints, reals, sp);
+                        float num = real(types, ints, reals, sp - 1);
+                        float atan = (float)Math.atan2(num, den);
+                        atan = (float)Math.toDegrees(atan) % 360;
+                        if (atan < 0)
+                        {
+                            atan = atan + 360;
+                        }
+                        setReal(types, reals, sp - 1, atan);
+                        break;
+                    }
+                    case CEILING:
+                        if (types[sp - 1] != OperandStack.INT)
+                        {
+                            setReal(types, reals, sp - 1, (float)Math.ceil(real(types, ints, reals, sp - 1)));
+                        }
+                        break;
+                    case COS:
+                        setReal(types, reals, sp - 1,
+                                (float)Math.cos(Math.toRadians(real(types, ints, reals, sp - 1))));
+                        break;
+                    case CVI:
+                        setInt(types, ints, sp - 1, intValue(types, ints, reals, sp - 1));
+                        break;
+                    case CVR:
+                        setReal(types, reals, sp - 1, real(types, ints, reals, sp - 1));
+                        break;
+                    case DIV:
+                        sp--;
+                        setReal(types, reals, sp - 1, real(types, ints, reals, sp - 1) / real(types, ints, reals, sp));
+                        break;
+                    case EXP:
+                        sp--;
+                        setReal(types, reals, sp - 1, (float)Math.pow(doubleValue(types, ints, reals, sp - 1),
+                                doubleValue(types, ints, reals, sp)));
+                        break;
+                    case FLOOR:
+                        if (types[sp - 1] != OperandStack.INT)
+                        {
+                            setReal(types, reals, sp - 1, (float)Math.floor(real(types, ints, reals, sp - 1)));
+                        }
+                        break;
+                    case IDIV:
+                        sp--;
+                        setInt(types, ints, sp - 1, integer(types, ints, sp - 1) / integer(types, ints, sp));
+                        break;
+                    case LN:
+                        setReal(types, reals, sp - 1, (float)Math.log(doubleValue(types, ints, reals, sp - 1)));
+                        break;
+                    case LOG:
+                        setReal(types, reals, sp - 1, (float)Math.log10(doubleValue(types, ints, reals, sp - 1)));
+                        break;
+                    case MOD:
+                        sp--;
+                        setInt(types, ints, sp - 1, integer(types, ints, sp - 1) % integer(types, ints, sp));
+                        break;
+                    case MUL:
+                        sp--;
+                        if (types[sp - 1] == OperandStack.INT && types[sp] == OperandStack.INT)
+                        {
+                            setNumber(types, ints, reals, sp - 1, (long)ints[sp - 1] * ints[sp]);
+                        }
+                        else
+                        {
+                            setReal(types, reals, sp - 1, (float)(doubleValue(types, ints, reals, sp - 1)
+                                    * doubleValue(types, ints, reals, sp)));
+                        }
+                        break;
+                    case NEG:
+                        if (types[sp - 1] == OperandStack.INT)
+                        {
+                            setNumber(types, ints, reals, sp - 1, -(long)ints[sp - 1]);
+                        }
+                        else
+                        {
+                            setReal(types, reals, sp - 1, -real(types, ints, reals, sp - 1));
+                        }
+                        break;
+                    case ROUND:
+                        if (types[sp - 1] != OperandStack.INT)
+                        {
+                            setReal(types, reals, sp - 1, (float)Math.round((double)real(types, ints, reals, sp - 1)));
+                        }
+                        break;
+                    case SIN:
+                        setReal(types, reals, sp - 1,
+                                (float)Math.sin(Math.toRadians(real(types, ints, reals, sp - 1))));
+                        break;
+                    case SQRT:
+                    {
+                        float num = real(types, ints, reals, sp - 1);
+                        if (num < 0)
+                        {
+                            throw new IllegalArgumentException("argument must be nonnegative");
+                        }
+                        setReal(types, reals, sp - 1, (float)Math.sqrt(num));
+                        break;
+                    }
+                    case TRUNCATE:
+                        if (types[sp - 1] != OperandStack.INT)
+                        {
+                            setReal(types, reals, sp - 1, (float)(int)real(types, ints, reals, sp - 1));
+                        }
+                        break;
+
+                    case AND:
+                    case OR:
+                    case XOR:
+                    {
+                        sp--;
+                        byte type = types[sp - 1];
+                        if (type != types[sp] || type == OperandStack.REAL)
+                        {
+                            throw new ClassCastException("Operands must be bool/bool or int/int");
+                        }
+                        int op = code[pc - 1];
+                        int int1 = ints[sp - 1];
+                        int int2 = ints[sp];
+                        ints[sp - 1] = op == AND ? int1 & int2 : op == OR ? int1 | int2 : int1 ^ int2;
+                        break;
+                    }
+                    case BITSHIFT:
+                    {
+                        sp--;
+                        int shift = integer(types, ints, sp);
+                        int int1 = integer(types, ints, sp - 1);
+                        ints[sp - 1] = shift < 0 ? int1 >> Math.abs(shift) : int1 << shift;
+                        break;
+                    }
+                    case EQ:
+                    case NE:
+                    {
+                        sp--;
+                        boolean result;
+                        byte type1 = types[sp - 1];
+                        byte type2 = types[sp];
+                        if (type1 != OperandStack.BOOL && type2 != OperandStack.BOOL)
+                        {
+                            result = real(types, ints, reals, sp - 1) == real(types, ints, reals, sp);
+                        }
+                        else
+                        {
+                            result = type1 == type2 && ints[sp - 1] == ints[sp];
+                        }
+                        setBool(types, ints, sp - 1, code[pc - 1] == EQ ? result : !result);
+                        break;
+                    }
+                    case GE:
+                        sp--;
+                        setBool(types, ints, sp - 1, real(types, ints, reals, sp - 1) >= real(types, ints, reals, sp));
+                        break;
+                    case GT:
+                        sp--;
+                        setBool(types, ints, sp - 1, real(types, ints, reals, sp - 1) > real(types, ints, reals, sp));
+                        break;
+                    case LE:
+                        sp--;
+                        setBool(types, ints, sp - 1, real(types, ints, reals, sp - 1) <= real(types, ints, reals, sp));
+                        break;
+                    case LT:
+                        sp--;
+                        setBool(types, ints, sp - 1, real(types, ints, reals, sp - 1) < real(types, ints, reals, sp));
+                        break;
+                    case NOT:
+                        if (types[sp - 1] == OperandStack.BOOL)
+                        {
+                            ints[sp - 1] = ints[sp - 1] != 0 ? 0 : 1;
+                        }
+                        else if (types[sp - 1] == OperandStack.INT)
+                        {
+                            // like the interpreter's not
+                            ints[sp - 1] = -ints[sp - 1];
+                        }
+                        else
+                        {
+                            throw new ClassCastException("Operand must be bool or int");
+                        }
+                        break;
+
+                    case COPY:
+                    {
+                        sp--;
+                        int n = intValue(types, ints, reals, sp);
+                        if (n > 0)
+                        {
+                            if (n > sp)
+                            {
+                                throw new EmptyStackException();
+                            }
+                            stack.size = sp;
+                            stack.ensureCapacity(sp + n + maxGrowth);
+                            types = stack.types;
+                            ints = stack.ints;
+                            reals = stack.reals;
+                            System.arraycopy(types, sp - n, types, sp, n);
+                            System.arraycopy(ints, sp - n, ints, sp, n);
+                            System.arraycopy(reals, sp - n, reals, sp, n);
+                            sp += n;
+                        }
+                        break;
+                    }
+                    case DUP:
+                        copyEntry(types, ints, reals, sp - 1, sp);
+                        sp++;
+                        break;
+                    case EXCH:
+                        copyEntry(types, ints, reals, sp - 1, sp);
+                        copyEntry(types, ints, reals, sp - 2, sp - 1);
+                        copyEntry(types, ints, reals, sp, sp - 2);
+                        break;
+                    case INDEX:
+                    {
+                        int n = intValue(types, ints, reals, sp - 1);
+                        if (n < 0)
+                        {
+                            throw new IllegalArgumentException("rangecheck: " + n);
+                        }
+                        copyEntry(types, ints, reals, sp - n - 2, sp - 1);
+                        break;
+                    }
+                    case POP:
+                        if (sp == 0)
+                        {
+                            throw new EmptyStackException();
+                        }
+                        sp--;
+                        break;
+                    case ROLL:
+                    {
+                        int j = intValue(types, ints, reals, sp - 1);
+                        int n = intValue(types, ints, reals, sp - 2);
+                        sp -= 2;
+                        if (j == 0)
+                        {
+                            break;
+                        }
+                        if (n < 0)
+                        {
+                            throw new IllegalArgumentException("rangecheck: " + n);
+                        }
+                        if (n > sp)
+                        {
+                            throw new EmptyStackException();
+                        }
+                        if (n > 0)
+                        {
+                            // moving the top j entries to the bottom of the n entries is a
+                            // rotation, done by reversing the parts and then the whole
+                            j = ((j % n) + n) % n;
+                            reverse(types, ints, reals, sp - n, sp - j);
+                            reverse(types, ints, reals, sp - j, sp);
+                            reverse(types, ints, reals, sp - n, sp);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("invalid opcode " + code[pc - 1]);
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            // an operator found fewer operands than it needs
+            throw new EmptyStackException();
+        }
+        finally
+        {
+            stack.size = sp;
+        }
+    }
+
+    // a number as float like Number.floatValue()
+    private static float real(byte[] types, int[] ints, float[] reals, int i)
+    {
+        switch (types[i])
+        {
+            case OperandStack.INT:
+                return ints[i];
+            case OperandStack.REAL:
+                return reals[i];
+            default:
+                throw new ClassCastException("number expected");
+        }
+    }
+
+    // a number as double like Number.doubleValue()
+    private static double doubleValue(byte[] types, int[] ints, float[] reals, int i)
+    {
+        switch (types[i])
+        {
+            case OperandStack.INT:
+                return ints[i];
+            case OperandStack.REAL:
+                return reals[i];
+            default:
+                throw new ClassCastException("number expected");
+        }
+    }
+
+    // a number as int like Number.intValue()
+    private static int intValue(byte[] types, int[] ints, float[] reals, int i)
+    {
+        switch (types[i])
+        {
+            case OperandStack.INT:
+                return ints[i];
+            case OperandStack.REAL:
+                return (int)reals[i];
+            default:
+                throw new ClassCastException("number expected");
+        }
+    }
+
+    // an int operand
+    private static int integer(byte[] types, int[] ints, int i)
+    {
+        if (types[i] != OperandStack.INT)
+        {
+            throw new ClassCastException("int expected");
+        }
+        return ints[i];
+    }
+
+    private static void setReal(byte[] types, float[] reals, int i, float value)
+    {
+        types[i] = OperandStack.REAL;
+        reals[i] = value;
+    }
+
+    private static void setInt(byte[] types, int[] ints, int i, int value)
+    {
+        types[i] = OperandStack.INT;
+        ints[i] = value;
+    }
+
+    private static void setBool(byte[] types, int[] ints, int i, boolean value)
+    {
+        types[i] = OperandStack.BOOL;
+        ints[i] = value ? 1 : 0;
+    }
+
+    // an int result which becomes a real if it overflows
+    private static void setNumber(byte[] types, int[] ints, float[] reals, int i, long value)
+    {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+        {
+            setReal(types, reals, i, value);
+        }
+        else
+        {
+            setInt(types, ints, i, (int)value);
+        }
+    }
+
+    private static void copyEntry(byte[] types, int[] ints, float[] reals, int from, int to)
+    {
+        types[to] = types[from];
+        ints[to] = ints[from];
+        reals[to] = reals[from];
+    }
+
+    private static void reverse(byte[] types, int[] ints, float[] reals, int start, int end)
+    {
+        for (int i = start, j = end - 1; i < j; i++, j--)
+        {
+            byte type = types[i];
+            types[i] = types[j];
+            types[j] = type;
+            int intValue = ints[i];
+            ints[i] = ints[j];
+            ints[j] = intValue;
+            float real = reals[i];
+            reals[i] = reals[j];
+            reals[j] = real;
+        }
+    }
+}
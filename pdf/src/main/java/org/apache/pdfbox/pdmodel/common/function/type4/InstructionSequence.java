@@ -74,6 +74,15 @@ public class InstructionSequence
         this.instructions.add(child);
     }
 
+    /**
+     * Returns the instructions, names, values and procs, as added.
+     * @return the instructions
+     */
+    List<Object> getInstructions()
+    {
+        return this.instructions;
+    }
+
     /**
      * Executes the instruction sequence.
      * @param context the execution context
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.common.function.type4;
+
+import java.util.EmptyStackException;
+
+/**
+ * The operand stack of a {@link CompiledProgram}. Every entry has a type, int, real or bool,
+ * and its value is kept in a primitive array, so pushing and popping doesn't allocate. The
+ * arrays only grow when a program needs a deeper stack than any before it.
+ * @version $Revision$
+ */
+public final class OperandStack
+{
+
+    static final byte INT = 0;
+    static final byte REAL = 1;
+    static final byte BOOL = 2;
+
+    private static final int INITIAL_SIZE = 32;
+
+    // ints and bools are kept in ints, reals in reals
+    byte[] types = new byte[INITIAL_SIZE];
+    int[] ints = new int[INITIAL_SIZE];
+    float[] reals = new float[INITIAL_SIZE];
+    int size = 0;
+
+    /**
+     * Removes all entries.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the size
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Pushes a real value.
+     * @param value the value
+     */
+    public void pushReal(float value)
+    {
+        ensureCapacity(size + 1);
+        types[size] = REAL;
+        reals[size++] = value;
+    }
+
+    /**
+     * Pops a number from the stack and returns it as a real value. If it's not a number, a
+     * ClassCastException is thrown.
+     * @return the real value
+     */
+    public float popReal()
+    {
+        if (size == 0)
+        {
+            throw new EmptyStackException();
+        }
+        size--;
+        switch (types[size])
+        {
+            case INT:
+                return ints[size];
+            case REAL:
+                return reals[size];
+            default:
+                throw new ClassCastException("number expected");
+        }
+    }
+
+    void ensureCapacity(int capacity)
+    {
+        if (capacity > types.length)
+        {
+            int newLength = Math.max(capacity, types.length * 2);
+            byte[] newTypes = new byte[newLength];
+            System.arraycopy(types, 0, newTypes, 0, size);
+            types = newTypes;
+            int[] newInts = new int[newLength];
+            System.arraycopy(ints, 0, newInts, 0, size);
+            ints = newInts;
+            float[] newReals = new float[newLength];
+            System.arraycopy(reals, 0, newReals, 0, size);
+            reals = newReals;
+        }
+    }
+}
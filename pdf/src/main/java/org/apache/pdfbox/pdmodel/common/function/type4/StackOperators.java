@@ -122,39 +122,26 @@ class StackOperators
             {
                 throw new IllegalArgumentException("rangecheck: " + n);
             }
+            if (n == 0)
+            {
+                return;
+            }
+            //a roll by j is the same as a positive roll by j mod n
+            j = ((j % n) + n) % n;
 
             LinkedList<Object> rolled = new LinkedList<Object>();
             LinkedList<Object> moved = new LinkedList<Object>();
-            if (j < 0)
+            int n1 = n - j;
+            for (int i = j; i > 0; i--)
             {
-                //negative roll
-                int n1 = n + j;
-                for (int i = 0; i < n1; i++)
-                {
-                    moved.addFirst(stack.pop());
-                }
-                for (int i = j; i < 0; i++)
-                {
-                    rolled.addFirst(stack.pop());
-                }
-                stack.addAll(moved);
-                stack.addAll(rolled);
+                rolled.addFirst(stack.pop());
             }
-            else
+            for (int i = 0; i < n1; i++)
             {
-                //positive roll
-                int n1 = n - j;
-                for (int i = j; i > 0; i--)
-                {
-                    rolled.addFirst(stack.pop());
-                }
-                for (int i = 0; i < n1; i++)
-                {
-                    moved.addFirst(stack.pop());
-                }
-                stack.addAll(rolled);
-                stack.addAll(moved);
+                moved.addFirst(stack.pop());
             }
+            stack.addAll(rolled);
+            stack.addAll(moved);
         }
 
     }
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.edit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.filter.FlateFilter;
+
+/**
+ * An unsynchronized, growable byte array sink collecting the operators of a content stream.
+ *
+ * Operators are handed to the underlying stream in large blocks instead of token by token. In
+ * deflate mode the whole content is kept until {@link #close()} and then compressed in one pass
+ * straight into the filtered stream of the COSStream, so it never has to be encoded again when
+ * the document is saved.
+ *
+ * This class isn't thread safe, a sink belongs to exactly one PDPageContentStream. Sinks of
+ * different pages may be used on different threads as long as the content is deflated.
+ */
+final class ContentStreamSink extends OutputStream
+{
+    private static final int INITIAL_SIZE = 8192;
+    private static final int FLUSH_THRESHOLD = 65536;
+
+    private final COSStream stream;
+    private final boolean deflate;
+    private final FlateCompression compression;
+    private OutputStream target;
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int count;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param stream The stream to write the content to.
+     * @param deflate True if the content should be flate encoded in one pass when the sink is
+     *        closed. The FlateDecode filter has to be set on the stream by the caller.
+     * @param compression The settings of the document, used if the stream has none.
+     *
+     * @throws IOException If the underlying stream can't be created.
+     */
+    ContentStreamSink(COSStream stream, boolean deflate, FlateCompression compression) throws IOException
+    {
+        this.stream = stream;
+        this.deflate = deflate;
+        this.compression = compression;
+        if (!deflate)
+        {
+            target = stream.createUnfilteredStream();
+        }
+    }
+
+    private void ensureCapacity(int required)
+    {
+        if (required > buffer.length)
+        {
+            int newSize = Math.max(buffer.length << 1, required);
+            byte[] newBuffer = new byte[newSize];
+            System.arraycopy(buffer, 0, newBuffer, 0, count);
+            buffer = newBuffer;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (count == buffer.length)
+        {
+            ensureCapacity(count + 1);
+        }
+        buffer[count++] = (byte) b;
+        if (count >= FLUSH_THRESHOLD && !deflate)
+        {
+            drain();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b) throws IOException
+    {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException
+    {
+        ensureCapacity(count + length);
+        System.arraycopy(b, offset, buffer, count, length);
+        count += length;
+        if (count >= FLUSH_THRESHOLD && !deflate)
+        {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        target.write(buffer, 0, count);
+        count = 0;
+    }
+
+    /**
+     * Flushes the pending block to the underlying stream. This does nothing in deflate mode, as
+     * the content is only compressed when the sink is closed.
+     *
+     * @throws IOException If the data can't be written.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (!deflate && count > 0)
+        {
+            drain();
+            target.flush();
+        }
+    }
+
+    /**
+     * Writes the remaining content to the stream and closes it.
+     *
+     * @throws IOException If the data can't be written.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        if (deflate)
+        {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(64, count / 4));
+            FlateCompression settings = stream.getCompression();
+            FlateFilter.encode(buffer, 0, count, encoded, settings != null ? settings : compression);
+            buffer = null;
+            count = 0;
+            // the encoding above may run concurrently for several pages, but a scratch file
+            // can be shared between streams and must only be appended to by one of them at a time
+            synchronized (stream.getScratchFile())
+            {
+                target = stream.createFilteredStream();
+                encoded.writeTo(target);
+                target.close();
+            }
+        }
+        else
+        {
+            if (count > 0)
+            {
+                drain();
+            }
+            buffer = null;
+            target.close();
+        }
+    }
+}
@@ -23,7 +23,6 @@ import and.awt.geom.AffineTransform;
 import and.awt.geom.PathIterator;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -42,6 +41,7 @@ import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.COSStreamArray;
 import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
@@ -52,6 +52,7 @@ import org.apache.pdfbox.pdmodel.graphics.color.PDPattern;
 import org.apache.pdfbox.pdmodel.graphics.color.PDSeparation;
 import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+import org.apache.pdfbox.util.NumberFormatUtil;
 
 /**
  * This class is a convenience for creating page content streams.  You MUST
@@ -67,9 +68,10 @@ public class PDPageContentStream
      */
     private static final Log LOG = LogFactory.getLog(PDPageContentStream.class);
 
-    private OutputStream output;
+    private ContentStreamSink output;
     private boolean inTextMode = false;
     private PDResources resources;
+    private PDFont currentFont;
 
     private PDColorSpace currentStrokingColorSpace = new PDDeviceGray();
     private PDColorSpace currentNonStrokingColorSpace = new PDDeviceGray();
@@ -79,6 +81,10 @@ public class PDPageContentStream
 
     private NumberFormat formatDecimal = NumberFormat.getNumberInstance(Locale.US);
 
+    // reusable buffer for the allocation free number formatting
+    private int maximumFractionDigits = 10;
+    private final byte[] formatBuffer = new byte[NumberFormatUtil.MAX_LENGTH];
+
     private static final String ISO8859 = "ISO-8859-1";
 
     private static byte[] getISOBytes(final String s)
@@ -99,6 +105,7 @@ public class PDPageContentStream
     private static final byte[] MOVE_TEXT_POSITION = getISOBytes("Td\n");
     private static final byte[] SET_TEXT_MATRIX = getISOBytes("Tm\n");
     private static final byte[] SHOW_TEXT = getISOBytes("Tj\n");
+    private static final byte[] SHOW_TEXT_ADJUSTED = getISOBytes("TJ\n");
 
     private static final byte[] SAVE_GRAPHICS_STATE = getISOBytes("q\n");
     private static final byte[] RESTORE_GRAPHICS_STATE = getISOBytes("Q\n");
@@ -226,7 +233,7 @@ public class PDPageContentStream
             {
                 // create a new stream to encapsulate the existing stream
                 PDStream saveGraphics = new PDStream(document);
-                output = saveGraphics.createOutputStream();
+                output = new ContentStreamSink(saveGraphics.getStream(), false, document.getCompression());
                 // save the initial/unmodified graphics context
                 saveGraphicsState();
                 close();
@@ -242,7 +249,7 @@ public class PDPageContentStream
 
             // Sets the compoundStream as page contents
             sourcePage.setContents(new PDStream(compoundStream));
-            output = contentsToAppend.createOutputStream();
+            output = new ContentStreamSink(contentsToAppend.getStream(), compress, document.getCompression());
             if (resetContext)
             {
                 // restore the initial/unmodified graphics context
@@ -263,9 +270,9 @@ public class PDPageContentStream
                 contents.setFilters(filters);
             }
             sourcePage.setContents(contents);
-            output = contents.createOutputStream();
+            output = new ContentStreamSink(contents.getStream(), compress, document.getCompression());
         }
-        formatDecimal.setMaximumFractionDigits(10);
+        formatDecimal.setMaximumFractionDigits(maximumFractionDigits);
         formatDecimal.setGroupingUsed(false);
         // this has to be done here, as the resources will be set to null when reseting the content stream
         resources = sourcePage.getResources();
@@ -317,6 +324,7 @@ public class PDPageContentStream
      */
     public void setFont(PDFont font, float fontSize) throws IOException
     {
+        currentFont = font;
         String fontMapping = resources.addFont(font);
         appendRawCommands("/");
         appendRawCommands(fontMapping);
@@ -553,6 +561,10 @@ public class PDPageContentStream
             throw new IOException("Error: must call beginText() before drawString");
         }
         COSString string = new COSString(text);
+        if (currentFont instanceof PDTrueTypeFont)
+        {
+            ((PDTrueTypeFont) currentFont).addToSubset(string.getBytes());
+        }
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         string.writePDF(buffer);
         appendRawCommands(buffer.toByteArray());
@@ -560,6 +572,75 @@ public class PDPageContentStream
         appendRawCommands(SHOW_TEXT);
     }
 
+    /**
+     * This will draw a string at the current location on the screen and apply the kerning of
+     * the current font between its characters, as measured by
+     * {@link PDFont#getStringAdvances(CharSequence, int, int, float[])}. Strings without
+     * kerned pairs or with characters outside of ISO-8859-1 are drawn like
+     * {@link #drawString(String)} does.
+     *
+     * @param text The text to draw.
+     * @throws IOException If an io exception occurs.
+     */
+    public void drawKernedString(String text) throws IOException
+    {
+        if (!inTextMode)
+        {
+            throw new IOException("Error: must call beginText() before drawKernedString");
+        }
+        int length = text.length();
+        float[] adjustments = null;
+        for (int i = 1; currentFont != null && i < length; i++)
+        {
+            char first = text.charAt(i - 1);
+            char second = text.charAt(i);
+            if (first > 0xff || second > 0xff)
+            {
+                adjustments = null;
+                break;
+            }
+            float kerning = currentFont.getKerning(first, second);
+            if (kerning != 0)
+            {
+                if (adjustments == null)
+                {
+                    adjustments = new float[length];
+                }
+                adjustments[i] = kerning;
+            }
+        }
+        if (adjustments == null)
+        {
+            drawString(text);
+            return;
+        }
+        if (currentFont instanceof PDTrueTypeFont)
+        {
+            ((PDTrueTypeFont) currentFont).addToSubset(text.getBytes(ISO8859));
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        appendRawCommands(OPENING_BRACKET);
+        int start = 0;
+        for (int i = 1; i <= length; i++)
+        {
+            if (i == length || adjustments[i] != 0)
+            {
+                buffer.reset();
+                new COSString(text.substring(start, i)).writePDF(buffer);
+                appendRawCommands(buffer.toByteArray());
+                if (i < length)
+                {
+                    // positive values move the next glyph to the left
+                    appendRawCommands(-adjustments[i]);
+                }
+                start = i;
+            }
+        }
+        appendRawCommands(CLOSING_BRACKET);
+        appendRawCommands(SPACE);
+        appendRawCommands(SHOW_TEXT_ADJUSTED);
+    }
+
     /**
      * Set the stroking color space.  This will add the colorspace to the PDResources
      * if necessary.
@@ -1465,7 +1546,15 @@ public class PDPageContentStream
      */
     public void appendRawCommands(double data) throws IOException
     {
-        appendRawCommands(formatDecimal.format(data));
+        int length = NumberFormatUtil.formatDoubleFast(data, maximumFractionDigits, formatBuffer);
+        if (length == -1)
+        {
+            appendRawCommands(formatDecimal.format(data));
+        }
+        else
+        {
+            output.write(formatBuffer, 0, length);
+        }
     }
 
     /**
@@ -1477,7 +1566,41 @@ public class PDPageContentStream
      */
     public void appendRawCommands(float data) throws IOException
     {
-        appendRawCommands(formatDecimal.format(data));
+        int length = NumberFormatUtil.formatFloatFast(data, maximumFractionDigits, formatBuffer);
+        if (length == -1)
+        {
+            appendRawCommands(formatDecimal.format(data));
+        }
+        else
+        {
+            output.write(formatBuffer, 0, length);
+        }
+    }
+
+    /**
+     * Sets the maximum number of fraction digits used when writing float and double operands.
+     * The default is 10.
+     *
+     * @param digits the maximum number of fraction digits
+     */
+    public void setMaximumFractionDigits(int digits)
+    {
+        if (digits < 0)
+        {
+            throw new IllegalArgumentException("Maximum fraction digits must not be negative: " + digits);
+        }
+        maximumFractionDigits = digits;
+        formatDecimal.setMaximumFractionDigits(digits);
+    }
+
+    /**
+     * Returns the maximum number of fraction digits used when writing float and double operands.
+     *
+     * @return the maximum number of fraction digits
+     */
+    public int getMaximumFractionDigits()
+    {
+        return maximumFractionDigits;
     }
 
     /**
@@ -61,7 +61,7 @@ public abstract class PDFont implements COSObjectable
     /**
      * The descriptor of the font.
      */
-    private PDFontDescriptor fontDescriptor = null;
+    private volatile PDFontDescriptor fontDescriptor = null;
 
     /**
      * The font matrix.
@@ -85,7 +85,7 @@ public abstract class PDFont implements COSObjectable
     /**
      * A list a floats representing the widths.
      */
-    private List<Integer> widths = null;
+    private volatile List<Integer> widths = null;
 
     protected static final String resourceRootCMAP = "org/apache/pdfbox/resources/cmap/";
 
@@ -217,15 +217,121 @@ public abstract class PDFont implements COSObjectable
      */
     public float getStringWidth(String string) throws IOException
     {
-        byte[] data = string.getBytes("ISO-8859-1");
+        return getStringWidth(string, 0, string.length());
+    }
+
+    /**
+     * This will get the width of a range of characters for this font. Every character is
+     * measured with its single byte ISO-8859-1 code, characters which can't be mapped are
+     * measured as '?'.
+     * 
+     * @param text The text to measure.
+     * @param start The index of the first character.
+     * @param end The index after the last character.
+     * 
+     * @return The width of the characters in 1000 units of text space, ie 333 567...
+     * 
+     * @throws IOException If there is an error getting the width information.
+     */
+    public float getStringWidth(CharSequence text, int start, int end) throws IOException
+    {
+        byte[] data = new byte[1];
         float totalWidth = 0;
-        for (int i = 0; i < data.length; i++)
+        for (int i = start; i < end; i++)
         {
-            totalWidth += getFontWidth(data, i, 1);
+            char c = text.charAt(i);
+            if (c > 0xff)
+            {
+                if (isSurrogatePair(text, i, end))
+                {
+                    i++;
+                }
+                c = '?';
+            }
+            data[0] = (byte) c;
+            totalWidth += getFontWidth(data, 0, 1);
         }
         return totalWidth;
     }
 
+    /**
+     * This will get the cumulative advance widths of a range of characters for this font,
+     * including the kerning of adjacent characters. The characters are mapped like
+     * {@link #getStringWidth(CharSequence, int, int)} does, the low surrogate of a pair gets
+     * the same advance as the high surrogate.
+     * 
+     * @param text The text to measure.
+     * @param start The index of the first character.
+     * @param end The index after the last character.
+     * @param advances The array to fill, advances[i - start] is set to the width of the
+     * characters from start through i in 1000 units of text space. It must have room for
+     * end - start values.
+     * 
+     * @throws IOException If there is an error getting the width information.
+     */
+    public void getStringAdvances(CharSequence text, int start, int end, float[] advances) throws IOException
+    {
+        byte[] data = new byte[1];
+        float totalWidth = 0;
+        int previous = -1;
+        for (int i = start; i < end; i++)
+        {
+            int code = text.charAt(i);
+            boolean pair = false;
+            if (code > 0xff)
+            {
+                pair = isSurrogatePair(text, i, end);
+                code = '?';
+            }
+            if (previous >= 0)
+            {
+                totalWidth += getKerning(previous, code);
+            }
+            data[0] = (byte) code;
+            totalWidth += getFontWidth(data, 0, 1);
+            advances[i - start] = totalWidth;
+            if (pair)
+            {
+                i++;
+                advances[i - start] = totalWidth;
+            }
+            previous = code;
+        }
+    }
+
+    /**
+     * This will get the kerning adjustment between two single byte character codes. The
+     * base implementation has no kerning information and returns 0.
+     * 
+     * @param firstCode The code of the first character.
+     * @param secondCode The code of the character following it.
+     * 
+     * @return The adjustment in 1000 units of text space, negative values move the characters
+     * closer together.
+     * 
+     * @throws IOException If there is an error getting the kerning information.
+     */
+    public float getKerning(int firstCode, int secondCode) throws IOException
+    {
+        return 0;
+    }
+
+    /**
+     * Checks if a character starts a surrogate pair which ends within a range, such a pair
+     * is measured as a single character which can't be mapped.
+     * 
+     * @param text The text.
+     * @param index The index of the character.
+     * @param end The index after the last character of the range.
+     * 
+     * @return true if the character and the next one form a surrogate pair.
+     */
+    static boolean isSurrogatePair(CharSequence text, int index, int end)
+    {
+        return Character.isHighSurrogate(text.charAt(index)) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1));
+    }
+
     /**
      * This will get the average font width for all characters.
      * 
@@ -18,11 +18,18 @@ package org.apache.pdfbox.pdmodel.font;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fontbox.afm.FontMetric;
+import org.apache.fontbox.afm.KernPair;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
@@ -44,7 +51,89 @@ import org.apache.pdfbox.util.ResourceLoader;
  */
 public abstract class PDSimpleFont extends PDFont
 {
-    private final HashMap<Integer, Float> mFontSizes = new HashMap<Integer, Float>(128);
+    // the widths of all single byte codes, built on first use; fonts are shared between
+    // pages which may be rendered concurrently, a race only builds the same table twice
+    private volatile float[] widthTable;
+    private volatile KerningTable kerningTable;
+
+    /**
+     * The kerning pairs of the single byte codes of a font. For every first code the second
+     * codes are kept sorted with their adjustments, so a lookup is a binary search.
+     */
+    private static final class KerningTable
+    {
+        private final int[][] secondCodes = new int[256][];
+        private final float[][] adjustments = new float[256][];
+
+        private KerningTable(FontMetric metric, Encoding encoding) throws IOException
+        {
+            if (metric == null || encoding == null || metric.getKernPairs().isEmpty())
+            {
+                return;
+            }
+            // several codes may have the same name
+            Map<String, List<Integer>> codes = new HashMap<String, List<Integer>>();
+            for (int code = 0; code < 256; code++)
+            {
+                String name = encoding.getName(code);
+                if (name != null)
+                {
+                    List<Integer> list = codes.get(name);
+                    if (list == null)
+                    {
+                        list = new ArrayList<Integer>(1);
+                        codes.put(name, list);
+                    }
+                    list.add(code);
+                }
+            }
+            // sorted by the first and then the second code
+            SortedMap<Integer, Float> pairs = new TreeMap<Integer, Float>();
+            for (KernPair pair : metric.getKernPairs())
+            {
+                List<Integer> firstCodes = codes.get(pair.getFirstKernCharacter());
+                List<Integer> secondCodes = codes.get(pair.getSecondKernCharacter());
+                if (firstCodes != null && secondCodes != null)
+                {
+                    for (Integer first : firstCodes)
+                    {
+                        for (Integer second : secondCodes)
+                        {
+                            pairs.put(first << 8 | second, pair.getX());
+                        }
+                    }
+                }
+            }
+            int[] counts = new int[256];
+            for (Integer key : pairs.keySet())
+            {
+                counts[key >> 8]++;
+            }
+            int[] filled = new int[256];
+            for (Map.Entry<Integer, Float> entry : pairs.entrySet())
+            {
+                int first = entry.getKey() >> 8;
+                if (secondCodes[first] == null)
+                {
+                    secondCodes[first] = new int[counts[first]];
+                    adjustments[first] = new float[counts[first]];
+                }
+                secondCodes[first][filled[first]] = entry.getKey() & 0xff;
+                adjustments[first][filled[first]++] = entry.getValue();
+            }
+        }
+
+        private float get(int first, int second)
+        {
+            int[] seconds = secondCodes[first];
+            if (seconds == null)
+            {
+                return 0;
+            }
+            int index = Arrays.binarySearch(seconds, second);
+            return index >= 0 ? adjustments[first][index] : 0;
+        }
+    }
 
     private float avgFontWidth = 0.0f;
     private float avgFontHeight = 0.0f;
@@ -151,17 +240,123 @@ public abstract class PDSimpleFont extends PDFont
      */
     public float getFontWidth(byte[] c, int offset, int length) throws IOException
     {
-        int code = getCodeFromArray(c, offset, length);
-        Float fontWidth = mFontSizes.get(code);
-        if (fontWidth == null)
+        if (length == 1)
         {
-            fontWidth = getFontWidth(code);
-            if (fontWidth <= 0)
+            return getWidthTable()[c[offset] & 0xff];
+        }
+        return computeFontWidth(getCodeFromArray(c, offset, length));
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The widths are looked up in a table of all 256 codes, so no objects are allocated.
+     */
+    @Override
+    public float getStringWidth(CharSequence text, int start, int end) throws IOException
+    {
+        float[] widths = getWidthTable();
+        float totalWidth = 0;
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (c > 0xff)
             {
-                // TODO should this be in PDType1Font??
-                fontWidth = getFontWidthFromAFMFile(code);
+                if (isSurrogatePair(text, i, end))
+                {
+                    i++;
+                }
+                c = '?';
+            }
+            totalWidth += widths[c];
+        }
+        return totalWidth;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The widths and kerning adjustments are looked up in tables, so no objects are allocated.
+     */
+    @Override
+    public void getStringAdvances(CharSequence text, int start, int end, float[] advances) throws IOException
+    {
+        float[] widths = getWidthTable();
+        KerningTable kerning = getKerningTable();
+        float totalWidth = 0;
+        int previous = -1;
+        for (int i = start; i < end; i++)
+        {
+            int code = text.charAt(i);
+            boolean pair = false;
+            if (code > 0xff)
+            {
+                pair = isSurrogatePair(text, i, end);
+                code = '?';
+            }
+            if (previous >= 0)
+            {
+                totalWidth += kerning.get(previous, code);
+            }
+            totalWidth += widths[code];
+            advances[i - start] = totalWidth;
+            if (pair)
+            {
+                i++;
+                advances[i - start] = totalWidth;
+            }
+            previous = code;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The kerning pairs are taken from the AFM of the font.
+     */
+    @Override
+    public float getKerning(int firstCode, int secondCode) throws IOException
+    {
+        if (firstCode < 0 || firstCode > 0xff || secondCode < 0 || secondCode > 0xff)
+        {
+            return 0;
+        }
+        return getKerningTable().get(firstCode, secondCode);
+    }
+
+    private KerningTable getKerningTable() throws IOException
+    {
+        KerningTable table = kerningTable;
+        if (table == null)
+        {
+            table = new KerningTable(getAFM(), getFontEncoding());
+            kerningTable = table;
+        }
+        return table;
+    }
+
+    private float[] getWidthTable() throws IOException
+    {
+        float[] table = widthTable;
+        if (table == null)
+        {
+            table = new float[256];
+            for (int code = 0; code < table.length; code++)
+            {
+                table[code] = computeFontWidth(code);
             }
-            mFontSizes.put(code, fontWidth);
+            widthTable = table;
+        }
+        return table;
+    }
+
+    private float computeFontWidth(int code) throws IOException
+    {
+        float fontWidth = getFontWidth(code);
+        if (fontWidth <= 0)
+        {
+            // TODO should this be in PDType1Font??
+            fontWidth = getFontWidthFromAFMFile(code);
         }
         return fontWidth;
     }
@@ -16,11 +16,14 @@
  */
 package org.apache.pdfbox.pdmodel.font;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -30,7 +33,6 @@ import java.util.Properties;
 
 import org.apache.fontbox.ttf.CMAPEncodingEntry;
 import org.apache.fontbox.ttf.CMAPTable;
-import org.apache.fontbox.ttf.GlyphData;
 import org.apache.fontbox.ttf.GlyphTable;
 import org.apache.fontbox.ttf.HeaderTable;
 import org.apache.fontbox.ttf.HorizontalHeaderTable;
@@ -40,11 +42,14 @@ import org.apache.fontbox.ttf.NamingTable;
 import org.apache.fontbox.ttf.OS2WindowsMetricsTable;
 import org.apache.fontbox.ttf.PostScriptTable;
 import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TTFSubFont;
 import org.apache.fontbox.ttf.TrueTypeFont;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.encoding.Encoding;
 import org.apache.pdfbox.encoding.WinAnsiEncoding;
+import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.PDStream;
@@ -68,6 +73,13 @@ public class PDTrueTypeFont extends PDSimpleFont
     private static Properties externalFonts = new Properties();
     private static Map<String, TrueTypeFont> loadedExternalFonts = new HashMap<String, TrueTypeFont>();
 
+    // the complete font program, its name and the codes shown with this font,
+    // only set if the embedded font is replaced by a subset when the document is saved
+    private TrueTypeFont subsetSource;
+    private String subsetBaseFont;
+    private PDStream subsetFontFile;
+    private BitSet subsetCodes;
+
     static
     {
         try
@@ -125,7 +137,60 @@ public class PDTrueTypeFont extends PDSimpleFont
      */
     public static PDTrueTypeFont loadTTF(PDDocument doc, File file) throws IOException
     {
-        return loadTTF(doc, new FileInputStream(file));
+        return loadTTF(doc, file, new WinAnsiEncoding(), false);
+    }
+
+    /**
+     * This will load a TTF to be embedded into a document. The font file is parsed only once
+     * and shared with other documents through the {@link TrueTypeFontCache}.
+     * 
+     * @param doc The PDF document that will hold the embedded font.
+     * @param file a ttf file.
+     * @param enc The font encoding.
+     * @param subset true to embed a subset of the font, see
+     * {@link #loadTTF(PDDocument, InputStream, Encoding, boolean)}.
+     * @return a PDTrueTypeFont instance.
+     * @throws IOException If there is an error loading the data.
+     */
+    public static PDTrueTypeFont loadTTF(PDDocument doc, File file, Encoding enc, boolean subset)
+        throws IOException
+    {
+        TrueTypeFontCache.CachedFont cached = TrueTypeFontCache.getInstance().get(file);
+        PDStream fontStream = new PDStream(doc);
+        COSStream stream = fontStream.getStream();
+        byte[] program = cached.getCompressedProgram(doc.getCompression());
+        OutputStream out;
+        InputStream in;
+        if (program != null)
+        {
+            // the program was already compressed with the settings of the document
+            stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+            out = stream.createFilteredStream();
+            in = new ByteArrayInputStream(program);
+        }
+        else
+        {
+            // the program is compressed with the settings of the document when it is saved
+            out = stream.createUnfilteredStream();
+            in = cached.getFont().getOriginalData();
+            fontStream.addCompression();
+        }
+        try
+        {
+            IOUtils.copy(in, out);
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+        stream.setInt(COSName.LENGTH1, (int) cached.getLength());
+        PDTrueTypeFont retval = createFont(fontStream, enc, cached.getFont());
+        if (subset)
+        {
+            retval.prepareSubset(doc, fontStream, cached.getFont());
+        }
+        return retval;
     }
 
     /**
@@ -151,13 +216,134 @@ public class PDTrueTypeFont extends PDSimpleFont
      * @throws IOException If there is an error loading the data.
      */
     public static PDTrueTypeFont loadTTF(PDDocument doc, InputStream stream, Encoding enc) throws IOException
+    {
+        return loadTTF(doc, stream, enc, false);
+    }
+
+    /**
+     * This will load a TTF to be embedded into a document. A subset font only embeds the glyphs
+     * of the characters shown with {@link #addToSubset(byte[])}, which is called by
+     * PDPageContentStream.drawString. The subset is created when the document is saved.
+     * 
+     * @param doc The PDF document that will hold the embedded font.
+     * @param stream a ttf input stream.
+     * @param enc The font encoding.
+     * @param subset true to embed a subset of the font.
+     * @return a PDTrueTypeFont instance.
+     * @throws IOException If there is an error loading the data.
+     */
+    public static PDTrueTypeFont loadTTF(PDDocument doc, InputStream stream, Encoding enc, boolean subset)
+        throws IOException
     {
         PDStream fontStream = new PDStream(doc, stream, false);
         fontStream.getStream().setInt(COSName.LENGTH1, fontStream.getByteArray().length);
         fontStream.addCompression();
         // only support winansi encoding right now, should really
         // just use Identity-H with unicode mapping
-        return PDTrueTypeFont.loadTTF(fontStream, enc);
+        TrueTypeFont ttf = parseFontFile(fontStream);
+        try
+        {
+            PDTrueTypeFont retval = createFont(fontStream, enc, ttf);
+            if (subset)
+            {
+                retval.prepareSubset(doc, fontStream, ttf);
+                ttf = null;
+            }
+            return retval;
+        }
+        finally
+        {
+            if (ttf != null)
+            {
+                ttf.close();
+            }
+        }
+    }
+
+    /**
+     * Tells if the embedded font program is replaced by a subset when the document is saved.
+     * 
+     * @return true if the font was loaded for subsetting
+     */
+    public boolean willBeSubset()
+    {
+        return subsetSource != null;
+    }
+
+    /**
+     * Records the character codes of a string shown with this font, so their glyphs are part
+     * of the subset. Nothing happens if the font isn't subset.
+     * 
+     * @param codes The character codes.
+     */
+    public synchronized void addToSubset(byte[] codes)
+    {
+        if (subsetCodes == null)
+        {
+            return;
+        }
+        for (int i = 0; i < codes.length; i++)
+        {
+            subsetCodes.set(codes[i] & 0xff);
+        }
+    }
+
+    /**
+     * Replaces the embedded font program with a subset of the glyphs of all characters shown so
+     * far and prefixes the font name with a tag. The subset is always created from the complete
+     * font, so this may be called again if more characters are shown afterwards.
+     * 
+     * @throws IOException If there is an error creating the subset.
+     */
+    public synchronized void subset() throws IOException
+    {
+        if (subsetSource == null)
+        {
+            return;
+        }
+        // the codes are mapped to unicode like the widths in loadDescriptorDictionary
+        Map<Integer, String> codeToName = getFontEncoding().getCodeToNameMap();
+        Encoding glyphlist = WinAnsiEncoding.INSTANCE;
+        TTFSubFont subFont = new TTFSubFont(subsetSource, null);
+        for (int code = subsetCodes.nextSetBit(0); code >= 0; code = subsetCodes.nextSetBit(code + 1))
+        {
+            String name = codeToName.get(code);
+            String c = name == null ? null : glyphlist.getCharacter(name);
+            if (c != null && c.length() > 0)
+            {
+                subFont.addCharCode(c.codePointAt(0));
+            }
+        }
+        ByteArrayOutputStream subsetData = new ByteArrayOutputStream();
+        subFont.writeToStream(subsetData);
+
+        OutputStream out = subsetFontFile.getStream().createUnfilteredStream();
+        try
+        {
+            subsetData.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        subsetFontFile.getStream().setInt(COSName.LENGTH1, subsetData.size());
+
+        String name = getSubsetTag() + "+" + subsetBaseFont;
+        setBaseFont(name);
+        getFontDescriptor().setFontName(name);
+    }
+
+    // six uppercase letters derived from the font and the subset, see PDF 32000 9.6.4
+    private String getSubsetTag()
+    {
+        long hash = (subsetBaseFont.hashCode() * 31L + subsetCodes.hashCode()) & 0xffffffffL;
+        char[] tag = new char[6];
+        for (int i = 0; i < tag.length; i++)
+        {
+            tag[i] = (char) ('A' + hash % 26);
+            hash /= 26;
+        }
+        return new String(tag);
     }
 
     /**
@@ -170,229 +356,242 @@ public class PDTrueTypeFont extends PDSimpleFont
      */
     public static PDTrueTypeFont loadTTF(PDStream fontStream, Encoding enc) throws IOException
     {
-        PDTrueTypeFont retval = new PDTrueTypeFont();
-        retval.setFontEncoding(enc);
-        retval.setEncoding(enc.getCOSObject());
+        TrueTypeFont ttf = parseFontFile(fontStream);
+        try
+        {
+            return createFont(fontStream, enc, ttf);
+        }
+        finally
+        {
+            ttf.close();
+        }
+    }
 
-        PDFontDescriptorDictionary fd = new PDFontDescriptorDictionary();
-        retval.setFontDescriptor(fd);
-        fd.setFontFile2(fontStream);
+    private static TrueTypeFont parseFontFile(PDStream fontStream) throws IOException
+    {
         // As the stream was close within the PDStream constructor, we have to recreate it
         InputStream stream = fontStream.createInputStream();
         try
         {
-            retval.loadDescriptorDictionary(fd, stream);
+            return new TTFParser().parseTTF(stream);
         }
         finally
         {
             stream.close();
         }
+    }
+
+    private static PDTrueTypeFont createFont(PDStream fontStream, Encoding enc, TrueTypeFont ttf) throws IOException
+    {
+        PDTrueTypeFont retval = new PDTrueTypeFont();
+        retval.setFontEncoding(enc);
+        retval.setEncoding(enc.getCOSObject());
+
+        PDFontDescriptorDictionary fd = new PDFontDescriptorDictionary();
+        retval.setFontDescriptor(fd);
+        fd.setFontFile2(fontStream);
+        retval.loadDescriptorDictionary(fd, ttf);
         return retval;
     }
 
-    private void loadDescriptorDictionary(PDFontDescriptorDictionary fd, InputStream ttfData) throws IOException
+    private void prepareSubset(PDDocument doc, PDStream fontStream, TrueTypeFont ttf)
     {
-        TrueTypeFont ttf = null;
-        try
-        {
-            TTFParser parser = new TTFParser();
-            ttf = parser.parseTTF(ttfData);
-            NamingTable naming = ttf.getNaming();
-            List<NameRecord> records = naming.getNameRecords();
-            for (int i = 0; i < records.size(); i++)
-            {
-                NameRecord nr = records.get(i);
-                if (nr.getNameId() == NameRecord.NAME_POSTSCRIPT_NAME)
-                {
-                    setBaseFont(nr.getString());
-                    fd.setFontName(nr.getString());
-                }
-                else if (nr.getNameId() == NameRecord.NAME_FONT_FAMILY_NAME)
-                {
-                    fd.setFontFamily(nr.getString());
-                }
-            }
+        subsetSource = ttf;
+        subsetBaseFont = getBaseFont();
+        subsetFontFile = fontStream;
+        subsetCodes = new BitSet(256);
+        doc.addFontToSubset(this);
+    }
 
-            OS2WindowsMetricsTable os2 = ttf.getOS2Windows();
-            boolean isSymbolic = false;
-            switch (os2.getFamilyClass())
-            {
-            case OS2WindowsMetricsTable.FAMILY_CLASS_SYMBOLIC:
-                isSymbolic = true;
-                break;
-            case OS2WindowsMetricsTable.FAMILY_CLASS_SCRIPTS:
-                fd.setScript(true);
-                break;
-            case OS2WindowsMetricsTable.FAMILY_CLASS_CLAREDON_SERIFS:
-            case OS2WindowsMetricsTable.FAMILY_CLASS_FREEFORM_SERIFS:
-            case OS2WindowsMetricsTable.FAMILY_CLASS_MODERN_SERIFS:
-            case OS2WindowsMetricsTable.FAMILY_CLASS_OLDSTYLE_SERIFS:
-            case OS2WindowsMetricsTable.FAMILY_CLASS_SLAB_SERIFS:
-                fd.setSerif(true);
-                break;
-            default:
-                // do nothing
-            }
-            switch (os2.getWidthClass())
+    private void loadDescriptorDictionary(PDFontDescriptorDictionary fd, TrueTypeFont ttf) throws IOException
+    {
+        NamingTable naming = ttf.getNaming();
+        List<NameRecord> records = naming.getNameRecords();
+        for (int i = 0; i < records.size(); i++)
+        {
+            NameRecord nr = records.get(i);
+            if (nr.getNameId() == NameRecord.NAME_POSTSCRIPT_NAME)
             {
-            case OS2WindowsMetricsTable.WIDTH_CLASS_ULTRA_CONDENSED:
-                fd.setFontStretch("UltraCondensed");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_EXTRA_CONDENSED:
-                fd.setFontStretch("ExtraCondensed");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_CONDENSED:
-                fd.setFontStretch("Condensed");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_SEMI_CONDENSED:
-                fd.setFontStretch("SemiCondensed");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_MEDIUM:
-                fd.setFontStretch("Normal");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_SEMI_EXPANDED:
-                fd.setFontStretch("SemiExpanded");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_EXPANDED:
-                fd.setFontStretch("Expanded");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_EXTRA_EXPANDED:
-                fd.setFontStretch("ExtraExpanded");
-                break;
-            case OS2WindowsMetricsTable.WIDTH_CLASS_ULTRA_EXPANDED:
-                fd.setFontStretch("UltraExpanded");
-                break;
-            default:
-                // do nothing
+                setBaseFont(nr.getString());
+                fd.setFontName(nr.getString());
             }
-            fd.setFontWeight(os2.getWeightClass());
-            fd.setSymbolic(isSymbolic);
-            fd.setNonSymbolic(!isSymbolic);
-
-            // todo retval.setItalic
-            // todo retval.setAllCap
-            // todo retval.setSmallCap
-            // todo retval.setForceBold
-
-            HeaderTable header = ttf.getHeader();
-            PDRectangle rect = new PDRectangle();
-            float scaling = 1000f / header.getUnitsPerEm();
-            rect.setLowerLeftX(header.getXMin() * scaling);
-            rect.setLowerLeftY(header.getYMin() * scaling);
-            rect.setUpperRightX(header.getXMax() * scaling);
-            rect.setUpperRightY(header.getYMax() * scaling);
-            fd.setFontBoundingBox(rect);
-
-            HorizontalHeaderTable hHeader = ttf.getHorizontalHeader();
-            fd.setAscent(hHeader.getAscender() * scaling);
-            fd.setDescent(hHeader.getDescender() * scaling);
-
-            GlyphTable glyphTable = ttf.getGlyph();
-            GlyphData[] glyphs = glyphTable.getGlyphs();
-
-            PostScriptTable ps = ttf.getPostScript();
-            fd.setFixedPitch(ps.getIsFixedPitch() > 0);
-            fd.setItalicAngle(ps.getItalicAngle());
-
-            String[] names = ps.getGlyphNames();
-
-            if (names != null)
+            else if (nr.getNameId() == NameRecord.NAME_FONT_FAMILY_NAME)
             {
-                for (int i = 0; i < names.length; i++)
-                {
-                    // if we have a capital H then use that, otherwise use the
-                    // tallest letter
-                    if (names[i].equals("H"))
-                    {
-                        fd.setCapHeight(glyphs[i].getBoundingBox().getUpperRightY() / scaling);
-                    }
-                    if (names[i].equals("x"))
-                    {
-                        fd.setXHeight(glyphs[i].getBoundingBox().getUpperRightY() / scaling);
-                    }
-                }
+                fd.setFontFamily(nr.getString());
             }
+        }
+
+        OS2WindowsMetricsTable os2 = ttf.getOS2Windows();
+        boolean isSymbolic = false;
+        switch (os2.getFamilyClass())
+        {
+        case OS2WindowsMetricsTable.FAMILY_CLASS_SYMBOLIC:
+            isSymbolic = true;
+            break;
+        case OS2WindowsMetricsTable.FAMILY_CLASS_SCRIPTS:
+            fd.setScript(true);
+            break;
+        case OS2WindowsMetricsTable.FAMILY_CLASS_CLAREDON_SERIFS:
+        case OS2WindowsMetricsTable.FAMILY_CLASS_FREEFORM_SERIFS:
+        case OS2WindowsMetricsTable.FAMILY_CLASS_MODERN_SERIFS:
+        case OS2WindowsMetricsTable.FAMILY_CLASS_OLDSTYLE_SERIFS:
+        case OS2WindowsMetricsTable.FAMILY_CLASS_SLAB_SERIFS:
+            fd.setSerif(true);
+            break;
+        default:
+            // do nothing
+        }
+        switch (os2.getWidthClass())
+        {
+        case OS2WindowsMetricsTable.WIDTH_CLASS_ULTRA_CONDENSED:
+            fd.setFontStretch("UltraCondensed");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_EXTRA_CONDENSED:
+            fd.setFontStretch("ExtraCondensed");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_CONDENSED:
+            fd.setFontStretch("Condensed");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_SEMI_CONDENSED:
+            fd.setFontStretch("SemiCondensed");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_MEDIUM:
+            fd.setFontStretch("Normal");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_SEMI_EXPANDED:
+            fd.setFontStretch("SemiExpanded");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_EXPANDED:
+            fd.setFontStretch("Expanded");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_EXTRA_EXPANDED:
+            fd.setFontStretch("ExtraExpanded");
+            break;
+        case OS2WindowsMetricsTable.WIDTH_CLASS_ULTRA_EXPANDED:
+            fd.setFontStretch("UltraExpanded");
+            break;
+        default:
+            // do nothing
+        }
+        fd.setFontWeight(os2.getWeightClass());
+        fd.setSymbolic(isSymbolic);
+        fd.setNonSymbolic(!isSymbolic);
+
+        // todo retval.setItalic
+        // todo retval.setAllCap
+        // todo retval.setSmallCap
+        // todo retval.setForceBold
+
+        HeaderTable header = ttf.getHeader();
+        PDRectangle rect = new PDRectangle();
+        float scaling = 1000f / header.getUnitsPerEm();
+        rect.setLowerLeftX(header.getXMin() * scaling);
+        rect.setLowerLeftY(header.getYMin() * scaling);
+        rect.setUpperRightX(header.getXMax() * scaling);
+        rect.setUpperRightY(header.getYMax() * scaling);
+        fd.setFontBoundingBox(rect);
+
+        HorizontalHeaderTable hHeader = ttf.getHorizontalHeader();
+        fd.setAscent(hHeader.getAscender() * scaling);
+        fd.setDescent(hHeader.getDescender() * scaling);
+
+        GlyphTable glyphTable = ttf.getGlyph();
 
-            // hmm there does not seem to be a clear definition for StemV,
-            // this is close enough and I am told it doesn't usually get used.
-            fd.setStemV((fd.getFontBoundingBox().getWidth() * .13f));
+        PostScriptTable ps = ttf.getPostScript();
+        fd.setFixedPitch(ps.getIsFixedPitch() > 0);
+        fd.setItalicAngle(ps.getItalicAngle());
 
-            CMAPTable cmapTable = ttf.getCMAP();
-            CMAPEncodingEntry[] cmaps = cmapTable.getCmaps();
-            CMAPEncodingEntry uniMap = null;
+        String[] names = ps.getGlyphNames();
 
-            for (int i = 0; i < cmaps.length; i++)
+        if (names != null)
+        {
+            for (int i = 0; i < names.length; i++)
             {
-                if (cmaps[i].getPlatformId() == CMAPTable.PLATFORM_WINDOWS)
+                // if we have a capital H then use that, otherwise use the
+                // tallest letter
+                if (names[i].equals("H"))
+                {
+                    fd.setCapHeight(glyphTable.getGlyph(i).getBoundingBox().getUpperRightY() / scaling);
+                }
+                if (names[i].equals("x"))
                 {
-                    int platformEncoding = cmaps[i].getPlatformEncodingId();
-                    if (CMAPTable.ENCODING_UNICODE == platformEncoding)
-                    {
-                        uniMap = cmaps[i];
-                        break;
-                    }
+                    fd.setXHeight(glyphTable.getGlyph(i).getBoundingBox().getUpperRightY() / scaling);
                 }
             }
+        }
 
-            Map<Integer, String> codeToName = this.getFontEncoding().getCodeToNameMap();
-
-            int firstChar = Collections.min(codeToName.keySet());
-            int lastChar = Collections.max(codeToName.keySet());
-
-            HorizontalMetricsTable hMet = ttf.getHorizontalMetrics();
-            int[] widthValues = hMet.getAdvanceWidth();
-            // some monospaced fonts provide only one value for the width
-            // instead of an array containing the same value for every glyphid
-            boolean isMonospaced = fd.isFixedPitch();
-            int nWidths = lastChar - firstChar + 1;
-            List<Integer> widths = new ArrayList<Integer>(nWidths);
-            // use the first width as default
-            // proportional fonts -> width of the .notdef character
-            // monospaced-fonts -> the first width
-            int defaultWidth = Math.round(widthValues[0] * scaling);
-            for (int i = 0; i < nWidths; i++)
-            {
-                widths.add(defaultWidth);
-            }
-            // Encoding singleton to have acces to the chglyph name to
-            // unicode cpoint point mapping of Adobe's glyphlist.txt
-            Encoding glyphlist = WinAnsiEncoding.INSTANCE;
-
-            // A character code is mapped to a glyph name via the provided
-            // font encoding. Afterwards, the glyph name is translated to a
-            // glyph ID.
-            // For details, see PDFReference16.pdf, Section 5.5.5, p.401
-            //
-            for (Entry<Integer, String> e : codeToName.entrySet())
+        // hmm there does not seem to be a clear definition for StemV,
+        // this is close enough and I am told it doesn't usually get used.
+        fd.setStemV((fd.getFontBoundingBox().getWidth() * .13f));
+
+        CMAPTable cmapTable = ttf.getCMAP();
+        CMAPEncodingEntry[] cmaps = cmapTable.getCmaps();
+        CMAPEncodingEntry uniMap = null;
+
+        for (int i = 0; i < cmaps.length; i++)
+        {
+            if (cmaps[i].getPlatformId() == CMAPTable.PLATFORM_WINDOWS)
             {
-                String name = e.getValue();
-                // pdf code to unicode by glyph list.
-                String c = glyphlist.getCharacter(name);
-                int charCode = c.codePointAt(0);
-                int gid = uniMap.getGlyphId(charCode);
-                if (gid != 0)
+                int platformEncoding = cmaps[i].getPlatformEncodingId();
+                if (CMAPTable.ENCODING_UNICODE == platformEncoding)
                 {
-                    if (isMonospaced)
-                    {
-                        widths.set(e.getKey().intValue() - firstChar, defaultWidth);
-                    }
-                    else
-                    {
-                        widths.set(e.getKey().intValue() - firstChar, Math.round(widthValues[gid] * scaling));
-                    }
+                    uniMap = cmaps[i];
+                    break;
                 }
             }
-            setWidths(widths);
-            setFirstChar(firstChar);
-            setLastChar(lastChar);
         }
-        finally
+
+        Map<Integer, String> codeToName = this.getFontEncoding().getCodeToNameMap();
+
+        int firstChar = Collections.min(codeToName.keySet());
+        int lastChar = Collections.max(codeToName.keySet());
+
+        HorizontalMetricsTable hMet = ttf.getHorizontalMetrics();
+        int[] widthValues = hMet.getAdvanceWidth();
+        // some monospaced fonts provide only one value for the width
+        // instead of an array containing the same value for every glyphid
+        boolean isMonospaced = fd.isFixedPitch();
+        int nWidths = lastChar - firstChar + 1;
+        List<Integer> widths = new ArrayList<Integer>(nWidths);
+        // use the first width as default
+        // proportional fonts -> width of the .notdef character
+        // monospaced-fonts -> the first width
+        int defaultWidth = Math.round(widthValues[0] * scaling);
+        for (int i = 0; i < nWidths; i++)
         {
-            if (ttf != null)
+            widths.add(defaultWidth);
+        }
+        // Encoding singleton to have acces to the chglyph name to
+        // unicode cpoint point mapping of Adobe's glyphlist.txt
+        Encoding glyphlist = WinAnsiEncoding.INSTANCE;
+
+        // A character code is mapped to a glyph name via the provided
+        // font encoding. Afterwards, the glyph name is translated to a
+        // glyph ID.
+        // For details, see PDFReference16.pdf, Section 5.5.5, p.401
+        //
+        for (Entry<Integer, String> e : codeToName.entrySet())
+        {
+            String name = e.getValue();
+            // pdf code to unicode by glyph list.
+            String c = glyphlist.getCharacter(name);
+            int charCode = c.codePointAt(0);
+            int gid = uniMap.getGlyphId(charCode);
+            if (gid != 0)
             {
-                ttf.close();
+                if (isMonospaced)
+                {
+                    widths.set(e.getKey().intValue() - firstChar, defaultWidth);
+                }
+                else
+                {
+                    widths.set(e.getKey().intValue() - firstChar, Math.round(widthValues[gid] * scaling));
+                }
             }
         }
+        setWidths(widths);
+        setFirstChar(firstChar);
+        setLastChar(lastChar);
     }
 
     /**
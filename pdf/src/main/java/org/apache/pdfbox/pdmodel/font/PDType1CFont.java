@@ -171,13 +171,14 @@ public class PDType1CFont extends PDSimpleFont
     /**
      * {@inheritDoc}
      */
-    public float getStringWidth(String string) throws IOException
+    @Override
+    public float getStringWidth(CharSequence text, int start, int end) throws IOException
     {
         float width = 0;
 
-        for (int i = 0; i < string.length(); i++)
+        for (int i = start; i < end; i++)
         {
-            String character = string.substring(i, i + 1);
+            String character = String.valueOf(text.charAt(i));
 
             Integer code = getCode(character);
             if (code == null)
@@ -193,6 +194,30 @@ public class PDType1CFont extends PDSimpleFont
         return width;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The characters are mapped with the encoding of the embedded font, characters without a
+     * code don't advance. There is no kerning information.
+     */
+    @Override
+    public void getStringAdvances(CharSequence text, int start, int end, float[] advances) throws IOException
+    {
+        byte[] data = new byte[1];
+        float width = 0;
+
+        for (int i = start; i < end; i++)
+        {
+            Integer code = getCode(String.valueOf(text.charAt(i)));
+            if (code != null)
+            {
+                data[0] = (byte) code.intValue();
+                width += getFontWidth(data, 0, 1);
+            }
+            advances[i - start] = width;
+        }
+    }
+
     private Integer getCode(String character)
     {
         return characterToCode.get(character);
@@ -23,11 +23,14 @@ import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.fontbox.afm.AFMCompiler;
 import org.apache.fontbox.afm.AFMParser;
 import org.apache.fontbox.afm.FontMetric;
 import org.apache.fontbox.type1.Type1Font;
@@ -141,47 +144,82 @@ public class PDType1Font extends PDSimpleFont
     }
 
     /**
-     * The static map of the default Adobe font metrics.
+     * The names of the fonts with default Adobe font metrics.
      */
-    private static final Map<String, FontMetric> afmObjects = Collections.unmodifiableMap(getAdobeFontMetrics());
+    private static final Set<String> AFM_NAMES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "Courier-Bold", "Courier-BoldOblique", "Courier", "Courier-Oblique", "Helvetica", "Helvetica-Bold",
+            "Helvetica-BoldOblique", "Helvetica-Oblique", "Symbol", "Times-Bold", "Times-BoldItalic",
+            "Times-Italic", "Times-Roman", "ZapfDingbats")));
+
+    /**
+     * The default Adobe font metrics which have been used so far, they are loaded on first use.
+     * Fonts whose metrics couldn't be loaded are mapped to null, so they aren't loaded again.
+     */
+    private static final Map<String, FontMetric> afmObjects = new HashMap<String, FontMetric>();
 
     private FontMetric afm = null;
 
-    private static Map<String, FontMetric> getAdobeFontMetrics()
+    private static synchronized FontMetric getAdobeFontMetric(String name)
     {
-        Map<String, FontMetric> metrics = new HashMap<String, FontMetric>();
-        addAdobeFontMetric(metrics, "Courier-Bold");
-        addAdobeFontMetric(metrics, "Courier-BoldOblique");
-        addAdobeFontMetric(metrics, "Courier");
-        addAdobeFontMetric(metrics, "Courier-Oblique");
-        addAdobeFontMetric(metrics, "Helvetica");
-        addAdobeFontMetric(metrics, "Helvetica-Bold");
-        addAdobeFontMetric(metrics, "Helvetica-BoldOblique");
-        addAdobeFontMetric(metrics, "Helvetica-Oblique");
-        addAdobeFontMetric(metrics, "Symbol");
-        addAdobeFontMetric(metrics, "Times-Bold");
-        addAdobeFontMetric(metrics, "Times-BoldItalic");
-        addAdobeFontMetric(metrics, "Times-Italic");
-        addAdobeFontMetric(metrics, "Times-Roman");
-        addAdobeFontMetric(metrics, "ZapfDingbats");
-        return metrics;
+        if (!AFM_NAMES.contains(name))
+        {
+            return null;
+        }
+        if (afmObjects.containsKey(name))
+        {
+            return afmObjects.get(name);
+        }
+        // the compiled metrics are generated by the build
+        InputStream compiledStream = null;
+        try
+        {
+            compiledStream = ResourceLoader.loadResource(resourceRootAFM + name + AFMCompiler.EXTENSION);
+        }
+        catch (IOException e)
+        {
+            LOG.warn("Can't open the compiled afm file of " + name, e);
+        }
+        FontMetric metric = loadAdobeFontMetric(name, compiledStream);
+        afmObjects.put(name, metric);
+        return metric;
     }
 
     private static final String resourceRootAFM = "org/apache/pdfbox/resources/afm/";
 
-    private static void addAdobeFontMetric(Map<String, FontMetric> metrics, String name)
+    /**
+     * Loads the default Adobe font metrics of a font. The compiled form is preferred, the AFM
+     * text is parsed if it is missing or can't be read, e.g. as it is left from an older build.
+     *
+     * @param name The name of the font.
+     * @param compiledStream The compiled metrics or null, the stream is closed.
+     * @return the metrics or null if they can't be loaded.
+     */
+    static FontMetric loadAdobeFontMetric(String name, InputStream compiledStream)
     {
         try
         {
-            String resource = resourceRootAFM + name + ".afm";
-            InputStream afmStream = ResourceLoader.loadResource(resource);
+            if (compiledStream != null)
+            {
+                try
+                {
+                    return AFMCompiler.read(compiledStream);
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Can't read the compiled afm file of " + name + ", parsing the afm file", e);
+                }
+                finally
+                {
+                    compiledStream.close();
+                }
+            }
+            InputStream afmStream = ResourceLoader.loadResource(resourceRootAFM + name + ".afm");
             if (afmStream != null)
             {
                 try
                 {
                     AFMParser parser = new AFMParser(afmStream);
-                    FontMetric metric = parser.parse(); 
-                    metrics.put(name, metric);
+                    return parser.parse();
                 }
                 finally
                 {
@@ -193,6 +231,7 @@ public class PDType1Font extends PDSimpleFont
         {
             LOG.error("Something went wrong when reading the adobe afm files", e);
         }
+        return null;
     }
 
     /**
@@ -289,7 +328,7 @@ public class PDType1Font extends PDSimpleFont
             }
             if (name != null)
             {
-                afm = afmObjects.get(name);
+                afm = getAdobeFontMetric(name);
             }
         }
         return afm;
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.fontbox.ttf.MappedTTFDataStream;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.filter.FlateFilter;
+import org.apache.pdfbox.io.IOUtils;
+
+/**
+ * A process wide cache of parsed TrueType font files, which are shared by all documents
+ * embedding them with {@link PDTrueTypeFont#loadTTF(org.apache.pdfbox.pdmodel.PDDocument, File)}.
+ *
+ * The fonts are parsed from memory mapped files. The font program is compressed once for every
+ * compression setting of the documents embedding it, so a document embedding a cached font only
+ * copies the compressed program and creates its font dictionaries. Entries are keyed by the
+ * canonical path of the file and are parsed again when its length or modification time changes.
+ * The least recently used fonts are dropped when the cache is full.
+ *
+ * The cached fonts are shared between threads and must not be changed or closed.
+ */
+public final class TrueTypeFontCache
+{
+    /**
+     * The number of fonts kept by default.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 16;
+
+    private static final TrueTypeFontCache INSTANCE = new TrueTypeFontCache();
+
+    /**
+     * A parsed font file.
+     */
+    static final class CachedFont
+    {
+        private final long length;
+        private final long lastModified;
+        private final TrueTypeFont font;
+        // the compressed font programs, null if the entry isn't shared by the cache
+        private final Map<FlateCompression, byte[]> programs;
+        private int compressions = 0;
+
+        private CachedFont(long length, long lastModified, TrueTypeFont font, boolean shared)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.font = font;
+            this.programs = shared ? new HashMap<FlateCompression, byte[]>() : null;
+        }
+
+        /**
+         * @return the parsed font, which must not be closed
+         */
+        TrueTypeFont getFont()
+        {
+            return font;
+        }
+
+        /**
+         * @return the length of the font file
+         */
+        long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Gets the font program compressed with the given settings, compressing it on the
+         * first call for these settings.
+         *
+         * @param compression The compression settings.
+         * @return the flate encoded font program, which must not be changed, or null if the
+         *         entry isn't kept by the cache and the program isn't worth compressing ahead.
+         * @throws IOException If the program can't be compressed.
+         */
+        synchronized byte[] getCompressedProgram(FlateCompression compression) throws IOException
+        {
+            if (programs == null)
+            {
+                return null;
+            }
+            byte[] program = programs.get(compression);
+            if (program == null)
+            {
+                ByteArrayOutputStream result = new ByteArrayOutputStream((int) (length / 2));
+                OutputStream out = FlateFilter.createEncoderStream(result, compression);
+                InputStream in = font.getOriginalData();
+                try
+                {
+                    IOUtils.copy(in, out);
+                }
+                finally
+                {
+                    in.close();
+                    out.close();
+                }
+                program = result.toByteArray();
+                programs.put(compression, program);
+                compressions++;
+            }
+            return program;
+        }
+
+        /**
+         * @return the number of times the font program was compressed
+         */
+        synchronized int getCompressionCount()
+        {
+            return compressions;
+        }
+    }
+
+    private final LinkedHashMap<String, CachedFont> fonts =
+            new LinkedHashMap<String, CachedFont>(16, 0.75f, true);
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private TrueTypeFontCache()
+    {
+    }
+
+    /**
+     * @return the cache used by all documents
+     */
+    public static TrueTypeFontCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the number of fonts kept in the cache, 0 disables caching.
+     *
+     * @param size The maximum number of cached fonts.
+     */
+    public synchronized void setMaximumSize(int size)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("invalid cache size " + size);
+        }
+        maximumSize = size;
+        trim();
+    }
+
+    /**
+     * @return the maximum number of cached fonts
+     */
+    public synchronized int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of cached fonts
+     */
+    public synchronized int size()
+    {
+        return fonts.size();
+    }
+
+    /**
+     * Drops all fonts. Documents which use them aren't affected.
+     */
+    public synchronized void clear()
+    {
+        fonts.clear();
+    }
+
+    /**
+     * Gets the parsed font of a file, parsing it if it isn't cached or has changed.
+     *
+     * @param file The font file.
+     * @return the shared font, which must not be changed or closed.
+     * @throws IOException If the file can't be parsed.
+     */
+    public TrueTypeFont getFont(File file) throws IOException
+    {
+        return get(file).getFont();
+    }
+
+    /**
+     * Gets the cache entry of a font file, parsing it if it isn't cached or has changed.
+     *
+     * @param file The font file.
+     * @return the cache entry.
+     * @throws IOException If the file can't be parsed.
+     */
+    CachedFont get(File file) throws IOException
+    {
+        String key = file.getCanonicalPath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        boolean shared;
+        synchronized (this)
+        {
+            CachedFont cached = fonts.get(key);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified)
+            {
+                return cached;
+            }
+            shared = maximumSize > 0;
+        }
+        // parsed without holding the lock, another thread may parse the same file meanwhile
+        CachedFont parsed = new CachedFont(length, lastModified,
+                new TTFParser().parseTTF(new MappedTTFDataStream(file)), shared);
+        synchronized (this)
+        {
+            CachedFont cached = fonts.get(key);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified)
+            {
+                return cached;
+            }
+            if (maximumSize > 0)
+            {
+                fonts.put(key, parsed);
+                trim();
+            }
+        }
+        return parsed;
+    }
+
+    private void trim()
+    {
+        // evicted fonts aren't closed as documents may still use them
+        Iterator<CachedFont> iterator = fonts.values().iterator();
+        while (fonts.size() > maximumSize && iterator.hasNext())
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.predictor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+
+/**
+ * An output stream which applies PNG prediction to rows of image samples, as written for a
+ * Flate or LZW stream with predictor 15. Every row is filtered with the PNG filter that gives
+ * the smallest sum of absolute differences, and written after the byte naming the filter.
+ *
+ * All five filters are evaluated in a single pass over the row, and the rows are kept in
+ * buffers allocated once, so the stream doesn't allocate while writing.
+ *
+ * @see <a href="http://www.w3.org/TR/PNG-Filters.html">PNG Filters</a>
+ */
+public class PNGPredictorOutputStream extends FilterOutputStream
+{
+    /**
+     * The predictor value of adaptive PNG prediction.
+     */
+    public static final int PREDICTOR_OPTIMUM = 15;
+
+    private static final int NONE = 0;
+    private static final int SUB = 1;
+    private static final int UP = 2;
+    private static final int AVERAGE = 3;
+    private static final int PAETH = 4;
+
+    private final int colors;
+    private final int bitsPerComponent;
+    private final int columns;
+    private final int bytesPerPixel;
+    private final int rowLength;
+
+    private byte[] row;
+    private byte[] previousRow;
+    // the filter byte followed by the filtered row
+    private final byte[] filtered;
+    private int rowPosition = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to write the predicted rows to.
+     * @param colors The number of color components of a sample.
+     * @param bitsPerComponent The number of bits of a color component.
+     * @param columns The number of samples of a row.
+     *
+     * @throws IllegalArgumentException If a parameter isn't positive.
+     */
+    public PNGPredictorOutputStream(OutputStream out, int colors, int bitsPerComponent, int columns)
+    {
+        super(out);
+        if (colors <= 0 || bitsPerComponent <= 0 || columns <= 0)
+        {
+            throw new IllegalArgumentException("Invalid predictor parameters: colors " + colors
+                    + ", bits per component " + bitsPerComponent + ", columns " + columns);
+        }
+        this.colors = colors;
+        this.bitsPerComponent = bitsPerComponent;
+        this.columns = columns;
+        bytesPerPixel = (colors * bitsPerComponent + 7) / 8;
+        rowLength = (columns * colors * bitsPerComponent + 7) / 8;
+        row = new byte[rowLength];
+        previousRow = new byte[rowLength];
+        filtered = new byte[rowLength + 1];
+    }
+
+    /**
+     * Creates the decode parameters of the stream this predictor writes.
+     *
+     * @return The decode parameters.
+     */
+    public COSDictionary createDecodeParms()
+    {
+        COSDictionary parms = new COSDictionary();
+        parms.setInt(COSName.PREDICTOR, PREDICTOR_OPTIMUM);
+        parms.setInt(COSName.COLORS, colors);
+        parms.setInt(COSName.BITS_PER_COMPONENT, bitsPerComponent);
+        parms.setInt(COSName.COLUMNS, columns);
+        return parms;
+    }
+
+    /**
+     * @return The number of bytes of a row before prediction.
+     */
+    public int getRowLength()
+    {
+        return rowLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(int b) throws IOException
+    {
+        row[rowPosition++] = (byte) b;
+        if (rowPosition == rowLength)
+        {
+            writeRow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            int n = Math.min(len, rowLength - rowPosition);
+            System.arraycopy(b, off, row, rowPosition, n);
+            rowPosition += n;
+            off += n;
+            len -= n;
+            if (rowPosition == rowLength)
+            {
+                writeRow();
+            }
+        }
+    }
+
+    /**
+     * Writes the rest of an incomplete row padded with zeros, and closes the stream.
+     *
+     * @throws IOException If there is an error writing to the stream.
+     */
+    public void close() throws IOException
+    {
+        if (rowPosition > 0)
+        {
+            for (int i = rowPosition; i < rowLength; i++)
+            {
+                row[i] = 0;
+            }
+            writeRow();
+        }
+        super.close();
+    }
+
+    private void writeRow() throws IOException
+    {
+        final byte[] cur = row;
+        final byte[] prev = previousRow;
+        final int bpp = bytesPerPixel;
+        final int n = rowLength;
+
+        // the sums of the absolute values of the filtered bytes, read as signed bytes
+        int sumNone = 0;
+        int sumSub = 0;
+        int sumUp = 0;
+        int sumAverage = 0;
+        int sumPaeth = 0;
+        for (int i = 0; i < bpp; i++)
+        {
+            // the left and upper left bytes are 0, Sub is None and Paeth is Up
+            int x = cur[i] & 0xff;
+            int b = prev[i] & 0xff;
+            sumNone += Math.abs((byte) x);
+            sumUp += Math.abs((byte) (x - b));
+            sumAverage += Math.abs((byte) (x - (b >>> 1)));
+        }
+        sumSub = sumNone;
+        sumPaeth = sumUp;
+        for (int i = bpp; i < n; i++)
+        {
+            int x = cur[i] & 0xff;
+            int a = cur[i - bpp] & 0xff;
+            int b = prev[i] & 0xff;
+            int c = prev[i - bpp] & 0xff;
+            sumNone += Math.abs((byte) x);
+            sumSub += Math.abs((byte) (x - a));
+            sumUp += Math.abs((byte) (x - b));
+            sumAverage += Math.abs((byte) (x - ((a + b) >>> 1)));
+            sumPaeth += Math.abs((byte) (x - paeth(a, b, c)));
+        }
+
+        int filter = NONE;
+        int best = sumNone;
+        if (sumSub < best)
+        {
+            filter = SUB;
+            best = sumSub;
+        }
+        if (sumUp < best)
+        {
+            filter = UP;
+            best = sumUp;
+        }
+        if (sumAverage < best)
+        {
+            filter = AVERAGE;
+            best = sumAverage;
+        }
+        if (sumPaeth < best)
+        {
+            filter = PAETH;
+        }
+
+        final byte[] dest = filtered;
+        dest[0] = (byte) filter;
+        switch (filter)
+        {
+            case SUB:
+                System.arraycopy(cur, 0, dest, 1, bpp);
+                for (int i = bpp; i < n; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i] - cur[i - bpp]);
+                }
+                break;
+            case UP:
+                for (int i = 0; i < n; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i] - prev[i]);
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < bpp; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i] - ((prev[i] & 0xff) >>> 1));
+                }
+                for (int i = bpp; i < n; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i] - (((cur[i - bpp] & 0xff) + (prev[i] & 0xff)) >>> 1));
+                }
+                break;
+            case PAETH:
+                for (int i = 0; i < bpp; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i] - prev[i]);
+                }
+                for (int i = bpp; i < n; i++)
+                {
+                    dest[i + 1] = (byte) (cur[i]
+                            - paeth(cur[i - bpp] & 0xff, prev[i] & 0xff, prev[i - bpp] & 0xff));
+                }
+                break;
+            default:
+                System.arraycopy(cur, 0, dest, 1, n);
+                break;
+        }
+        out.write(dest, 0, n + 1);
+
+        // the current row becomes the previous one
+        row = prev;
+        previousRow = cur;
+        rowPosition = 0;
+    }
+
+    private static int paeth(int a, int b, int c)
+    {
+        int pa = Math.abs(b - c);
+        int pb = Math.abs(a - c);
+        int pc = Math.abs(a + b - 2 * c);
+        if (pa <= pb && pa <= pc)
+        {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.xobject;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+
+/**
+ * Reads the rows of a {@link BufferedImage} straight from its raster. Images with 8 bit sRGB or
+ * gray samples, with or without alpha, are read with {@link Raster#getPixels}. Any other image
+ * is converted to sRGB with {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+ * Either way only one strip of rows is converted at a time.
+ */
+class BufferedImageRowSource implements PixelRowSource
+{
+    private final BufferedImage image;
+    private final Raster raster;
+    private final int width;
+    private final int height;
+    private final int numberOfComponents;
+    private final boolean alpha;
+    // true if the samples are read from the raster, false if they are converted by getRGB
+    private final boolean direct;
+
+    private int[] samples = new int[0];
+
+    /**
+     * Constructor.
+     *
+     * @param image The image to read.
+     */
+    BufferedImageRowSource(BufferedImage image)
+    {
+        this.image = image;
+        raster = image.getRaster();
+        width = image.getWidth();
+        height = image.getHeight();
+        ColorModel cm = image.getColorModel();
+        alpha = cm.hasAlpha();
+        direct = isDirect(cm, raster);
+        if (direct)
+        {
+            numberOfComponents = cm.getNumColorComponents();
+        }
+        else
+        {
+            numberOfComponents = 3;
+        }
+    }
+
+    private static boolean isDirect(ColorModel cm, Raster raster)
+    {
+        if (!(cm instanceof ComponentColorModel || cm instanceof DirectColorModel) || cm.isAlphaPremultiplied())
+        {
+            return false;
+        }
+        ColorSpace cs = cm.getColorSpace();
+        boolean gray = cs.getType() == ColorSpace.TYPE_GRAY && cm.getNumColorComponents() == 1;
+        if (!gray && !cs.isCS_sRGB())
+        {
+            return false;
+        }
+        if (raster.getNumBands() != cm.getNumComponents())
+        {
+            return false;
+        }
+        for (int i = 0; i < cm.getNumComponents(); i++)
+        {
+            if (cm.getComponentSize(i) != 8)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getNumberOfComponents()
+    {
+        return numberOfComponents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasAlpha()
+    {
+        return alpha;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void readRows(int y, int rows, byte[] color, byte[] alphaSamples)
+    {
+        int pixels = width * rows;
+        if (direct)
+        {
+            // the samples of the color bands are followed by the alpha band
+            int bands = raster.getNumBands();
+            if (samples.length < pixels * bands)
+            {
+                samples = new int[pixels * bands];
+            }
+            int[] s = raster.getPixels(raster.getMinX(), raster.getMinY() + y, width, rows, samples);
+            if (!alpha)
+            {
+                for (int i = 0, n = pixels * bands; i < n; i++)
+                {
+                    color[i] = (byte) s[i];
+                }
+            }
+            else if (bands == 2)
+            {
+                for (int i = 0, j = 0; i < pixels; i++, j += 2)
+                {
+                    color[i] = (byte) s[j];
+                    alphaSamples[i] = (byte) s[j + 1];
+                }
+            }
+            else
+            {
+                for (int i = 0, j = 0, k = 0; i < pixels; i++, j += 4, k += 3)
+                {
+                    color[k] = (byte) s[j];
+                    color[k + 1] = (byte) s[j + 1];
+                    color[k + 2] = (byte) s[j + 2];
+                    alphaSamples[i] = (byte) s[j + 3];
+                }
+            }
+        }
+        else
+        {
+            if (samples.length < pixels)
+            {
+                samples = new int[pixels];
+            }
+            int[] argb = image.getRGB(0, y, width, rows, samples, 0, width);
+            for (int i = 0, k = 0; i < pixels; i++, k += 3)
+            {
+                int pixel = argb[i];
+                color[k] = (byte) (pixel >> 16);
+                color[k + 1] = (byte) (pixel >> 8);
+                color[k + 2] = (byte) pixel;
+                if (alpha)
+                {
+                    alphaSamples[i] = (byte) (pixel >>> 24);
+                }
+            }
+        }
+    }
+}
@@ -16,17 +16,13 @@
  */
 package org.apache.pdfbox.pdmodel.graphics.xobject;
 
-import java.awt.AlphaComposite;
-import java.awt.Graphics2D;
 import java.awt.Transparency;
-import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.awt.image.ComponentColorModel;
-import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -36,6 +32,8 @@ import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.filter.FlateFilter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.common.function.PDFunction;
@@ -45,6 +43,7 @@ import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
 import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
 import org.apache.pdfbox.pdmodel.graphics.color.PDSeparation;
+import org.apache.pdfbox.pdmodel.graphics.predictor.PNGPredictorOutputStream;
 import org.apache.pdfbox.util.ImageIOUtil;
 
 /**
@@ -64,6 +63,9 @@ public class PDPixelMap extends PDXObjectImage
 
     private static final String PNG = "png";
 
+    // the number of color samples read from a row source at a time
+    private static final int STRIP_SIZE = 65536;
+
     /**
      * Standard constructor. Basically does nothing.
      * @param pdStream The stream that holds the pixel map.
@@ -74,8 +76,8 @@ public class PDPixelMap extends PDXObjectImage
     }
 
     /**
-     * Construct a pixel map image from an AWT image.
-     * 
+     * Construct a pixel map image from an AWT image. The samples are read from the raster of
+     * the image a strip at a time, an alpha channel becomes a soft mask.
      * 
      * @param doc The PDF document to embed the image in.
      * @param bi The image to read data from.
@@ -83,82 +85,150 @@ public class PDPixelMap extends PDXObjectImage
      * @throws IOException If there is an error while embedding this image.
      */
     public PDPixelMap(PDDocument doc, BufferedImage bi) throws IOException
+    {
+        this(doc, new BufferedImageRowSource(bi));
+    }
+
+    /**
+     * Construct a pixel map image from rows of samples. The rows are predicted and compressed
+     * while they are read, an alpha channel becomes a soft mask unless it is fully opaque.
+     *
+     * @param doc The PDF document to embed the image in.
+     * @param source The source of the rows of the image.
+     *
+     * @throws IOException If there is an error while embedding this image.
+     * @throws IllegalArgumentException If the source has no rows or no columns.
+     */
+    public PDPixelMap(PDDocument doc, PixelRowSource source) throws IOException
     {
         super(doc, PNG);
-        createImageStream(doc, bi);
+        if (source.getWidth() <= 0 || source.getHeight() <= 0)
+        {
+            throw new IllegalArgumentException("Invalid image size: " + source.getWidth() + "x"
+                    + source.getHeight());
+        }
+        createImageStream(doc, source);
     }
 
-    private void createImageStream(PDDocument doc, BufferedImage bi) throws IOException
+    private void createImageStream(PDDocument doc, PixelRowSource source) throws IOException
     {
-        BufferedImage alphaImage = null;
-        BufferedImage rgbImage = null;
-        int width = bi.getWidth();
-        int height = bi.getHeight();
-        if (bi.getColorModel().hasAlpha())
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int numberOfComponents = source.getNumberOfComponents();
+        PDColorSpace colorSpace;
+        if (numberOfComponents == 3)
+        {
+            colorSpace = PDDeviceRGB.INSTANCE;
+        }
+        else if (numberOfComponents == 1)
         {
-            // extract the alpha information
-            WritableRaster alphaRaster = bi.getAlphaRaster();
-            ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), false, false,
-                    Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-            alphaImage = new BufferedImage(cm, alphaRaster, false, null);
-            // create a RGB image without alpha
-            rgbImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-            Graphics2D g = rgbImage.createGraphics();
-            g.setComposite(AlphaComposite.Src);
-            g.drawImage(bi, 0, 0, null);
+            colorSpace = new PDDeviceGray();
         }
         else
         {
-            rgbImage = bi;
+            throw new IllegalStateException();
+        }
+        boolean hasAlpha = source.hasAlpha();
+
+        int stripRows = Math.max(1, Math.min(height, STRIP_SIZE / (width * numberOfComponents)));
+        byte[] color = new byte[stripRows * width * numberOfComponents];
+        byte[] alpha = hasAlpha ? new byte[stripRows * width] : null;
+        boolean opaque = true;
+
+        FlateCompression compression = getPDStream().getCompression();
+        if (compression == null)
+        {
+            compression = doc.getCompression();
         }
-        java.io.OutputStream os = null;
+        // the color samples go straight to the scratch file, the compressed alpha samples are
+        // kept until the soft mask stream can be written, as a scratch file stream must be
+        // written in one piece
+        getPDStream().addCompression();
+        PNGPredictorOutputStream colorOut = null;
+        PNGPredictorOutputStream alphaOut = null;
+        ByteArrayOutputStream alphaData = null;
+        COSDictionary colorParms = null;
+        COSDictionary alphaParms = null;
         try
         {
-            int numberOfComponents = rgbImage.getColorModel().getNumComponents();
-            if (numberOfComponents == 3)
+            colorOut = new PNGPredictorOutputStream(
+                    FlateFilter.createEncoderStream(getCOSStream().createFilteredStream(), compression),
+                    numberOfComponents, 8, width);
+            colorParms = colorOut.createDecodeParms();
+            if (hasAlpha)
             {
-                setColorSpace(PDDeviceRGB.INSTANCE);
+                alphaData = new ByteArrayOutputStream();
+                alphaOut = new PNGPredictorOutputStream(FlateFilter.createEncoderStream(alphaData, compression),
+                        1, 8, width);
+                alphaParms = alphaOut.createDecodeParms();
             }
-            else
+            for (int y = 0; y < height; y += stripRows)
             {
-                if (numberOfComponents == 1)
+                int rows = Math.min(stripRows, height - y);
+                source.readRows(y, rows, color, alpha);
+                colorOut.write(color, 0, rows * width * numberOfComponents);
+                if (hasAlpha)
                 {
-                    setColorSpace(new PDDeviceGray());
-                }
-                else
-                {
-                    throw new IllegalStateException();
+                    for (int i = 0, n = rows * width; opaque && i < n; i++)
+                    {
+                        opaque = alpha[i] == (byte) 0xff;
+                    }
+                    alphaOut.write(alpha, 0, rows * width);
                 }
             }
-            byte[] outData = new byte[width * height * numberOfComponents];
-            rgbImage.getData().getDataElements(0, 0, width, height, outData);
-            // add FlateDecode compression
-            getPDStream().addCompression();
-            os = getCOSStream().createUnfilteredStream();
-            os.write(outData);
-
-            COSDictionary dic = getCOSStream();
-            dic.setItem(COSName.FILTER, COSName.FLATE_DECODE);
-            dic.setItem(COSName.SUBTYPE, COSName.IMAGE);
-            dic.setItem(COSName.TYPE, COSName.XOBJECT);
-            if (alphaImage != null)
+            colorOut.close();
+            colorOut = null;
+            if (alphaOut != null)
             {
-                PDPixelMap smask = new PDPixelMap(doc, alphaImage);
-                dic.setItem(COSName.SMASK, smask);
+                alphaOut.close();
+                alphaOut = null;
             }
-            setBitsPerComponent(8);
-            setHeight(height);
-            setWidth(width);
         }
         finally
         {
-            if (os != null)
+            if (colorOut != null)
+            {
+                colorOut.close();
+            }
+            if (alphaOut != null)
+            {
+                alphaOut.close();
+            }
+        }
+        setImageAttributes(this, colorSpace, width, height, colorParms);
+
+        if (hasAlpha && !opaque)
+        {
+            PDPixelMap smask = new PDPixelMap(new PDStream(doc));
+            smask.getPDStream().addCompression();
+            OutputStream os = smask.getCOSStream().createFilteredStream();
+            try
+            {
+                alphaData.writeTo(os);
+            }
+            finally
             {
                 os.close();
             }
+            setImageAttributes(smask, new PDDeviceGray(), width, height, alphaParms);
+            getCOSStream().setItem(COSName.SMASK, smask);
         }
     }
 
+    private static void setImageAttributes(PDPixelMap image, PDColorSpace colorSpace, int width, int height,
+            COSDictionary decodeParms)
+    {
+        COSDictionary dic = image.getCOSStream();
+        dic.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        dic.setItem(COSName.DECODE_PARMS, decodeParms);
+        dic.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        dic.setItem(COSName.TYPE, COSName.XOBJECT);
+        image.setColorSpace(colorSpace);
+        image.setBitsPerComponent(8);
+        image.setHeight(height);
+        image.setWidth(width);
+    }
+
     /**
      * Returns a {@link java.awt.image.BufferedImage} of the COSStream
      * set in the constructor or null if the COSStream could not be encoded.
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.xobject;
+
+import java.io.IOException;
+
+/**
+ * A source of the rows of an image with 8 bit samples, which is embedded by
+ * {@link PDPixelMap#PDPixelMap(org.apache.pdfbox.pdmodel.PDDocument, PixelRowSource)}. The rows
+ * are read in strips from top to bottom, so the image never needs to be held in memory as a
+ * whole.
+ */
+public interface PixelRowSource
+{
+    /**
+     * @return The width of the image in pixels.
+     */
+    int getWidth();
+
+    /**
+     * @return The height of the image in pixels.
+     */
+    int getHeight();
+
+    /**
+     * @return The number of color components, 1 for DeviceGray or 3 for DeviceRGB.
+     */
+    int getNumberOfComponents();
+
+    /**
+     * @return true if the image has an alpha channel, it is embedded as a soft mask.
+     */
+    boolean hasAlpha();
+
+    /**
+     * Reads a strip of rows. The color samples of every pixel are stored one after the other,
+     * and the rows one after the other.
+     *
+     * @param y The index of the first row to read.
+     * @param rows The number of rows to read.
+     * @param color The array to store the color samples in, from index 0.
+     * @param alpha The array to store the alpha samples in, from index 0, or null if the image
+     *        has no alpha channel.
+     *
+     * @throws IOException If the rows can't be read.
+     */
+    void readRows(int y, int rows, byte[] color, byte[] alpha) throws IOException;
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.util;
+
+/**
+ * Allocation free formatting of numbers into ASCII bytes.
+ *
+ * The output matches a US {@link java.text.NumberFormat} without grouping and with the same
+ * maximum number of fraction digits: the exact binary value is rounded half-even, trailing zeros
+ * of the fraction are dropped and no exponent is ever written.
+ */
+public class NumberFormatUtil
+{
+    /**
+     * The largest number of fraction digits the fast path supports.
+     */
+    public static final int MAX_FRACTION_DIGITS = 15;
+
+    /**
+     * A buffer of this size is large enough for every value the fast path accepts.
+     */
+    public static final int MAX_LENGTH = 24;
+
+    private static final long MASK_32 = 0xffffffffL;
+
+    private static final long[] POWER_OF_TENS = new long[19];
+    static
+    {
+        POWER_OF_TENS[0] = 1;
+        for (int i = 1; i < POWER_OF_TENS.length; i++)
+        {
+            POWER_OF_TENS[i] = POWER_OF_TENS[i - 1] * 10;
+        }
+    }
+
+    private NumberFormatUtil()
+    {
+    }
+
+    /**
+     * Formats a float value, widened to double exactly like NumberFormat does.
+     *
+     * @param value the value to format
+     * @param maxFractionDigits the maximum number of fraction digits
+     * @param asciiBuffer the target buffer, at least {@link #MAX_LENGTH} bytes long
+     * @return the number of bytes written, or -1 if the value can't be formatted by the fast path
+     */
+    public static int formatFloatFast(float value, int maxFractionDigits, byte[] asciiBuffer)
+    {
+        return formatDoubleFast(value, maxFractionDigits, asciiBuffer);
+    }
+
+    /**
+     * Formats a double value into the given buffer. NaN, infinite values and values whose
+     * scaled magnitude doesn't fit into a long are rejected, the caller has to fall back to
+     * {@link java.text.NumberFormat} for those.
+     *
+     * @param value the value to format
+     * @param maxFractionDigits the maximum number of fraction digits
+     * @param asciiBuffer the target buffer, at least {@link #MAX_LENGTH} bytes long
+     * @return the number of bytes written, or -1 if the value can't be formatted by the fast path
+     */
+    public static int formatDoubleFast(double value, int maxFractionDigits, byte[] asciiBuffer)
+    {
+        if (maxFractionDigits < 0 || maxFractionDigits > MAX_FRACTION_DIGITS)
+        {
+            return -1;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        boolean negative = bits < 0;
+        int exponent = (int) ((bits >>> 52) & 0x7ff);
+        long mantissa = bits & 0xfffffffffffffL;
+        if (exponent == 0x7ff)
+        {
+            // NaN and infinity
+            return -1;
+        }
+        int shift;
+        if (exponent == 0)
+        {
+            shift = 1074;
+        }
+        else
+        {
+            mantissa |= 1L << 52;
+            shift = 1075 - exponent;
+        }
+        long scaled;
+        if (mantissa == 0)
+        {
+            scaled = 0;
+        }
+        else
+        {
+            // NumberFormat rounds the shortest decimal representation of the value, which is only
+            // guaranteed to round like the exact binary value when one unit in the last place is
+            // finer than the requested precision
+            boolean ulpBelowPrecision = shift >= 63
+                    || (shift > 0 && (1L << shift) > POWER_OF_TENS[maxFractionDigits]);
+            int trailingZeros = Long.numberOfTrailingZeros(mantissa);
+            mantissa >>>= trailingZeros;
+            shift -= trailingZeros;
+            if (shift <= 0)
+            {
+                // an integer value, the fraction is always empty; up to 15 digits are exact
+                if (64 - Long.numberOfLeadingZeros(mantissa) - shift > 62
+                        || (mantissa << -shift) >= POWER_OF_TENS[15])
+                {
+                    return -1;
+                }
+                return writeDigits(negative, mantissa << -shift, 0, asciiBuffer);
+            }
+            if (!ulpBelowPrecision)
+            {
+                return -1;
+            }
+            scaled = scaleAndRound(mantissa, POWER_OF_TENS[maxFractionDigits], shift, trailingZeros);
+            if (scaled < 0)
+            {
+                return -1;
+            }
+        }
+        return writeDigits(negative, scaled, maxFractionDigits, asciiBuffer);
+    }
+
+    /**
+     * Computes round(mantissa * factor / 2^shift) with half-even rounding using 128 bit
+     * arithmetic, as the product of a 53 bit mantissa and 10^15 doesn't fit into a long.
+     *
+     * @param trailingZeros the number of zero bits stripped from the mantissa of the double
+     * @return the rounded value or -1 if it can't be formatted by the fast path
+     */
+    private static long scaleAndRound(long mantissa, long factor, int shift, int trailingZeros)
+    {
+        long a0 = mantissa & MASK_32;
+        long a1 = mantissa >>> 32;
+        long b0 = factor & MASK_32;
+        long b1 = factor >>> 32;
+
+        long p00 = a0 * b0;
+        long p01 = a0 * b1;
+        long p10 = a1 * b0;
+        long p11 = a1 * b1;
+
+        long mid = (p00 >>> 32) + (p01 & MASK_32) + (p10 & MASK_32);
+        long high = p11 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+        long low = (mid << 32) | (p00 & MASK_32);
+
+        // NumberFormat starts from the shortest decimal representation of the value. If that
+        // could be a rounding midpoint while the exact value isn't, the two may round differently,
+        // so anything closer than half an ulp of the double to a midpoint is left to the slow path.
+        // In units of the remainder half an ulp is factor / 2^(trailingZeros + 1).
+        long limit = trailingZeros >= 62 ? 1 : ((factor - 1) >> (trailingZeros + 1)) + 1;
+        long result;
+        int compareToHalf;
+        boolean nearMidpoint;
+        if (shift >= 128)
+        {
+            // the product has less than 128 bits, it is always far below one half
+            return 0;
+        }
+        else if (shift == 64)
+        {
+            result = high;
+            long distance = low ^ Long.MIN_VALUE;
+            compareToHalf = distance == 0 ? 0 : (distance < 0 ? -1 : 1);
+            nearMidpoint = distance > -limit && distance < limit;
+        }
+        else if (shift > 64)
+        {
+            int highShift = shift - 64;
+            result = high >>> highShift;
+            long remainderHigh = high & ((1L << highShift) - 1);
+            long halfHigh = 1L << (highShift - 1);
+            if (remainderHigh == halfHigh)
+            {
+                compareToHalf = low == 0 ? 0 : 1;
+                nearMidpoint = compareUnsigned(low, limit) < 0;
+            }
+            else
+            {
+                compareToHalf = remainderHigh < halfHigh ? -1 : 1;
+                nearMidpoint = remainderHigh == halfHigh - 1 && compareUnsigned(-low, limit) < 0;
+            }
+        }
+        else
+        {
+            if ((high >>> (shift - 1)) != 0)
+            {
+                return -1;
+            }
+            result = (high << (64 - shift)) | (low >>> shift);
+            long remainder = low & ((1L << shift) - 1);
+            long half = 1L << (shift - 1);
+            compareToHalf = remainder == half ? 0 : (remainder < half ? -1 : 1);
+            nearMidpoint = Math.abs(remainder - half) < limit;
+        }
+        if (compareToHalf != 0 && nearMidpoint)
+        {
+            return -1;
+        }
+        if (result < 0)
+        {
+            return -1;
+        }
+        if (compareToHalf > 0 || (compareToHalf == 0 && (result & 1) != 0))
+        {
+            result++;
+        }
+        return result;
+    }
+
+    private static int compareUnsigned(long x, long y)
+    {
+        x += Long.MIN_VALUE;
+        y += Long.MIN_VALUE;
+        return x == y ? 0 : (x < y ? -1 : 1);
+    }
+
+    /**
+     * Writes value / 10^fractionDigits without trailing zeros in the fraction.
+     */
+    private static int writeDigits(boolean negative, long value, int fractionDigits, byte[] asciiBuffer)
+    {
+        long divisor = POWER_OF_TENS[fractionDigits];
+        long integerPart = value / divisor;
+        long fractionPart = value % divisor;
+
+        int offset = 0;
+        if (negative)
+        {
+            asciiBuffer[offset++] = '-';
+        }
+        offset = writeLong(integerPart, asciiBuffer, offset);
+        if (fractionPart != 0)
+        {
+            while (fractionPart % 10 == 0)
+            {
+                fractionPart /= 10;
+                fractionDigits--;
+            }
+            asciiBuffer[offset++] = '.';
+            for (int i = fractionDigits - 1; i >= 0; i--)
+            {
+                asciiBuffer[offset + i] = (byte) ('0' + fractionPart % 10);
+                fractionPart /= 10;
+            }
+            offset += fractionDigits;
+        }
+        return offset;
+    }
+
+    private static int writeLong(long value, byte[] asciiBuffer, int offset)
+    {
+        int length = 1;
+        while (length < POWER_OF_TENS.length && value >= POWER_OF_TENS[length])
+        {
+            length++;
+        }
+        for (int i = offset + length - 1; i >= offset; i--)
+        {
+            asciiBuffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + length;
+    }
+}
@@ -3,13 +3,30 @@ package com.devsmart.lightetch.pdf;
 import com.devsmart.lightetch.*;
 import com.devsmart.lightetch.graphics.Color;
 import com.devsmart.lightetch.render.PDFCanvas;
+import com.devsmart.lightetch.render.PDFRenderer;
+import com.devsmart.lightetch.widgets.LinearLayout;
+import com.devsmart.lightetch.widgets.TextView;
 
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdfwriter.COSWriter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.InflaterInputStream;
 
 
 public class PDFTest {
@@ -71,4 +88,145 @@ public class PDFTest {
         pdf.close();
         out.close();
     }
+
+    private static final PDFRenderer.PageFactory NUMBERED_PAGES = new PDFRenderer.PageFactory() {
+        @Override
+        public View createPage(Context context, int pageIndex) throws Exception {
+            View root = LayoutInflator.inflate(context, ClassLoader.getSystemResourceAsStream("testlayout.xml"));
+            TextView pageNumber = new TextView(context);
+            pageNumber.setLayoutParams(new LinearLayout.LayoutParams());
+            pageNumber.text = "Page " + (pageIndex + 1);
+            ((ViewGroup) root).addView(pageNumber);
+            return root;
+        }
+    };
+
+    private static String renderParallel(int numThreads) throws Exception {
+        PDDocument pdf = new PDDocument();
+        PDFRenderer.renderPages(pdf, PDPage.PAGE_SIZE_LETTER, 20, NUMBERED_PAGES, numThreads);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pdf.save(out);
+        pdf.close();
+        // the document id is based on the current time
+        return out.toString("ISO-8859-1").replaceAll("/ID \\[<\\p{XDigit}+> <\\p{XDigit}+>\\]", "");
+    }
+
+    @Test
+    public void parallelRenderingIsDeterministic() throws Exception {
+        String sequential = renderParallel(1);
+        String parallel = renderParallel(4);
+        Assert.assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void streamingSaveWritesAllPages() throws Exception {
+        PDDocument pdf = new PDDocument();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        COSWriter writer = new COSWriter(out);
+        writer.startDocument(pdf);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<PDPage> pages;
+        try {
+            pages = PDFRenderer.renderPages(pdf, PDPage.PAGE_SIZE_LETTER, 20, NUMBERED_PAGES, executor, writer);
+        } finally {
+            executor.shutdown();
+        }
+        writer.finishDocument();
+        writer.close();
+        pdf.close();
+
+        String pdfString = out.toString("ISO-8859-1");
+        Assert.assertTrue(pdfString.contains("/Count 20"));
+        // the pages were written before the page tree and their content was released
+        Assert.assertTrue(pdfString.indexOf("stream") < pdfString.indexOf("/Type /Pages"));
+        for(PDPage page : pages) {
+            Assert.assertNull(page.getContents().getStream().getScratchFile());
+        }
+
+        // every xref entry has to point at its object
+        int xref = pdfString.lastIndexOf("\nxref");
+        String[] lines = pdfString.substring(xref + 1).split("\r?\n");
+        int count = Integer.parseInt(lines[1].split(" ")[1]);
+        int[] offsets = new int[count];
+        for(int i=1;i<count;i++){
+            String[] entry = lines[2 + i].split(" ");
+            offsets[i] = Integer.parseInt(entry[0]);
+            Assert.assertTrue(pdfString.startsWith(i + " 0 obj", offsets[i]));
+        }
+
+        // read the document back through the xref, from the catalog to the text of every page
+        String catalog = readObject(pdfString, offsets, reference(pdfString.substring(xref), "/Root"));
+        Assert.assertTrue(catalog.contains("/Type /Catalog"));
+        String pageTree = readObject(pdfString, offsets, reference(catalog, "/Pages"));
+        Matcher kids = Pattern.compile("(\\d+) 0 R").matcher(
+                pageTree.substring(pageTree.indexOf("/Kids"), pageTree.indexOf("]")));
+        int pageIndex = 0;
+        while(kids.find()) {
+            String page = readObject(pdfString, offsets, Integer.parseInt(kids.group(1)));
+            Assert.assertTrue(page.contains("/Type /Page\n"));
+            String contents = readObject(pdfString, offsets, reference(page, "/Contents"));
+            // the page number is shown with kerning, which is dropped to compare the text
+            String text = inflateStream(contents).replaceAll("\\)-?\\d+\\(", "");
+            Assert.assertTrue(text.contains("(Cool Mama) Tj"));
+            Assert.assertTrue(text.contains("[(Page " + (pageIndex + 1) + ")] TJ"));
+            pageIndex++;
+        }
+        Assert.assertEquals(20, pageIndex);
+    }
+
+    private static int reference(String dictionary, String key) {
+        Matcher matcher = Pattern.compile(Pattern.quote(key) + " (\\d+) 0 R").matcher(dictionary);
+        Assert.assertTrue(matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static String readObject(String pdfString, int[] offsets, int number) {
+        return pdfString.substring(offsets[number], pdfString.indexOf("endobj", offsets[number]));
+    }
+
+    private static String inflateStream(String object) throws Exception {
+        int start = object.indexOf("stream") + "stream".length();
+        while(object.charAt(start) == '\r' || object.charAt(start) == '\n') {
+            start++;
+        }
+        byte[] data = object.substring(start, object.lastIndexOf("endstream")).getBytes("ISO-8859-1");
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(data));
+        String text = new String(IOUtils.toByteArray(in), "ISO-8859-1");
+        in.close();
+        return text;
+    }
+
+    @Test
+    public void xrefStreamDocumentIsCompressed() throws Exception {
+        PDDocument pdf = new PDDocument();
+        pdf.getDocument().setIsXRefStream(true);
+        for(int i=0;i<20;i++){
+            PDPage page = new PDPage();
+            pdf.addPage(page);
+            PDPageContentStream content = new PDPageContentStream(pdf, page);
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 12);
+            content.moveTextPositionByAmount(72, 720);
+            content.drawString("Page " + (i + 1));
+            content.endText();
+            content.close();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pdf.save(out);
+        pdf.close();
+
+        String pdfString = out.toString("ISO-8859-1");
+        Assert.assertTrue(pdfString.startsWith("%PDF-1.5"));
+        Assert.assertTrue(pdfString.contains("/Type /ObjStm"));
+        Assert.assertFalse(pdfString.contains("/Type /Page"));
+        Assert.assertFalse(pdfString.contains("\ntrailer"));
+
+        int startxref = pdfString.lastIndexOf("startxref");
+        int offset = Integer.parseInt(pdfString.substring(startxref + 10).trim().split("\\s")[0]);
+        Assert.assertTrue(pdfString.substring(offset).matches("(?s)\\d+ 0 obj\n<<\n/Root .*/Type /XRef\n.*"));
+        // the entries are binary, with their field widths given by /W
+        String xrefDictionary = pdfString.substring(offset, pdfString.indexOf("stream", offset));
+        Assert.assertTrue(xrefDictionary.matches("(?s).*/W \\[1 \\d 2\\].*/Filter /FlateDecode.*"));
+    }
 }
@@ -0,0 +1,62 @@
+package org.apache.fontbox.afm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+public class AFMCompilerTest {
+
+    private static FontMetric parse(String name) throws Exception {
+        InputStream in = AFMCompilerTest.class.getResourceAsStream("/org/apache/pdfbox/resources/afm/" + name + ".afm");
+        try {
+            return new AFMParser(in).parse();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void compiledMetricsMatchTheText() throws Exception {
+        String[] names = { "Helvetica-Bold", "Courier", "Symbol" };
+        for(String name : names) {
+            FontMetric expected = parse(name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AFMCompiler.write(expected, out);
+            FontMetric actual = AFMCompiler.read(new ByteArrayInputStream(out.toByteArray()));
+
+            Assert.assertEquals(expected.getFontName(), actual.getFontName());
+            Assert.assertEquals(expected.getFamilyName(), actual.getFamilyName());
+            Assert.assertEquals(expected.getWeight(), actual.getWeight());
+            Assert.assertEquals(expected.getCharacterSet(), actual.getCharacterSet());
+            Assert.assertEquals(expected.isFixedPitch(), actual.isFixedPitch());
+            Assert.assertEquals(expected.getAscender(), actual.getAscender(), 0);
+            Assert.assertEquals(expected.getDescender(), actual.getDescender(), 0);
+            Assert.assertEquals(expected.getCapHeight(), actual.getCapHeight(), 0);
+            Assert.assertEquals(expected.getFontBBox().getUpperRightY(), actual.getFontBBox().getUpperRightY(), 0);
+            Assert.assertEquals(expected.getAverageCharacterWidth(), actual.getAverageCharacterWidth(), 0);
+
+            List<CharMetric> e = expected.getCharMetrics();
+            List<CharMetric> a = actual.getCharMetrics();
+            Assert.assertEquals(e.size(), a.size());
+            for(int i=0;i<e.size();i++){
+                Assert.assertEquals(e.get(i).getCharacterCode(), a.get(i).getCharacterCode());
+                Assert.assertEquals(e.get(i).getName(), a.get(i).getName());
+                Assert.assertEquals(e.get(i).getWx(), a.get(i).getWx(), 0);
+                Assert.assertEquals(expected.getCharacterHeight(e.get(i).getName()), actual.getCharacterHeight(a.get(i).getName()), 0);
+            }
+
+            List<KernPair> ek = expected.getKernPairs();
+            List<KernPair> ak = actual.getKernPairs();
+            Assert.assertEquals(ek.size(), ak.size());
+            for(int i=0;i<ek.size();i++){
+                Assert.assertEquals(ek.get(i).getFirstKernCharacter(), ak.get(i).getFirstKernCharacter());
+                Assert.assertEquals(ek.get(i).getSecondKernCharacter(), ak.get(i).getSecondKernCharacter());
+                Assert.assertEquals(ek.get(i).getX(), ak.get(i).getX(), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.apache.fontbox.ttf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+
+public class GlyphTableTest {
+
+    private static TrueTypeFont parseArial() throws Exception {
+        InputStream in = GlyphTableTest.class.getResourceAsStream("/org/apache/pdfbox/resources/ttf/ArialMT.ttf");
+        try {
+            return new TTFParser().parseTTF(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void boundedCacheDecodesTheSameGlyphs() throws Exception {
+        TrueTypeFont font = parseArial();
+        TrueTypeFont bounded = parseArial();
+        bounded.getGlyph().setCacheSize(4);
+        GlyphTable glyphs = font.getGlyph();
+        Assert.assertEquals(font.getMaximumProfile().getNumGlyphs(), glyphs.getNumberOfGlyphs());
+
+        int composites = 0;
+        for(int gid=glyphs.getNumberOfGlyphs()-1;gid>=0;gid--){
+            GlyphData expected = glyphs.getGlyph(gid);
+            GlyphData actual = bounded.getGlyph().getGlyph(gid);
+            if(expected == null) {
+                Assert.assertNull(actual);
+                continue;
+            }
+            Assert.assertSame(expected, glyphs.getGlyph(gid));
+            Assert.assertEquals(expected.getXMaximum(), actual.getXMaximum());
+            GlyphDescription e = expected.getDescription();
+            GlyphDescription a = actual.getDescription();
+            Assert.assertEquals(e.isComposite(), a.isComposite());
+            Assert.assertEquals(e.getPointCount(), a.getPointCount());
+            Assert.assertEquals(e.getContourCount(), a.getContourCount());
+            for(int i=0;i<e.getPointCount();i++){
+                Assert.assertEquals(e.getXCoordinate(i), a.getXCoordinate(i));
+                Assert.assertEquals(e.getYCoordinate(i), a.getYCoordinate(i));
+            }
+            if(e.isComposite()) {
+                composites++;
+            }
+        }
+        Assert.assertTrue(composites > 0);
+        Assert.assertNull(glyphs.getGlyph(-1));
+        Assert.assertNull(glyphs.getGlyph(glyphs.getNumberOfGlyphs()));
+        font.close();
+        bounded.close();
+    }
+}
@@ -0,0 +1,70 @@
+package org.apache.pdfbox.filter;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.io.ASCII85InputStream;
+import org.apache.pdfbox.io.ASCII85OutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+public class ASCII85FilterTest {
+
+    private static byte[] encode(byte[] data) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        new ASCII85Filter().encode(new ByteArrayInputStream(data), encoded, new COSDictionary(), 0);
+        return encoded.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded) throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new ASCII85Filter().decode(new ByteArrayInputStream(encoded), decoded, new COSDictionary(), 0);
+        return decoded.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != -1){
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void encodesGroups() throws Exception {
+        Assert.assertEquals("9jqo^z@:B~>\n", new String(encode("Man \0\0\0\0ab".getBytes("ISO-8859-1")), "ISO-8859-1"));
+        Assert.assertEquals("~>\n", new String(encode(new byte[0]), "ISO-8859-1"));
+        Assert.assertArrayEquals("Man ab".getBytes("ISO-8859-1"), decode("9jq o^\n@:B~>".getBytes("ISO-8859-1")));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void rejectsInvalidCharacters() throws Exception {
+        decode("9jq{o^~>".getBytes("ISO-8859-1"));
+    }
+
+    @Test
+    public void compatibleWithStreams() throws Exception {
+        Random random = new Random(9);
+        for(int n : new int[] { 1, 2, 3, 4, 5, 57, 58, 1000, 30001 }) {
+            byte[] data = new byte[n];
+            random.nextBytes(data);
+            for(int i=0;i<n/3;i++){
+                data[random.nextInt(n)] = 0;
+            }
+
+            byte[] encoded = encode(data);
+            Assert.assertArrayEquals(data, decode(encoded));
+            Assert.assertArrayEquals(data, readAll(new ASCII85InputStream(new ByteArrayInputStream(encoded))));
+
+            ByteArrayOutputStream streamEncoded = new ByteArrayOutputStream();
+            ASCII85OutputStream out = new ASCII85OutputStream(streamEncoded);
+            out.write(data);
+            out.close();
+            Assert.assertArrayEquals(data, decode(streamEncoded.toByteArray()));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.apache.pdfbox.filter;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class ASCIIHexFilterTest {
+
+    private static byte[] encode(byte[] data) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        new ASCIIHexFilter().encode(new ByteArrayInputStream(data), encoded, new COSDictionary(), 0);
+        return encoded.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded) throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new ASCIIHexFilter().decode(new ByteArrayInputStream(encoded), decoded, new COSDictionary(), 0);
+        return decoded.toByteArray();
+    }
+
+    @Test
+    public void encodesDigits() throws Exception {
+        Assert.assertEquals("00FF7A>", new String(encode(new byte[] { 0, -1, 0x7a }), "ISO-8859-1"));
+        Assert.assertArrayEquals(new byte[] { 0, -1, 0x7a, 0x50 }, decode("0 0f\nF7a 5>0".getBytes("ISO-8859-1")));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Random random = new Random(11);
+        for(int n : new int[] { 0, 1, 64, 65, 20000 }) {
+            byte[] data = new byte[n];
+            random.nextBytes(data);
+            Assert.assertArrayEquals(data, decode(encode(data)));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.apache.pdfbox.filter;
+
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class FlateFilterTest {
+
+    private static byte[] createData() {
+        return createData(100000);
+    }
+
+    private static byte[] createData(int length) {
+        Random random = new Random(7);
+        byte[] data = new byte[length];
+        for(int i=0;i<data.length;i++){
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+
+    private static byte[] decode(byte[] encoded) throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new FlateFilter().decode(new ByteArrayInputStream(encoded), decoded, new COSStream(new RandomAccessBuffer()), 0);
+        return decoded.toByteArray();
+    }
+
+    @Test
+    public void roundTripWithEveryProfile() throws Exception {
+        byte[] data = createData();
+        FlateCompression[] profiles = { FlateCompression.DEFAULT, FlateCompression.FAST, FlateCompression.MAX,
+                new FlateCompression(6, Deflater.HUFFMAN_ONLY, 512) };
+        for(FlateCompression profile : profiles) {
+            // twice, the second time with a pooled deflater
+            for(int i=0;i<2;i++){
+                COSStream options = new COSStream(new RandomAccessBuffer());
+                options.setCompression(profile);
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                new FlateFilter().encode(new ByteArrayInputStream(data), encoded, options, 0);
+                Assert.assertArrayEquals(data, decode(encoded.toByteArray()));
+
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                FlateFilter.encode(data, 0, data.length, block, profile);
+                Assert.assertArrayEquals(encoded.toByteArray(), block.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void maxIsSmallerThanFast() throws Exception {
+        byte[] data = createData();
+        ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        FlateFilter.encode(data, 0, data.length, fast, FlateCompression.FAST);
+        ByteArrayOutputStream max = new ByteArrayOutputStream();
+        FlateFilter.encode(data, 0, data.length, max, FlateCompression.MAX);
+        Assert.assertTrue(max.size() < fast.size());
+    }
+
+    @Test
+    public void parallelOutputIsOneZlibStream() throws Exception {
+        // the sync flush the blocks end with is available from Java 7 on
+        Assert.assertTrue(ParallelFlateEncoder.SUPPORTED);
+        FlateCompression parallel = FlateCompression.DEFAULT.withParallelThreshold(0);
+        int[] lengths = { 0, 10, ParallelFlateEncoder.BLOCK_SIZE, 5 * ParallelFlateEncoder.BLOCK_SIZE + 123 };
+        for(int length : lengths) {
+            byte[] data = createData(length);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            FlateFilter.encode(data, 0, data.length, encoded, parallel);
+
+            // Inflater verifies the header and the Adler-32 checksum
+            Inflater inflater = new Inflater();
+            inflater.setInput(encoded.toByteArray());
+            byte[] decoded = new byte[length + 1];
+            int decodedLength = 0;
+            while(!inflater.finished()) {
+                int n = inflater.inflate(decoded, decodedLength, decoded.length - decodedLength);
+                Assert.assertTrue(n > 0 || inflater.finished());
+                decodedLength += n;
+            }
+            Assert.assertEquals(0, inflater.getRemaining());
+            inflater.end();
+            Assert.assertEquals(length, decodedLength);
+            for(int i=0;i<length;i++){
+                Assert.assertEquals(data[i], decoded[i]);
+            }
+        }
+    }
+
+    @Test
+    public void parallelThresholdSelectsSingleThread() throws Exception {
+        byte[] data = createData();
+        FlateCompression parallel = FlateCompression.DEFAULT.withParallelThreshold(data.length + 1);
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        FlateFilter.encode(data, 0, data.length, single, FlateCompression.DEFAULT);
+        ByteArrayOutputStream belowThreshold = new ByteArrayOutputStream();
+        FlateFilter.encode(data, 0, data.length, belowThreshold, parallel);
+        Assert.assertArrayEquals(single.toByteArray(), belowThreshold.toByteArray());
+    }
+
+    @Test
+    public void encoderStreamSwitchesToParallelAtTheThreshold() throws Exception {
+        int threshold = 2 * ParallelFlateEncoder.BLOCK_SIZE + 5;
+        FlateCompression parallel = FlateCompression.DEFAULT.withParallelThreshold(threshold);
+        int[] lengths = { 0, 1000, threshold - 1, threshold, 4 * ParallelFlateEncoder.BLOCK_SIZE,
+                7 * ParallelFlateEncoder.BLOCK_SIZE + 99 };
+        for(int length : lengths) {
+            byte[] data = createData(length);
+            // the same output as encoding the data in one piece, in parallel from the threshold on
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            FlateFilter.encode(data, 0, data.length, expected, parallel);
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            java.io.OutputStream out = FlateFilter.createEncoderStream(encoded, parallel);
+            for(int i=0;i<length;){
+                int n = Math.min(length - i, 1 + (i % 70001));
+                if(n == 1) {
+                    out.write(data[i]);
+                } else {
+                    out.write(data, i, n);
+                }
+                i += n;
+            }
+            out.close();
+            Assert.assertArrayEquals(expected.toByteArray(), encoded.toByteArray());
+            Assert.assertArrayEquals(data, decode(encoded.toByteArray()));
+        }
+    }
+}
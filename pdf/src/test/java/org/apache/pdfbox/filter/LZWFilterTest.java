@@ -0,0 +1,94 @@
+package org.apache.pdfbox.filter;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+public class LZWFilterTest {
+
+    private static byte[] encode(byte[] data, COSDictionary options) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        new LZWFilter().encode(new ByteArrayInputStream(data), encoded, options, 0);
+        return encoded.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded, COSDictionary options) throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new LZWFilter().decode(new ByteArrayInputStream(encoded), decoded, options, 0);
+        return decoded.toByteArray();
+    }
+
+    private static byte[] toBytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for(int i=0;i<values.length;i++){
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void specificationExample() throws Exception {
+        // the example of the PDF specification, 7.4.4.2
+        byte[] data = toBytes(45, 45, 45, 45, 45, 65, 45, 45, 45, 66);
+        byte[] encoded = toBytes(0x80, 0x0B, 0x60, 0x50, 0x22, 0x0C, 0x0C, 0x85, 0x01);
+        Assert.assertArrayEquals(encoded, encode(data, new COSDictionary()));
+        Assert.assertArrayEquals(data, decode(encoded, new COSDictionary()));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Random random = new Random(3);
+        byte[][] inputs = new byte[4][];
+        inputs[0] = new byte[0];
+        inputs[1] = new byte[] { 7 };
+        // compressible text, long enough to fill the table several times
+        inputs[2] = new byte[300000];
+        for(int i=0;i<inputs[2].length;i++){
+            inputs[2][i] = (byte) ('a' + random.nextInt(6));
+        }
+        inputs[3] = new byte[100000];
+        random.nextBytes(inputs[3]);
+
+        COSDictionary noEarlyChange = new COSDictionary();
+        COSDictionary parms = new COSDictionary();
+        parms.setInt(COSName.EARLY_CHANGE, 0);
+        noEarlyChange.setItem(COSName.DECODE_PARMS, parms);
+
+        for(byte[] data : inputs) {
+            byte[] encoded = encode(data, new COSDictionary());
+            Assert.assertArrayEquals(data, decode(encoded, new COSDictionary()));
+            Assert.assertArrayEquals(data, decode(encode(data, noEarlyChange), noEarlyChange));
+        }
+    }
+
+    @Test
+    public void sameBytesAsPreviousEncoder() throws Exception {
+        // length and CRC-32 of the output of the previous encoder, the inputs fill the table
+        // several times so the codes around each clear are checked too
+        Random random = new Random(5);
+        byte[] text = new byte[50000];
+        for(int i=0;i<text.length;i++){
+            text[i] = (byte) ('a' + random.nextInt(4));
+        }
+        byte[] noise = new byte[50000];
+        random.nextBytes(noise);
+
+        byte[] encoded = encode(text, new COSDictionary());
+        CRC32 crc = new CRC32();
+        crc.update(encoded);
+        Assert.assertEquals(14951, encoded.length);
+        Assert.assertEquals(0x08e074e5L, crc.getValue());
+
+        encoded = encode(noise, new COSDictionary());
+        crc.reset();
+        crc.update(encoded);
+        Assert.assertEquals(68398, encoded.length);
+        Assert.assertEquals(0xb26ed8a2L, crc.getValue());
+    }
+}
@@ -0,0 +1,67 @@
+package org.apache.pdfbox.filter;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class RunLengthDecodeFilterTest {
+
+    private static byte[] encode(byte[] data) throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        new RunLengthDecodeFilter().encode(new ByteArrayInputStream(data), encoded, new COSDictionary(), 0);
+        return encoded.toByteArray();
+    }
+
+    private static byte[] decode(byte[] encoded) throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new RunLengthDecodeFilter().decode(new ByteArrayInputStream(encoded), decoded, new COSDictionary(), 0);
+        return decoded.toByteArray();
+    }
+
+    @Test
+    public void encodesRunsAndLiterals() throws Exception {
+        byte[] data = { 1, 2, 3, 3, 3, 3, 4, 4 };
+        byte[] encoded = { 1, 1, 2, (byte) 253, 3, (byte) 255, 4, (byte) 128 };
+        Assert.assertArrayEquals(encoded, encode(data));
+        Assert.assertArrayEquals(new byte[] { (byte) 128 }, encode(new byte[0]));
+        // a flat mask compresses to two bytes per 128
+        Assert.assertEquals(2 * 80 + 1, encode(new byte[128 * 80]).length);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Random random = new Random(5);
+        for(int n : new int[] { 1, 2, 3, 127, 128, 129, 257, 20000, 100000 }) {
+            byte[] noise = new byte[n];
+            random.nextBytes(noise);
+            Assert.assertArrayEquals(noise, decode(encode(noise)));
+
+            // runs of every length mixed with short literals
+            byte[] mixed = new byte[n];
+            for(int i=0;i<n;){
+                int length = Math.min(n - i, 1 + random.nextInt(random.nextBoolean() ? 4 : 300));
+                byte value = (byte) random.nextInt(3);
+                for(int j=0;j<length;j++){
+                    mixed[i++] = random.nextInt(8) == 0 ? (byte) random.nextInt() : value;
+                }
+            }
+            Assert.assertArrayEquals(mixed, decode(encode(mixed)));
+        }
+    }
+
+    @Test
+    public void longRunsOfTwo() throws Exception {
+        // runs of two extend the open literal sequence past the size of the output buffer
+        byte[] data = new byte[1 + 4 * 20000];
+        data[0] = 'c';
+        for(int i=1;i<data.length;i+=4){
+            data[i] = data[i + 1] = 'a';
+            data[i + 2] = data[i + 3] = 'b';
+        }
+        Assert.assertArrayEquals(data, decode(encode(data)));
+    }
+}
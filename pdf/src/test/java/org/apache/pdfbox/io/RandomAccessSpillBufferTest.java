@@ -0,0 +1,94 @@
+package org.apache.pdfbox.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class RandomAccessSpillBufferTest {
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(3).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(RandomAccess buffer) throws Exception {
+        byte[] result = new byte[(int) buffer.length()];
+        buffer.seek(0);
+        int offset = 0;
+        int n;
+        while(offset < result.length && (n = buffer.read(result, offset, result.length - offset)) > 0) {
+            offset += n;
+        }
+        Assert.assertEquals(result.length, offset);
+        return result;
+    }
+
+    @Test
+    public void spillsColdChunksOverBudget() throws Exception {
+        byte[] data = createData(10 * SpillStore.CHUNK_SIZE + 77);
+        RandomAccessSpillBuffer buffer = new RandomAccessSpillBuffer(2 * SpillStore.CHUNK_SIZE, false, null);
+        try {
+            // odd write sizes to cross chunk borders
+            for(int i=0;i<data.length;i+=1000){
+                buffer.write(data, i, Math.min(1000, data.length - i));
+            }
+            Assert.assertTrue(buffer.getMemoryUsage() <= 2 * SpillStore.CHUNK_SIZE);
+            Assert.assertTrue(buffer.getSpilledBytes() > 0);
+            Assert.assertArrayEquals(data, readAll(buffer));
+
+            buffer.seek(5 * SpillStore.CHUNK_SIZE + 3);
+            Assert.assertEquals(data[5 * SpillStore.CHUNK_SIZE + 3] & 0xff, buffer.read());
+            buffer.write(42);
+            Assert.assertEquals(42, readAll(buffer)[5 * SpillStore.CHUNK_SIZE + 4]);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void clonesAreCopyOnWrite() throws Exception {
+        byte[] data = createData(3 * SpillStore.CHUNK_SIZE);
+        RandomAccessSpillBuffer buffer = new RandomAccessSpillBuffer(0, true, null);
+        try {
+            buffer.write(data, 0, data.length);
+            long spilled = buffer.getSpilledBytes();
+            RandomAccessSpillBuffer copy = buffer.clone();
+            Assert.assertEquals(spilled, buffer.getSpilledBytes());
+
+            copy.seek(SpillStore.CHUNK_SIZE);
+            copy.write(1);
+            Assert.assertEquals(spilled + SpillStore.CHUNK_SIZE, buffer.getSpilledBytes());
+            Assert.assertArrayEquals(data, readAll(buffer));
+            byte[] copyData = readAll(copy);
+            Assert.assertEquals(1, copyData[SpillStore.CHUNK_SIZE]);
+            copyData[SpillStore.CHUNK_SIZE] = data[SpillStore.CHUNK_SIZE];
+            Assert.assertArrayEquals(data, copyData);
+
+            copy.close();
+            Assert.assertEquals(spilled, buffer.getSpilledBytes());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void copyWritesRangesChunkByChunk() throws Exception {
+        byte[] data = createData(3 * SpillStore.CHUNK_SIZE + 5);
+        RandomAccess[] sources = { new RandomAccessBuffer(), new RandomAccessSpillBuffer(SpillStore.CHUNK_SIZE, true, null) };
+        for(RandomAccess source : sources) {
+            source.write(data, 0, data.length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals(2 * SpillStore.CHUNK_SIZE, IOUtils.copy(source, 100, 2 * SpillStore.CHUNK_SIZE, out));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 100, 100 + 2 * SpillStore.CHUNK_SIZE), out.toByteArray());
+
+            out.reset();
+            Assert.assertEquals(15, IOUtils.copy(source, data.length - 15, 100, out));
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, data.length - 15, data.length), out.toByteArray());
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.apache.pdfbox.pdmodel.common.function.type4;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompiledProgramTest {
+
+    private static List<Object> interpret(String program, Object... inputs) {
+        ExecutionContext context = new ExecutionContext(new Operators());
+        for(Object input : inputs) {
+            context.getStack().push(input);
+        }
+        InstructionSequenceBuilder.parse(program).execute(context);
+        return new ArrayList<Object>(context.getStack());
+    }
+
+    private static List<Object> run(String program, Object... inputs) {
+        CompiledProgram compiled = CompiledProgram.compile(InstructionSequenceBuilder.parse(program));
+        Assert.assertNotNull(program, compiled);
+        OperandStack stack = new OperandStack();
+        for(Object input : inputs) {
+            stack.ensureCapacity(stack.size + 1);
+            if(input instanceof Integer) {
+                stack.types[stack.size] = OperandStack.INT;
+                stack.ints[stack.size] = (Integer) input;
+            } else if(input instanceof Float) {
+                stack.types[stack.size] = OperandStack.REAL;
+                stack.reals[stack.size] = (Float) input;
+            } else {
+                stack.types[stack.size] = OperandStack.BOOL;
+                stack.ints[stack.size] = (Boolean) input ? 1 : 0;
+            }
+            stack.size++;
+        }
+        compiled.execute(stack);
+        List<Object> result = new ArrayList<Object>();
+        for(int i=0;i<stack.size;i++){
+            switch(stack.types[i]) {
+                case OperandStack.INT: result.add(stack.ints[i]); break;
+                case OperandStack.REAL: result.add(stack.reals[i]); break;
+                default: result.add(stack.ints[i] != 0);
+            }
+        }
+        return result;
+    }
+
+    private static void check(String program, Object... inputs) {
+        Assert.assertEquals(program, interpret(program, inputs), run(program, inputs));
+    }
+
+    @Test
+    public void arithmetic() {
+        check("{ 1 2 add 3.5 sub 2 mul 7 3 idiv 7 3 mod 2.5 neg abs }");
+        check("{ 2147483647 1 add -2147483648 1 sub 65536 65536 mul -2147483648 neg }");
+        check("{ 0.1 0.2 mul 1 3 div 2 0.5 exp 100 log 2.718 ln 16 sqrt }");
+        check("{ 1 1 atan -1 0 atan 30 sin 60 cos }");
+        check("{ 2.5 round -2.5 round 2.7 truncate -2.7 ceiling -2.2 floor 5 ceiling }");
+        check("{ 3.9 cvi 3 cvr -7 abs }");
+    }
+
+    @Test
+    public void relationalAndBitwise() {
+        check("{ 1 1.0 eq 1 2 ne true true eq true 1 eq 2 1 gt 2 2 ge 1 2 lt 2 2 le }");
+        check("{ true false and true false or true true xor false not 5 not }");
+        check("{ 12 10 and 12 10 or 12 10 xor 1 4 bitshift -16 -2 bitshift }");
+    }
+
+    @Test
+    public void stack() {
+        check("{ 1 2 3 2 copy 4 index exch pop dup }");
+        check("{ 1 2 3 4 5 5 2 roll }");
+        check("{ 1 2 3 4 5 4 -1 roll 3 -2 roll 2 0 roll }");
+    }
+
+    @Test
+    public void conditionals() {
+        String program = "{ dup 0.5 gt { 2 mul } { dup 0.25 lt { neg } if } ifelse 1 exch sub }";
+        check(program, 0.75f);
+        check(program, 0.4f);
+        check(program, 0.1f);
+        // the trailing procedure of the main sequence is executed
+        check("{ 1 { 2 add } }");
+        check("{ true { 1 { 2 add } } if }");
+        check("{ 0.3 0.6 2 copy gt { exch } if pop }");
+    }
+
+    @Test
+    public void inputs() {
+        check("{ 2 index 1 index add 3 1 roll mul }", 0.25f, 0.5f, 0.75f);
+    }
+
+    @Test
+    public void unsupportedPrograms() {
+        Assert.assertNull(CompiledProgram.compile(InstructionSequenceBuilder.parse("{ 1 unknown }")));
+        Assert.assertNull(CompiledProgram.compile(InstructionSequenceBuilder.parse("{ { 1 } { 2 } }")));
+    }
+
+    @Test
+    public void rollModuloN() {
+        Assert.assertEquals(run("{ 1 2 3 3 1 roll }"), run("{ 1 2 3 3 7 roll }"));
+        Assert.assertEquals(run("{ 1 2 3 3 -1 roll }"), run("{ 1 2 3 3 -4 roll }"));
+        check("{ 1 2 3 3 7 roll }");
+        check("{ 1 2 3 3 -4 roll }");
+        check("{ -2.857 0 5 3 4 roll }");
+        check("{ 1 2 3 4 4 -9 roll 3 3 roll 0 5 roll }");
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void conditionMustBeBool() {
+        run("{ 1 { 2 } if }");
+    }
+
+    @Test(expected = java.util.EmptyStackException.class)
+    public void underflow() {
+        run("{ 1 add }");
+    }
+}
@@ -0,0 +1,44 @@
+package org.apache.pdfbox.pdmodel.font;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PDSimpleFontTest {
+
+    @Test
+    public void rangeWidthMatchesStringWidth() throws Exception {
+        PDFont font = PDType1Font.HELVETICA_BOLD;
+        String text = "Hello, World é";
+        float expected = 0;
+        byte[] data = text.getBytes("ISO-8859-1");
+        for(int i=0;i<data.length;i++){
+            expected += font.getFontWidthFromAFMFile(data[i] & 0xff);
+        }
+        Assert.assertEquals(expected, font.getStringWidth(text), 0.001f);
+        Assert.assertEquals(font.getStringWidth("World"), font.getStringWidth(text, 7, 12), 0);
+        Assert.assertEquals(0, font.getStringWidth(text, 3, 3), 0);
+
+        // unmappable characters are measured like '?', a surrogate pair once
+        float question = font.getStringWidth("?");
+        Assert.assertTrue(question > 0);
+        Assert.assertEquals(question, font.getStringWidth("中"), 0);
+        Assert.assertEquals(question, font.getStringWidth("😀"), 0);
+    }
+
+    @Test
+    public void advancesIncludeKerning() throws Exception {
+        PDFont font = PDType1Font.HELVETICA_BOLD;
+        String text = "xAVo\ud83d\ude00";
+        float[] advances = new float[5];
+        font.getStringAdvances(text, 1, 6, advances);
+
+        float kerning = font.getKerning('A', 'V');
+        Assert.assertTrue(kerning < 0);
+        Assert.assertEquals(0, font.getKerning('V', 'x'), 0);
+        Assert.assertEquals(font.getStringWidth("A"), advances[0], 0);
+        Assert.assertEquals(font.getStringWidth("AV") + kerning, advances[1], 0.001f);
+        Assert.assertEquals(advances[1] + font.getKerning('V', 'o') + font.getStringWidth("o"), advances[2], 0.001f);
+        Assert.assertEquals(advances[2] + font.getStringWidth("?"), advances[3], 0.001f);
+        Assert.assertEquals(advances[3], advances[4], 0);
+    }
+}
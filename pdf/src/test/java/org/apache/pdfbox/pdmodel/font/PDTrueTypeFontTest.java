@@ -0,0 +1,169 @@
+package org.apache.pdfbox.pdmodel.font;
+
+import org.apache.fontbox.ttf.CMAPEncodingEntry;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.encoding.WinAnsiEncoding;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class PDTrueTypeFontTest {
+
+    private static final String ARIAL = "/org/apache/pdfbox/resources/ttf/ArialMT.ttf";
+
+    private static byte[] save(boolean subset) throws Exception {
+        PDDocument doc = new PDDocument();
+        InputStream in = PDTrueTypeFontTest.class.getResourceAsStream(ARIAL);
+        PDTrueTypeFont font = PDTrueTypeFont.loadTTF(doc, in, new WinAnsiEncoding(), subset);
+        Assert.assertEquals(subset, font.willBeSubset());
+        String name = font.getBaseFont();
+        PDPage page = new PDPage();
+        doc.addPage(page);
+        PDPageContentStream content = new PDPageContentStream(doc, page);
+        content.beginText();
+        content.setFont(font, 12);
+        content.drawString("Hello");
+        content.endText();
+        content.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.save(out);
+        if(subset) {
+            Assert.assertTrue(font.getBaseFont().matches("[A-Z]{6}\\+" + name));
+            Assert.assertEquals(font.getBaseFont(), font.getFontDescriptor().getFontName());
+            checkSubset(font);
+        }
+        doc.close();
+        return out.toByteArray();
+    }
+
+    private static void checkSubset(PDTrueTypeFont font) throws Exception {
+        PDStream fontFile = ((PDFontDescriptorDictionary) font.getFontDescriptor()).getFontFile2();
+        Assert.assertEquals(fontFile.getByteArray().length, fontFile.getStream().getInt(COSName.LENGTH1));
+        TrueTypeFont ttf = new TTFParser().parseTTF(fontFile.createInputStream());
+        CMAPEncodingEntry cmap = ttf.getCMAP().getCmaps()[0];
+        // notdef, H, e, l and o
+        Assert.assertEquals(5, ttf.getMaximumProfile().getNumGlyphs());
+        Assert.assertEquals(5, ttf.getPostScript().getGlyphNames().length);
+        Assert.assertTrue(cmap.getGlyphId('H') > 0);
+        Assert.assertTrue(cmap.getGlyphId('o') > 0);
+        Assert.assertEquals(0, cmap.getGlyphId('x'));
+        ttf.close();
+    }
+
+    @Test
+    public void subsetOnSave() throws Exception {
+        byte[] full = save(false);
+        byte[] subset = save(true);
+        Assert.assertTrue(subset.length * 10 < full.length);
+    }
+
+    private static File copyArial() throws Exception {
+        File file = File.createTempFile("font", ".ttf");
+        file.deleteOnExit();
+        InputStream in = PDTrueTypeFontTest.class.getResourceAsStream(ARIAL);
+        FileOutputStream out = new FileOutputStream(file);
+        IOUtils.copy(in, out);
+        out.close();
+        in.close();
+        return file;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        byte[] data = IOUtils.toByteArray(in);
+        in.close();
+        return data;
+    }
+
+    @Test
+    public void fontFilesAreSharedByDocuments() throws Exception {
+        File file = copyArial();
+        byte[] data = readAll(PDTrueTypeFontTest.class.getResourceAsStream(ARIAL));
+        TrueTypeFontCache cache = TrueTypeFontCache.getInstance();
+        TrueTypeFont shared = cache.getFont(file);
+        Assert.assertArrayEquals(data, readAll(shared.getOriginalData()));
+
+        PDTrueTypeFont[] fonts = new PDTrueTypeFont[2];
+        for(int i=0;i<fonts.length;i++){
+            PDDocument doc = new PDDocument();
+            fonts[i] = PDTrueTypeFont.loadTTF(doc, file);
+            PDStream fontFile = ((PDFontDescriptorDictionary) fonts[i].getFontDescriptor()).getFontFile2();
+            Assert.assertArrayEquals(data, fontFile.getByteArray());
+            Assert.assertEquals(data.length, fontFile.getStream().getInt(COSName.LENGTH1));
+            doc.close();
+        }
+        Assert.assertSame(shared, cache.getFont(file));
+        Assert.assertEquals(fonts[0].getBaseFont(), fonts[1].getBaseFont());
+        Assert.assertEquals(fonts[0].getWidths(), fonts[1].getWidths());
+
+        // a changed file is parsed again
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        Assert.assertNotSame(shared, cache.getFont(file));
+
+        int size = cache.getMaximumSize();
+        cache.setMaximumSize(0);
+        Assert.assertEquals(0, cache.size());
+        cache.setMaximumSize(size);
+        file.delete();
+    }
+
+    private static int saveCached(File file, FlateCompression compression) throws Exception {
+        PDDocument doc = new PDDocument();
+        doc.setCompression(compression);
+        PDTrueTypeFont font = PDTrueTypeFont.loadTTF(doc, file);
+        PDPage page = new PDPage();
+        doc.addPage(page);
+        PDPageContentStream content = new PDPageContentStream(doc, page);
+        content.beginText();
+        content.setFont(font, 12);
+        content.drawString("Hello");
+        content.endText();
+        content.close();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.save(out);
+        doc.close();
+        return out.size();
+    }
+
+    @Test
+    public void cachedFontsUseTheDocumentCompression() throws Exception {
+        File file = copyArial();
+        Assert.assertTrue(saveCached(file, FlateCompression.MAX) < saveCached(file, FlateCompression.FAST));
+        file.delete();
+    }
+
+    @Test
+    public void cachedFontProgramsAreCompressedOnce() throws Exception {
+        File file = copyArial();
+        byte[] data = readAll(PDTrueTypeFontTest.class.getResourceAsStream(ARIAL));
+        TrueTypeFontCache.CachedFont cached = TrueTypeFontCache.getInstance().get(file);
+        for(int i=0;i<2;i++){
+            PDDocument doc = new PDDocument();
+            doc.setCompression(FlateCompression.FAST);
+            PDTrueTypeFont font = PDTrueTypeFont.loadTTF(doc, file);
+            PDStream fontFile = ((PDFontDescriptorDictionary) font.getFontDescriptor()).getFontFile2();
+            Assert.assertEquals(COSName.FLATE_DECODE, fontFile.getStream().getFilters());
+            Assert.assertArrayEquals(cached.getCompressedProgram(FlateCompression.FAST),
+                    readAll(fontFile.getStream().getFilteredStream()));
+            Assert.assertArrayEquals(data, fontFile.getByteArray());
+            Assert.assertEquals(data.length, fontFile.getStream().getInt(COSName.LENGTH1));
+            doc.close();
+        }
+        Assert.assertSame(cached, TrueTypeFontCache.getInstance().get(file));
+        Assert.assertEquals(1, cached.getCompressionCount());
+        file.delete();
+    }
+}
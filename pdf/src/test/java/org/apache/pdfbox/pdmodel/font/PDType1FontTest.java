@@ -0,0 +1,31 @@
+package org.apache.pdfbox.pdmodel.font;
+
+import org.apache.fontbox.afm.AFMCompiler;
+import org.apache.fontbox.afm.AFMParser;
+import org.apache.fontbox.afm.FontMetric;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+public class PDType1FontTest {
+
+    @Test
+    public void truncatedCompiledMetricsFallBackToTheText() throws Exception {
+        InputStream in = PDType1FontTest.class.getResourceAsStream("/org/apache/pdfbox/resources/afm/Helvetica.afm");
+        FontMetric expected = new AFMParser(in).parse();
+        in.close();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AFMCompiler.write(expected, out);
+        byte[] compiled = out.toByteArray();
+
+        FontMetric actual = PDType1Font.loadAdobeFontMetric("Helvetica",
+                new ByteArrayInputStream(compiled, 0, compiled.length / 2));
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getFontName(), actual.getFontName());
+        Assert.assertEquals(expected.getCharMetrics().size(), actual.getCharMetrics().size());
+        Assert.assertEquals(expected.getKernPairs().size(), actual.getKernPairs().size());
+    }
+}
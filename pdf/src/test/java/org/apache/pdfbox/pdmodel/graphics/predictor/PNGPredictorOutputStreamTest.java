@@ -0,0 +1,57 @@
+package org.apache.pdfbox.pdmodel.graphics.predictor;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.filter.FlateFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+public class PNGPredictorOutputStreamTest {
+
+    private static byte[] predictAndDecode(byte[] data, int colors, int bitsPerComponent, int columns)
+            throws Exception {
+        ByteArrayOutputStream predicted = new ByteArrayOutputStream();
+        PNGPredictorOutputStream out = new PNGPredictorOutputStream(predicted, colors, bitsPerComponent, columns);
+        // odd chunks, so rows are completed across writes
+        for(int i=0;i<data.length;i+=7){
+            out.write(data, i, Math.min(7, data.length - i));
+        }
+        out.close();
+        Assert.assertEquals(data.length / out.getRowLength() * (out.getRowLength() + 1), predicted.size());
+
+        COSDictionary options = new COSDictionary();
+        options.setItem(COSName.DECODE_PARMS, out.createDecodeParms());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new FlateFilter().encode(new ByteArrayInputStream(predicted.toByteArray()), compressed, options, 0);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new FlateFilter().decode(new ByteArrayInputStream(compressed.toByteArray()), decoded, options, 0);
+        return decoded.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        Random random = new Random(13);
+        int[][] shapes = { {1, 8, 1}, {1, 8, 37}, {3, 8, 50}, {4, 8, 19}, {3, 16, 11}, {1, 1, 30} };
+        for(int[] shape : shapes) {
+            int rowLength = (shape[0] * shape[1] * shape[2] + 7) / 8;
+            byte[] data = new byte[rowLength * 23];
+            // gradients with noise, so every filter wins some rows
+            for(int y=0;y<23;y++){
+                for(int x=0;x<rowLength;x++){
+                    int value = y % 4 == 0 ? random.nextInt(256) : x * (y % 3) + y * 5 + random.nextInt(3);
+                    data[y * rowLength + x] = (byte) value;
+                }
+            }
+            Assert.assertArrayEquals(data, predictAndDecode(data, shape[0], shape[1], shape[2]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRowsAreRejected() throws Exception {
+        new PNGPredictorOutputStream(new ByteArrayOutputStream(), 1, 8, 0);
+    }
+}
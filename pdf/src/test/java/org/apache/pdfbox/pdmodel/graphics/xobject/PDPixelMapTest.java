@@ -0,0 +1,141 @@
+package org.apache.pdfbox.pdmodel.graphics.xobject;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.filter.FlateCompression;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+public class PDPixelMapTest {
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, boolean alpha) {
+        Assert.assertEquals(expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(expected.getHeight(), actual.getHeight());
+        int mask = alpha ? 0xffffffff : 0xffffff;
+        for(int y=0;y<expected.getHeight();y++){
+            for(int x=0;x<expected.getWidth();x++){
+                Assert.assertEquals((expected.getRGB(x, y) & mask), (actual.getRGB(x, y) & mask));
+            }
+        }
+    }
+
+    @Test
+    public void predictedImageRoundTrip() throws Exception {
+        BufferedImage image = new BufferedImage(67, 41, BufferedImage.TYPE_INT_RGB);
+        for(int y=0;y<image.getHeight();y++){
+            for(int x=0;x<image.getWidth();x++){
+                image.setRGB(x, y, (x * 3) << 16 | (y * 5) << 8 | ((x ^ y) & 0xff));
+            }
+        }
+        PDDocument doc = new PDDocument();
+        try {
+            PDPixelMap pixelMap = new PDPixelMap(doc, image);
+            COSDictionary parms = (COSDictionary) pixelMap.getCOSStream().getDictionaryObject(COSName.DECODE_PARMS);
+            Assert.assertEquals(15, parms.getInt(COSName.PREDICTOR));
+            Assert.assertEquals(3, parms.getInt(COSName.COLORS));
+            Assert.assertEquals(67, parms.getInt(COSName.COLUMNS));
+            assertSamePixels(image, new PDPixelMap(pixelMap.getPDStream()).getRGBImage(), false);
+        } finally {
+            doc.close();
+        }
+    }
+
+    @Test
+    public void parallelCompression() throws Exception {
+        // larger than a parallel block, with an alpha channel below it
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        for(int y=0;y<image.getHeight();y++){
+            for(int x=0;x<image.getWidth();x++){
+                image.setRGB(x, y, (x ^ y) << 24 | (x * 7 + y) << 8 | (y * 3));
+            }
+        }
+        PDDocument doc = new PDDocument();
+        try {
+            doc.setCompression(FlateCompression.DEFAULT.withParallelThreshold(64 * 1024));
+            PDPixelMap pixelMap = new PDPixelMap(doc, image);
+            assertSamePixels(image, new PDPixelMap(pixelMap.getPDStream()).getRGBImage(), false);
+            BufferedImage mask = pixelMap.getSMaskImage().getRGBImage();
+            Assert.assertEquals((7 ^ 9) & 0xff, mask.getRaster().getSample(7, 9, 0));
+        } finally {
+            doc.close();
+        }
+    }
+
+    @Test
+    public void alphaBecomesSoftMask() throws Exception {
+        BufferedImage image = new BufferedImage(30, 500, BufferedImage.TYPE_INT_ARGB);
+        for(int y=0;y<image.getHeight();y++){
+            for(int x=0;x<image.getWidth();x++){
+                image.setRGB(x, y, (y & 0xff) << 24 | (x * 8) << 16 | 0x4080);
+            }
+        }
+        BufferedImage opaque = new BufferedImage(10, 10, BufferedImage.TYPE_4BYTE_ABGR);
+        for(int y=0;y<10;y++){
+            for(int x=0;x<10;x++){
+                opaque.setRGB(x, y, 0xff000000 | x * y);
+            }
+        }
+        PDDocument doc = new PDDocument();
+        try {
+            PDPixelMap pixelMap = new PDPixelMap(doc, image);
+            assertSamePixels(image, new PDPixelMap(pixelMap.getPDStream()).getRGBImage(), false);
+            PDXObjectImage smask = pixelMap.getSMaskImage();
+            Assert.assertNotNull(smask);
+            BufferedImage mask = smask.getRGBImage();
+            for(int y=0;y<image.getHeight();y++){
+                Assert.assertEquals(y & 0xff, mask.getRaster().getSample(3, y, 0));
+            }
+
+            Assert.assertNull(new PDPixelMap(doc, opaque).getSMaskImage());
+        } finally {
+            doc.close();
+        }
+    }
+
+    @Test
+    public void rowSource() throws Exception {
+        PixelRowSource source = new PixelRowSource() {
+            public int getWidth() { return 5000; }
+            public int getHeight() { return 40; }
+            public int getNumberOfComponents() { return 1; }
+            public boolean hasAlpha() { return false; }
+            public void readRows(int y, int rows, byte[] color, byte[] alpha) {
+                for(int i=0;i<rows*5000;i++){
+                    color[i] = (byte) (y + i / 5000 + i % 5000);
+                }
+            }
+        };
+        PDDocument doc = new PDDocument();
+        try {
+            PDPixelMap pixelMap = new PDPixelMap(doc, source);
+            byte[] samples = pixelMap.getPDStream().getByteArray();
+            Assert.assertEquals(5000 * 40, samples.length);
+            for(int i=0;i<samples.length;i++){
+                Assert.assertEquals((byte) (i / 5000 + i % 5000), samples[i]);
+            }
+        } finally {
+            doc.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRowSource() throws Exception {
+        PixelRowSource source = new PixelRowSource() {
+            public int getWidth() { return 0; }
+            public int getHeight() { return 40; }
+            public int getNumberOfComponents() { return 3; }
+            public boolean hasAlpha() { return false; }
+            public void readRows(int y, int rows, byte[] color, byte[] alpha) {
+            }
+        };
+        PDDocument doc = new PDDocument();
+        try {
+            new PDPixelMap(doc, source);
+        } finally {
+            doc.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.apache.pdfbox.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+public class NumberFormatUtilTest {
+
+    // returns false if the fast path leaves the value to NumberFormat
+    private static boolean assertSameAsNumberFormat(double value, NumberFormat format, int digits) throws Exception {
+        byte[] buffer = new byte[NumberFormatUtil.MAX_LENGTH];
+        int length = NumberFormatUtil.formatDoubleFast(value, digits, buffer);
+        if(length == -1){
+            return false;
+        }
+        Assert.assertEquals("value " + value, format.format(value), new String(buffer, 0, length, "ISO-8859-1"));
+        return true;
+    }
+
+    @Test
+    public void matchesNumberFormat() throws Exception {
+        double[] values = { 0, -0.0, 1, -1, 0.5, 2.5, -2.5, 1.0 / 2048, 3.0 / 2048, 0.1, 0.1f, 1.0 / 255,
+                3f / 255, 612, -792, 6.123233995736766E-17, 5e-11, 123456.789, 1e14 };
+        Random random = new Random(42);
+        for(int digits=0;digits<=NumberFormatUtil.MAX_FRACTION_DIGITS;digits++){
+            NumberFormat format = NumberFormat.getNumberInstance(Locale.US);
+            format.setMaximumFractionDigits(digits);
+            format.setGroupingUsed(false);
+
+            for(double value : values) {
+                boolean fast = assertSameAsNumberFormat(value, format, digits);
+                // only values with more significant digits than a double holds are left over
+                Assert.assertTrue("value " + value + ", " + digits + " digits", fast || digits >= 10);
+            }
+            int doubleFallbacks = 0;
+            int floatFallbacks = 0;
+            for(int i=0;i<10000;i++) {
+                if(!assertSameAsNumberFormat(random.nextDouble() * 2000 - 1000, format, digits)) {
+                    doubleFallbacks++;
+                }
+                if(!assertSameAsNumberFormat(random.nextFloat() * 2000 - 1000, format, digits)) {
+                    floatFallbacks++;
+                }
+                if(!assertSameAsNumberFormat(random.nextInt(256) / 255f, format, digits)) {
+                    floatFallbacks++;
+                }
+            }
+            // up to the 10 digits of content streams, floats always take the fast path and
+            // doubles only fall back when they are too close to a rounding midpoint
+            if(digits <= 10) {
+                Assert.assertEquals(digits + " digits", 0, floatFallbacks);
+                Assert.assertTrue(digits + " digits: " + doubleFallbacks, doubleFallbacks <= 20);
+            }
+        }
+    }
+
+    @Test
+    public void formatsCommonOperands() throws Exception {
+        byte[] buffer = new byte[NumberFormatUtil.MAX_LENGTH];
+        int length = NumberFormatUtil.formatFloatFast(0.5f, 10, buffer);
+        Assert.assertEquals("0.5", new String(buffer, 0, length, "ISO-8859-1"));
+        length = NumberFormatUtil.formatFloatFast(-612f, 10, buffer);
+        Assert.assertEquals("-612", new String(buffer, 0, length, "ISO-8859-1"));
+        Assert.assertEquals(-1, NumberFormatUtil.formatDoubleFast(Double.NaN, 10, buffer));
+        Assert.assertEquals(-1, NumberFormatUtil.formatDoubleFast(1e300, 10, buffer));
+    }
+}